@@ -0,0 +1,389 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bidirectional A* over the drone move lattice: one search grows from the start towards the target
+ * and one from the target back towards the start, and they stop when they meet.
+ * <p>
+ * The two searches live on different lattices (one anchored at each end point), so they can never
+ * reach exactly the same position. They are joined instead when a forward node comes within the
+ * {@code isCloseTo} distance of a backward node: the backward moves are replayed from the forward
+ * node, which shifts them by less than that distance, so the replayed route still ends close to the
+ * target. Every replayed move is checked against the move rules, and a join is only accepted if all
+ * of them are valid. The search with the smaller open list is expanded next.
+ * <p>
+ * The first accepted join ends the search, so routes are near-shortest rather than guaranteed
+ * shortest; on long routes each side only has to cover about half the distance. Like
+ * {@link LatticeSearch}, both sides can be bounded by a {@link SearchCorridor}, an expansion limit
+ * and a move budget, and the search reports which of them ended it without a path. An instance
+ * reuses its arrays between searches and is therefore not thread-safe.
+ */
+public final class BidirectionalSearch {
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final double CLOSE = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+    private static final int OPPOSITE = LatticePoint.DIRECTIONS / 2;
+    // Slack for rounding when counting the moves left to a target; never more than a move's worth
+    private static final double MOVE_COUNT_TOLERANCE = 1e-6;
+
+    private final LngLatHandler handler = new LngLatHandler();
+    private final Frontier forward = new Frontier();
+    private final Frontier backward = new Frontier();
+
+    private int expandedNodes;
+    private int expansionLimit = Integer.MAX_VALUE;
+    private boolean latticeBoundReached;
+    private SearchCorridor corridor;
+    private boolean corridorReached;
+    private boolean expansionLimitReached;
+    private int moveBudget = Integer.MAX_VALUE;
+    private boolean moveBudgetReached;
+    private LatticeSearch.FailureReason failureReason = LatticeSearch.FailureReason.NONE;
+
+    /**
+     * Finds a path from {@code start} to a position close to {@code end}.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole search
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if no path was
+     *         found, with the reason in {@link #getFailureReason()}
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, LatticeSearch.MoveRules rules) {
+        expandedNodes = 0;
+        latticeBoundReached = false;
+        corridorReached = false;
+        expansionLimitReached = false;
+        moveBudgetReached = false;
+        failureReason = LatticeSearch.FailureReason.NONE;
+        if (handler.isCloseTo(start, end)) {
+            return new ArrayList<>(List.of(start));
+        }
+        forward.reset(start, end);
+        backward.reset(end, start);
+
+        while (!forward.openSet.isEmpty() && !backward.openSet.isEmpty()) {
+            boolean expandForward = forward.openSet.size() <= backward.openSet.size();
+            Frontier side = expandForward ? forward : backward;
+            Frontier other = expandForward ? backward : forward;
+
+            int current = side.openSet.poll();
+            side.closed[current] = true;
+            expandedNodes++;
+            if (expandedNodes > expansionLimit) {
+                expansionLimitReached = true;
+                break;
+            }
+
+            for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+                long key = LatticePoint.step(side.keys[current], direction);
+                if (key == LatticePoint.OUT_OF_RANGE) {
+                    latticeBoundReached = true;
+                    continue;
+                }
+                int neighbor = side.slotsByKey.get(key);
+                if (neighbor != LongIntHashMap.MISSING && side.closed[neighbor]) {
+                    continue;
+                }
+                double nextLng = side.originLng + LatticePoint.offsetLng(key);
+                double nextLat = side.originLat + LatticePoint.offsetLat(key);
+                if (moveBudget != Integer.MAX_VALUE && exceedsMoveBudget(side, current, nextLng, nextLat)) {
+                    moveBudgetReached = true;
+                    continue;
+                }
+                if (corridor != null && !corridor.contains(nextLng, nextLat)) {
+                    corridorReached = true;
+                    continue;
+                }
+                LngLat currentPosition = new LngLat(side.lng[current], side.lat[current]);
+                LngLat nextPosition = new LngLat(nextLng, nextLat);
+                // The backward search walks moves in reverse: the drone would fly from next to current
+                boolean valid = expandForward
+                        ? rules.isValidMove(currentPosition, direction, nextPosition, hasEnteredCentralArea)
+                        : rules.isValidMove(nextPosition, (direction + OPPOSITE) % LatticePoint.DIRECTIONS,
+                        currentPosition, hasEnteredCentralArea);
+                if (!valid) {
+                    continue;
+                }
+
+                double tentativeGScore = side.gScore[current] + MOVE;
+                boolean added = neighbor == LongIntHashMap.MISSING;
+                if (added) {
+                    neighbor = side.addSlot(key, nextLng, nextLat, current, direction);
+                } else if (tentativeGScore >= side.gScore[neighbor]) {
+                    continue;
+                }
+                side.parent[neighbor] = current;
+                side.parentDirection[neighbor] = (byte) direction;
+                side.gScore[neighbor] = tentativeGScore;
+                side.openSet.insertOrUpdate(neighbor, tentativeGScore + side.hScore[neighbor], side.hScore[neighbor]);
+
+                if (added) {
+                    List<LngLat> path = expandForward
+                            ? join(neighbor, other, hasEnteredCentralArea, rules)
+                            : joinFrom(other, neighbor, hasEnteredCentralArea, rules);
+                    if (path != null) {
+                        return path;
+                    }
+                }
+            }
+        }
+        failureReason = reasonOfFailure();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Keeps both sides of following searches inside {@code corridor}: moves that would leave it are not taken.
+     *
+     * @param corridor - the box to search in, or {@code null} (the default) to search without bounds
+     */
+    public void setSearchCorridor(SearchCorridor corridor) {
+        this.corridor = corridor;
+    }
+
+    /**
+     * Bounds the number of nodes following searches expand, counting both sides, before they give
+     * up and return an empty path.
+     *
+     * @param limit - the maximum number of expanded nodes, {@link Integer#MAX_VALUE} (no limit) by default
+     */
+    public void setExpansionLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("expansion limit must be positive: " + limit);
+        }
+        this.expansionLimit = limit;
+    }
+
+    /**
+     * Prunes every node of following searches whose moves from its own end point plus the fewest
+     * moves that could still bring it close to the other end point in a straight line exceed
+     * {@code moves}, as {@link LatticeSearch#setMoveBudget} does, and rejects joins into routes
+     * with more moves.
+     *
+     * @param moves - the most moves a path may have, {@link Integer#MAX_VALUE} (no budget) by default
+     */
+    public void setMoveBudget(int moves) {
+        if (moves < 0) {
+            throw new IllegalArgumentException("move budget must not be negative: " + moves);
+        }
+        this.moveBudget = moves;
+    }
+
+    /**
+     * A join is only tried between nodes close to each other, so a route through two nodes that are
+     * not can be missed; {@link LatticeSearch.FailureReason#UNREACHABLE} means that one side ran out of nodes.
+     *
+     * @return why the last search found no path, or {@link LatticeSearch.FailureReason#NONE} if it found one
+     */
+    public LatticeSearch.FailureReason getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * @return the number of nodes expanded by the last search, counting both directions
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return whether the last search had to discard moves beyond the range of {@link LatticePoint}
+     */
+    public boolean isLatticeBoundReached() {
+        return latticeBoundReached;
+    }
+
+    // Whether a move from the node leaves too few moves to come close to the other end point
+    private boolean exceedsMoveBudget(Frontier side, int current, double nextLng, double nextLat) {
+        double dLng = nextLng - side.goal.lng();
+        double dLat = nextLat - side.goal.lat();
+        long movesSoFar = Math.round(side.gScore[current] / MOVE) + 1;
+        // Close means within DRONE_IS_CLOSE_DISTANCE, so that much of the distance needs no move
+        double movesLeft = Math.ceil((Math.sqrt(dLng * dLng + dLat * dLat) - CLOSE) / MOVE - MOVE_COUNT_TOLERANCE);
+        return movesSoFar + Math.max(0.0, movesLeft) > moveBudget;
+    }
+
+    // Bounds that cut the search short come first, as a search with more room might still find the target
+    private LatticeSearch.FailureReason reasonOfFailure() {
+        if (corridorReached || expansionLimitReached) {
+            return LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED;
+        }
+        if (latticeBoundReached) {
+            return LatticeSearch.FailureReason.LATTICE_RANGE_EXCEEDED;
+        }
+        return moveBudgetReached ? LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET : LatticeSearch.FailureReason.UNREACHABLE;
+    }
+
+    // Tries to join a new forward node to any backward node close to it
+    private List<LngLat> join(int forwardSlot, Frontier backwardSide, boolean locked, LatticeSearch.MoveRules rules) {
+        double fLng = forward.lng[forwardSlot];
+        double fLat = forward.lat[forwardSlot];
+        for (int cellLng = -1; cellLng <= 1; cellLng++) {
+            for (int cellLat = -1; cellLat <= 1; cellLat++) {
+                int slot = backwardSide.cellHead(fLng, fLat, cellLng, cellLat);
+                for (; slot >= 0; slot = backwardSide.nextInCell[slot]) {
+                    List<LngLat> path = tryJoin(forwardSlot, slot, locked, rules);
+                    if (path != null) {
+                        return path;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Tries to join a new backward node to any forward node close to it
+    private List<LngLat> joinFrom(Frontier forwardSide, int backwardSlot, boolean locked, LatticeSearch.MoveRules rules) {
+        double bLng = backward.lng[backwardSlot];
+        double bLat = backward.lat[backwardSlot];
+        for (int cellLng = -1; cellLng <= 1; cellLng++) {
+            for (int cellLat = -1; cellLat <= 1; cellLat++) {
+                int slot = forwardSide.cellHead(bLng, bLat, cellLng, cellLat);
+                for (; slot >= 0; slot = forwardSide.nextInCell[slot]) {
+                    List<LngLat> path = tryJoin(slot, backwardSlot, locked, rules);
+                    if (path != null) {
+                        return path;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Replays the backward chain from the forward node; null if the nodes are not close or a move is invalid
+    private List<LngLat> tryJoin(int forwardSlot, int backwardSlot, boolean locked, LatticeSearch.MoveRules rules) {
+        double dLng = forward.lng[forwardSlot] - backward.lng[backwardSlot];
+        double dLat = forward.lat[forwardSlot] - backward.lat[backwardSlot];
+        if (Math.sqrt(dLng * dLng + dLat * dLat) >= CLOSE) {
+            return null;
+        }
+
+        List<LngLat> path = forward.pathTo(forwardSlot);
+        LngLat position = path.get(path.size() - 1);
+        long key = forward.keys[forwardSlot];
+        LngLat end = backward.origin;
+        // Each backward node was reached from its parent by a move away from the target, so the
+        // drone flies the opposite direction
+        for (int slot = backwardSlot; backward.parent[slot] >= 0 && !handler.isCloseTo(position, end);
+             slot = backward.parent[slot]) {
+            int direction = (backward.parentDirection[slot] + OPPOSITE) % LatticePoint.DIRECTIONS;
+            key = LatticePoint.step(key, direction);
+            if (key == LatticePoint.OUT_OF_RANGE) {
+                return null;
+            }
+            LngLat next = new LngLat(forward.originLng + LatticePoint.offsetLng(key),
+                    forward.originLat + LatticePoint.offsetLat(key));
+            if (!rules.isValidMove(position, direction, next, locked)) {
+                return null;
+            }
+            path.add(next);
+            position = next;
+        }
+        if (!handler.isCloseTo(position, end)) {
+            return null;
+        }
+        if (path.size() - 1 > moveBudget) {
+            moveBudgetReached = true;
+            return null;
+        }
+        return path;
+    }
+
+    // One direction of the search: slot arrays as in LatticeSearch plus a grid of generated nodes
+    private static final class Frontier {
+        private final LongIntHashMap slotsByKey = new LongIntHashMap(4096);
+        private final LongIntHashMap cellHeads = new LongIntHashMap(4096);
+        private final IndexedMinHeap openSet = new IndexedMinHeap(1024);
+
+        private LngLat origin;
+        private LngLat goal;
+        private double originLng;
+        private double originLat;
+
+        private long[] keys = new long[1024];
+        private double[] lng = new double[1024];
+        private double[] lat = new double[1024];
+        private double[] gScore = new double[1024];
+        private double[] hScore = new double[1024];
+        private int[] parent = new int[1024];
+        private byte[] parentDirection = new byte[1024];
+        private boolean[] closed = new boolean[1024];
+        private int[] nextInCell = new int[1024];
+        private int slotCount;
+
+        void reset(LngLat origin, LngLat goal) {
+            this.origin = origin;
+            this.goal = goal;
+            this.originLng = origin.lng();
+            this.originLat = origin.lat();
+            slotsByKey.clear();
+            cellHeads.clear();
+            openSet.clear();
+            slotCount = 0;
+            int root = addSlot(LatticePoint.ORIGIN_KEY, originLng, originLat, -1, 0);
+            gScore[root] = 0.0;
+            openSet.insertOrUpdate(root, hScore[root], hScore[root]);
+        }
+
+        int addSlot(long key, double nodeLng, double nodeLat, int parentSlot, int direction) {
+            if (slotCount == lng.length) {
+                int capacity = slotCount * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                lng = Arrays.copyOf(lng, capacity);
+                lat = Arrays.copyOf(lat, capacity);
+                gScore = Arrays.copyOf(gScore, capacity);
+                hScore = Arrays.copyOf(hScore, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                parentDirection = Arrays.copyOf(parentDirection, capacity);
+                closed = Arrays.copyOf(closed, capacity);
+                nextInCell = Arrays.copyOf(nextInCell, capacity);
+            }
+            int slot = slotCount++;
+            keys[slot] = key;
+            lng[slot] = nodeLng;
+            lat[slot] = nodeLat;
+            gScore[slot] = Double.POSITIVE_INFINITY;
+            double dLng = nodeLng - goal.lng();
+            double dLat = nodeLat - goal.lat();
+            hScore[slot] = Math.sqrt(dLng * dLng + dLat * dLat);
+            parent[slot] = parentSlot;
+            parentDirection[slot] = (byte) direction;
+            closed[slot] = false;
+            slotsByKey.put(key, slot);
+
+            long cell = cellKey(Math.floor(nodeLng / CLOSE), Math.floor(nodeLat / CLOSE));
+            int head = cellHeads.get(cell);
+            nextInCell[slot] = head;
+            cellHeads.put(cell, slot);
+            return slot;
+        }
+
+        // First node in the grid cell offset by (dCol, dRow) from the cell holding the point, or -1
+        int cellHead(double pointLng, double pointLat, int dCol, int dRow) {
+            return cellHeads.get(cellKey(Math.floor(pointLng / CLOSE) + dCol, Math.floor(pointLat / CLOSE) + dRow));
+        }
+
+        List<LngLat> pathTo(int finalSlot) {
+            int length = 0;
+            for (int slot = finalSlot; slot >= 0; slot = parent[slot]) {
+                length++;
+            }
+            LngLat[] path = new LngLat[length];
+            for (int slot = finalSlot; slot >= 0; slot = parent[slot]) {
+                path[--length] = new LngLat(lng[slot], lat[slot]);
+            }
+            return new ArrayList<>(Arrays.asList(path));
+        }
+
+        private static long cellKey(double col, double row) {
+            return ((long) col << 32) ^ ((long) row & 0xffffffffL);
+        }
+    }
+}
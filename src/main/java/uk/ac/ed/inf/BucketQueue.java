@@ -0,0 +1,157 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * An open list that files slots into buckets of equal key width instead of keeping them sorted.
+ * <p>
+ * Every drone move costs the same, so in an A* search with a consistent heuristic the keys of queued
+ * nodes all lie within two moves of the smallest one, and keys never fall below the last one
+ * polled (until {@link #clear()}). The buckets therefore form a small ring that the queue walks forwards through: queueing
+ * and polling take constant time and compare no keys. Slots in the same bucket come out last in,
+ * first out, and the secondary key is ignored. As long as the bucket width is below one move, the
+ * first path to a node taken off the list is still a shortest one.
+ * <p>
+ * A slot moved to a new bucket leaves a stale entry behind, which is skipped when it is reached.
+ */
+public final class BucketQueue implements OpenList {
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final double bucketWidth;
+
+    // Ring of buckets; absolute bucket b lives at index b & (buckets.length - 1)
+    private int[][] buckets;
+    private int[] bucketSizes;
+    private long base = UNSET;
+    private long top = UNSET;          // highest bucket queued since the last clear
+    private boolean polled;
+
+    private long[] queuedBucket = new long[256];   // slot -> absolute bucket, or -1 when not queued
+    private int size;
+    private int maxSlot = -1;
+
+    /**
+     * @param bucketWidth - range of primary keys sharing a bucket
+     */
+    public BucketQueue(double bucketWidth) {
+        if (!(bucketWidth > 0)) {
+            throw new IllegalArgumentException("bucket width must be positive");
+        }
+        this.bucketWidth = bucketWidth;
+        this.buckets = new int[64][];
+        this.bucketSizes = new int[64];
+        Arrays.fill(queuedBucket, -1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int slot) {
+        return slot < queuedBucket.length && queuedBucket[slot] >= 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bucketSizes, 0);
+        Arrays.fill(queuedBucket, 0, maxSlot + 1, -1);
+        size = 0;
+        maxSlot = -1;
+        base = UNSET;
+        top = UNSET;
+        polled = false;
+    }
+
+    @Override
+    public void insertOrUpdate(int slot, double primaryKey, double secondaryKey) {
+        if (slot >= queuedBucket.length) {
+            int previous = queuedBucket.length;
+            queuedBucket = Arrays.copyOf(queuedBucket, Math.max(slot + 1, previous * 2));
+            Arrays.fill(queuedBucket, previous, queuedBucket.length, -1);
+        }
+        maxSlot = Math.max(maxSlot, slot);
+
+        long bucket = (long) Math.floor(primaryKey / bucketWidth);
+        if (base == UNSET) {
+            base = bucket;
+        } else if (bucket < base && polled) {
+            // Only an inconsistent heuristic gets here; the slot is served with the current bucket
+            bucket = base;
+        } else if (bucket < base) {
+            // Nothing polled yet, so the ring can still start lower
+            grow(top - bucket + 1);
+            base = bucket;
+        }
+        top = Math.max(top, bucket);
+        if (queuedBucket[slot] == bucket) {
+            return;
+        }
+        if (bucket - base >= buckets.length) {
+            grow(bucket - base + 1);
+        }
+        if (queuedBucket[slot] < 0) {
+            size++;
+        }
+        queuedBucket[slot] = bucket;
+        push((int) (bucket & (buckets.length - 1)), slot);
+    }
+
+    /**
+     * @return a slot from the lowest non-empty bucket, removing it from the queue
+     */
+    @Override
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("queue is empty");
+        }
+        polled = true;
+        while (true) {
+            int index = (int) (base & (buckets.length - 1));
+            while (bucketSizes[index] > 0) {
+                int slot = buckets[index][--bucketSizes[index]];
+                if (queuedBucket[slot] == base) {
+                    queuedBucket[slot] = -1;
+                    size--;
+                    return slot;
+                }
+            }
+            base++;
+        }
+    }
+
+    private void push(int index, int slot) {
+        int[] bucket = buckets[index];
+        if (bucket == null) {
+            bucket = buckets[index] = new int[16];
+        } else if (bucketSizes[index] == bucket.length) {
+            bucket = buckets[index] = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[bucketSizes[index]++] = slot;
+    }
+
+    // Enlarges the ring so that it spans at least the given number of buckets from base
+    private void grow(long span) {
+        int capacity = buckets.length;
+        while (capacity < span) {
+            capacity *= 2;
+        }
+        int[][] oldBuckets = buckets;
+        int[] oldSizes = bucketSizes;
+        buckets = new int[capacity][];
+        bucketSizes = new int[capacity];
+        for (int i = 0; i < oldBuckets.length; i++) {
+            // Old index i holds absolute bucket base + ((i - base) mod old length)
+            long absolute = base + Math.floorMod(i - base, (long) oldBuckets.length);
+            int index = (int) (absolute & (capacity - 1));
+            buckets[index] = oldBuckets[i];
+            bucketSizes[index] = oldSizes[i];
+        }
+    }
+}
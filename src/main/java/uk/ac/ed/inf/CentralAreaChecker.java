@@ -0,0 +1,105 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.CentralRegionVertexOrder;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+/**
+ * Point test for the central area.
+ * <p>
+ * The central area is normally an axis-aligned rectangle with its corners in
+ * {@link CentralRegionVertexOrder}. In that case a point inside the closed rectangle is answered with
+ * four comparisons; the only other points {@link LngLatHandler#isInRegion} accepts are those close to
+ * a corner, which are checked only when the point is within that distance of the rectangle. Any other
+ * shape falls back to a {@link CompiledPolygon}. Instances are immutable and safe to share between threads.
+ */
+public final class CentralAreaChecker {
+    private static final double VERTEX_TOLERANCE = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+
+    private final boolean rectangle;
+    private final double left;
+    private final double right;
+    private final double bottom;
+    private final double top;
+    private final CompiledPolygon polygon;
+
+    /**
+     * @param centralArea - the central area, which must be named {@link SystemConstants#CENTRAL_REGION_NAME}
+     */
+    public CentralAreaChecker(NamedRegion centralArea) {
+        if (centralArea == null) {
+            throw new IllegalArgumentException("the named region is null");
+        }
+        if (!SystemConstants.CENTRAL_REGION_NAME.equals(centralArea.name())) {
+            throw new IllegalArgumentException("the named region: " + centralArea.name()
+                    + " is not valid - must be: " + SystemConstants.CENTRAL_REGION_NAME);
+        }
+        LngLat[] vertices = centralArea.vertices();
+        rectangle = isAxisAlignedRectangle(vertices);
+        if (rectangle) {
+            left = vertices[CentralRegionVertexOrder.TOP_LEFT].lng();
+            right = vertices[CentralRegionVertexOrder.TOP_RIGHT].lng();
+            bottom = vertices[CentralRegionVertexOrder.BOTTOM_LEFT].lat();
+            top = vertices[CentralRegionVertexOrder.TOP_LEFT].lat();
+            polygon = null;
+        } else {
+            left = right = bottom = top = Double.NaN;
+            polygon = new CompiledPolygon(centralArea);
+        }
+    }
+
+    /**
+     * @param vertices - polygon vertices
+     * @return whether the vertices are the four corners of an axis-aligned rectangle with non-zero
+     * area, listed in {@link CentralRegionVertexOrder}
+     */
+    public static boolean isAxisAlignedRectangle(LngLat[] vertices) {
+        if (vertices == null || vertices.length != 4) {
+            return false;
+        }
+        LngLat topLeft = vertices[CentralRegionVertexOrder.TOP_LEFT];
+        LngLat bottomLeft = vertices[CentralRegionVertexOrder.BOTTOM_LEFT];
+        LngLat bottomRight = vertices[CentralRegionVertexOrder.BOTTOM_RIGHT];
+        LngLat topRight = vertices[CentralRegionVertexOrder.TOP_RIGHT];
+        return topLeft.lng() == bottomLeft.lng() && topRight.lng() == bottomRight.lng()
+                && topLeft.lat() == topRight.lat() && bottomLeft.lat() == bottomRight.lat()
+                && topLeft.lng() < topRight.lng() && bottomLeft.lat() < topLeft.lat();
+    }
+
+    /**
+     * @return whether the rectangle fast path is in use
+     */
+    public boolean isRectangle() {
+        return rectangle;
+    }
+
+    public boolean contains(LngLat position) {
+        return contains(position.lng(), position.lat());
+    }
+
+    /**
+     * @return whether ({@code lng}, {@code lat}) is in the central area, with the same result as
+     * {@link LngLatHandler#isInRegion}
+     */
+    public boolean contains(double lng, double lat) {
+        if (!rectangle) {
+            return polygon.contains(lng, lat);
+        }
+        if (lng >= left && lng <= right && lat >= bottom && lat <= top) {
+            return true;
+        }
+        if (lng < left - VERTEX_TOLERANCE || lng > right + VERTEX_TOLERANCE
+                || lat < bottom - VERTEX_TOLERANCE || lat > top + VERTEX_TOLERANCE) {
+            return false;
+        }
+        return isCloseTo(lng, lat, left, top) || isCloseTo(lng, lat, left, bottom)
+                || isCloseTo(lng, lat, right, bottom) || isCloseTo(lng, lat, right, top);
+    }
+
+    private static boolean isCloseTo(double lng, double lat, double cornerLng, double cornerLat) {
+        double dLng = lng - cornerLng;
+        double dLat = lat - cornerLat;
+        return Math.sqrt(dLng * dLng + dLat * dLat) < VERTEX_TOLERANCE;
+    }
+}
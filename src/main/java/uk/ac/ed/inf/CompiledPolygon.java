@@ -0,0 +1,141 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+/**
+ * A {@link NamedRegion} prepared once for repeated point-in-polygon tests.
+ * <p>
+ * The vertices are copied into primitive arrays together with each edge's bounding box, direction
+ * and inverse slope, and the whole polygon gets a bounding box grown by the vertex tolerance.
+ * {@link #contains} gives the same answer as {@link LngLatHandler#isInRegion}: a point close to a
+ * vertex or on an edge is inside, otherwise ray casting decides. Points outside the bounding box are
+ * rejected with four comparisons. Instances are immutable and safe to share between threads.
+ */
+public final class CompiledPolygon {
+    private static final double VERTEX_TOLERANCE = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+    private static final double EDGE_TOLERANCE = 1e-10;
+
+    private final String name;
+    private final int size;
+
+    private final double[] lng;
+    private final double[] lat;
+
+    // Edge i runs from vertex i to vertex i + 1 (wrapping around)
+    private final double[] edgeLng;
+    private final double[] edgeLat;
+    private final double[] edgeMinLng;
+    private final double[] edgeMaxLng;
+    private final double[] edgeMinLat;
+    private final double[] edgeMaxLat;
+
+    // Ray casting pairs vertex i with vertex i - 1; lngPerLat[i] is that edge's inverse slope
+    private final double[] lngPerLat;
+
+    private final double minLng;
+    private final double maxLng;
+    private final double minLat;
+    private final double maxLat;
+
+    /**
+     * @param region - the region to compile
+     */
+    public CompiledPolygon(NamedRegion region) {
+        if (region == null) {
+            throw new IllegalArgumentException("the named region is null");
+        }
+        this.name = region.name();
+        LngLat[] vertices = region.vertices();
+        // Fewer than three vertices enclose no area and contain nothing
+        this.size = vertices == null || vertices.length < 3 ? 0 : vertices.length;
+
+        lng = new double[size];
+        lat = new double[size];
+        for (int i = 0; i < size; i++) {
+            lng[i] = vertices[i].lng();
+            lat[i] = vertices[i].lat();
+        }
+
+        edgeLng = new double[size];
+        edgeLat = new double[size];
+        edgeMinLng = new double[size];
+        edgeMaxLng = new double[size];
+        edgeMinLat = new double[size];
+        edgeMaxLat = new double[size];
+        lngPerLat = new double[size];
+        double lowLng = Double.POSITIVE_INFINITY, lowLat = Double.POSITIVE_INFINITY;
+        double highLng = Double.NEGATIVE_INFINITY, highLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            int next = (i + 1) % size;
+            int previous = (i + size - 1) % size;
+            edgeLng[i] = lng[next] - lng[i];
+            edgeLat[i] = lat[next] - lat[i];
+            edgeMinLng[i] = Math.min(lng[i], lng[next]);
+            edgeMaxLng[i] = Math.max(lng[i], lng[next]);
+            edgeMinLat[i] = Math.min(lat[i], lat[next]);
+            edgeMaxLat[i] = Math.max(lat[i], lat[next]);
+            lngPerLat[i] = (lng[previous] - lng[i]) / (lat[previous] - lat[i]);
+
+            lowLng = Math.min(lowLng, lng[i]);
+            lowLat = Math.min(lowLat, lat[i]);
+            highLng = Math.max(highLng, lng[i]);
+            highLat = Math.max(highLat, lat[i]);
+        }
+        minLng = lowLng - VERTEX_TOLERANCE;
+        maxLng = highLng + VERTEX_TOLERANCE;
+        minLat = lowLat - VERTEX_TOLERANCE;
+        maxLat = highLat + VERTEX_TOLERANCE;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the number of vertices, or 0 if the region has fewer than three
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position - point to test
+     * @return whether the point is inside the polygon, including its border
+     */
+    public boolean contains(LngLat position) {
+        return contains(position.lng(), position.lat());
+    }
+
+    /**
+     * @return whether ({@code pointLng}, {@code pointLat}) is inside the polygon, including its border
+     */
+    public boolean contains(double pointLng, double pointLat) {
+        if (pointLng < minLng || pointLng > maxLng || pointLat < minLat || pointLat > maxLat) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            double dLng = pointLng - lng[i];
+            double dLat = pointLat - lat[i];
+            if (Math.sqrt(dLng * dLng + dLat * dLat) < VERTEX_TOLERANCE) {
+                return true;
+            }
+            if (pointLat >= edgeMinLat[i] && pointLat <= edgeMaxLat[i]
+                    && pointLng >= edgeMinLng[i] && pointLng <= edgeMaxLng[i]
+                    && Math.abs(dLat * edgeLng[i] - dLng * edgeLat[i]) < EDGE_TOLERANCE) {
+                return true;
+            }
+        }
+
+        boolean inside = false;
+        for (int i = 0, j = size - 1; i < size; j = i++) {
+            if ((lat[i] > pointLat) != (lat[j] > pointLat)
+                    && pointLng < lngPerLat[i] * (pointLat - lat[i]) + lng[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,506 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HPA*-style hierarchical planning: a coarse route over clusters of the map, refined into moves one
+ * cluster at a time.
+ * <p>
+ * The map is covered by a grid of square cells one move wide, anchored at Appleton Tower, and grouped
+ * into clusters of {@link #CLUSTER_SIZE} by {@link #CLUSTER_SIZE} cells. A cell is blocked if a no-fly
+ * zone (or, for routes locked into the central area, the outside of the central area) touches it.
+ * Where free cells face each other across a cluster border, the middle of
+ * each run of such pairs is an entrance, and each cluster stores the grid distances between its own
+ * entrances. Clusters are built on first use and kept for the geometry, so the grid has no fixed
+ * extent.
+ * <p>
+ * A query links the start and end cells to the entrances of their clusters, runs A* over the
+ * entrances. Entrances that a straight line between their neighbours on the route passes clear of
+ * are dropped, up to a leg of two cluster widths, and the remaining ones are flown to in turn with a
+ * short {@link LatticeSearch}, finishing at the end point. Every move is checked by the lattice search, so
+ * the result is a legal move-by-move path; routes are near-shortest. If the coarse route does not
+ * exist or a leg cannot be flown, no route is returned and callers should fall back to a full search.
+ * The planner is thread-safe.
+ */
+public final class HierarchicalPlanner {
+    /**
+     * width of a cluster, in cells
+     */
+    public static final int CLUSTER_SIZE = 16;
+
+    private static final double CELL = SystemConstants.DRONE_MOVE_DISTANCE;
+    // A cell is blocked when a zone edge comes within this distance of its centre, i.e. touches the cell
+    private static final double BLOCK_MARGIN = CELL * Math.sqrt(0.5);
+    private static final double DIAGONAL = Math.sqrt(2);
+    // Border runs at least this many cells long get an entrance at each end instead of one in the middle
+    private static final int LONG_RUN = 6;
+    // Clusters around the start, the end and the zones that the coarse search may use
+    private static final int CLUSTER_BORDER = 2;
+    // A leg spans at most a few clusters, so its search is expected to be short
+    private static final int LEG_EXPANSION_LIMIT = 50_000;
+    // Longer legs than this are not shortcut, since a long leg costs as much as a full search
+    private static final double MAX_LEG = 2 * CLUSTER_SIZE * CELL;
+    // Neighbour offsets of the 8-connected cell grid: four sides, then four diagonals
+    private static final int[] STEP_X = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] STEP_Y = {0, 1, 0, -1, 1, 1, -1, -1};
+
+    private static final ThreadLocal<LatticeSearch> LEG_SEARCH = ThreadLocal.withInitial(() -> {
+        LatticeSearch search = new LatticeSearch();
+        search.setExpansionLimit(LEG_EXPANSION_LIMIT);
+        return search;
+    });
+
+    private final NoFlyZoneIndex noFly;
+    private final CentralAreaChecker central;
+    private final double[][] noFlyEdges;
+    private final double[][] centralEdges;
+    private final double originLng;
+    private final double originLat;
+    // Cluster column and row bounds of the zones, before CLUSTER_BORDER
+    private final int zoneMinX, zoneMinY, zoneMaxX, zoneMaxY;
+    private final Map<Long, Cluster> freeClusters = new ConcurrentHashMap<>();
+    private final Map<Long, Cluster> lockedClusters = new ConcurrentHashMap<>();
+
+    /**
+     * @param geometry - the map to plan over
+     */
+    public HierarchicalPlanner(RouteGeometry geometry) {
+        this.noFly = geometry.noFlyIndex();
+        this.central = geometry.centralChecker();
+        this.noFlyEdges = edgesOf(geometry.noFlyZones());
+        this.centralEdges = edgesOf(new NamedRegion[]{geometry.centralArea()});
+        // Appleton Tower is the centre of cell (0, 0)
+        this.originLng = LatticePoint.APPLETON_TOWER.lng() - CELL / 2;
+        this.originLat = LatticePoint.APPLETON_TOWER.lat() - CELL / 2;
+
+        int minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for (double[] edge : noFlyEdges) {
+            minX = Math.min(minX, clusterOf(cellX(Math.min(edge[0], edge[2]))));
+            maxX = Math.max(maxX, clusterOf(cellX(Math.max(edge[0], edge[2]))));
+            minY = Math.min(minY, clusterOf(cellY(Math.min(edge[1], edge[3]))));
+            maxY = Math.max(maxY, clusterOf(cellY(Math.max(edge[1], edge[3]))));
+        }
+        this.zoneMinX = minX;
+        this.zoneMinY = minY;
+        this.zoneMaxX = maxX;
+        this.zoneMaxY = maxY;
+    }
+
+    /**
+     * Plans a coarse route over the clusters and refines it into moves.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole route
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if no route was found
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, LatticeSearch.MoveRules rules) {
+        long[] entries = coarseRoute(start, end, hasEnteredCentralArea);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        List<LngLat> waypoints = shortcut(start, end, entries, hasEnteredCentralArea);
+        // A route from outside into the central area may not leave it again, so legs flown from inside are locked
+        boolean lockOnEntry = !hasEnteredCentralArea && !central.contains(start) && central.contains(end);
+
+        LatticeSearch search = LEG_SEARCH.get();
+        List<LngLat> path = new ArrayList<>();
+        path.add(start);
+        LngLat position = start;
+        for (LngLat target : waypoints) {
+            boolean locked = hasEnteredCentralArea || (lockOnEntry && central.contains(position));
+            List<LngLat> leg = search.findPath(position, target, locked, rules);
+            if (leg.isEmpty()) {
+                return Collections.emptyList();
+            }
+            path.addAll(leg.subList(1, leg.size()));
+            position = path.get(path.size() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * @return the number of clusters built so far, over both the free and the locked grid
+     */
+    public int getClusterCount() {
+        return freeClusters.size() + lockedClusters.size();
+    }
+
+    // ------------------------------------------------------------------
+    // Coarse search
+    // ------------------------------------------------------------------
+
+    // The cells where the route enters each new cluster, or null if there is no coarse route
+    private long[] coarseRoute(LngLat start, LngLat end, boolean locked) {
+        int startX = cellX(start.lng()), startY = cellY(start.lat());
+        int endX = cellX(end.lng()), endY = cellY(end.lat());
+        long startCell = pack(startX, startY);
+        long endCell = pack(endX, endY);
+        int minX = Math.min(zoneMinX, Math.min(clusterOf(startX), clusterOf(endX))) - CLUSTER_BORDER;
+        int maxX = Math.max(zoneMaxX, Math.max(clusterOf(startX), clusterOf(endX))) + CLUSTER_BORDER;
+        int minY = Math.min(zoneMinY, Math.min(clusterOf(startY), clusterOf(endY))) - CLUSTER_BORDER;
+        int maxY = Math.max(zoneMaxY, Math.max(clusterOf(startY), clusterOf(endY))) + CLUSTER_BORDER;
+
+        // The start and end cells join the graph even when blocked: the lattice search flies from and to the exact points
+        Cluster endCluster = cluster(clusterOf(endX), clusterOf(endY), locked);
+        double[] toEnd = endCluster.distancesFrom(localIndex(endX, endY));
+
+        LongIntHashMap slots = new LongIntHashMap(256);
+        IndexedMinHeap open = new IndexedMinHeap(256);
+        List<Long> cells = new ArrayList<>();
+        double[] g = new double[256];
+        int[] parent = new int[256];
+        boolean[] closed = new boolean[256];
+
+        slots.put(startCell, 0);
+        cells.add(startCell);
+        g[0] = 0.0;
+        parent[0] = -1;
+        open.insertOrUpdate(0, octile(startX, startY, endX, endY), 0.0);
+
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            closed[current] = true;
+            long cell = cells.get(current);
+            if (cell == endCell) {
+                return entriesOf(current, cells, parent);
+            }
+            int x = unpackX(cell), y = unpackY(cell);
+            Cluster home = cluster(clusterOf(x), clusterOf(y), locked);
+            int local = localIndex(x, y);
+
+            List<long[]> edges = new ArrayList<>();
+            if (home == endCluster) {
+                double d = cell == startCell ? home.distancesFrom(local)[localIndex(endX, endY)] : toEnd[local];
+                edges.add(new long[]{endCell, Double.doubleToRawLongBits(d)});
+            }
+            double[] within = cell == startCell ? home.distancesFrom(local) : null;
+            for (int e = 0; e < home.entrances.length; e++) {
+                int other = home.entrances[e];
+                double d = within != null ? within[other] : home.distance(local, other);
+                edges.add(new long[]{home.cellKey(other), Double.doubleToRawLongBits(d)});
+                if (other == local) {
+                    // The paired cell across the border, one step away
+                    int side = home.entranceSides[e];
+                    int nx = x + STEP_X[side], ny = y + STEP_Y[side];
+                    if (clusterOf(nx) >= minX && clusterOf(nx) <= maxX && clusterOf(ny) >= minY && clusterOf(ny) <= maxY) {
+                        edges.add(new long[]{pack(nx, ny), Double.doubleToRawLongBits(1.0)});
+                    }
+                }
+            }
+
+            for (long[] edge : edges) {
+                double d = Double.longBitsToDouble(edge[1]);
+                if (d == Double.POSITIVE_INFINITY || edge[0] == cell) {
+                    continue;
+                }
+                int next = slots.get(edge[0]);
+                if (next == LongIntHashMap.MISSING) {
+                    next = cells.size();
+                    cells.add(edge[0]);
+                    slots.put(edge[0], next);
+                    if (next == g.length) {
+                        g = Arrays.copyOf(g, next * 2);
+                        parent = Arrays.copyOf(parent, next * 2);
+                        closed = Arrays.copyOf(closed, next * 2);
+                    }
+                    g[next] = Double.POSITIVE_INFINITY;
+                } else if (closed[next]) {
+                    continue;
+                }
+                double tentative = g[current] + d;
+                if (tentative < g[next]) {
+                    g[next] = tentative;
+                    parent[next] = current;
+                    int nx = unpackX(edge[0]), ny = unpackY(edge[0]);
+                    double h = octile(nx, ny, endX, endY);
+                    open.insertOrUpdate(next, tentative + h, h);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Cells on the route from the start to the node that lie in a different cluster from the cell before them
+    private long[] entriesOf(int node, List<Long> cells, int[] parent) {
+        List<Long> route = new ArrayList<>();
+        for (int slot = node; slot >= 0; slot = parent[slot]) {
+            route.add(cells.get(slot));
+        }
+        Collections.reverse(route);
+        List<Long> entries = new ArrayList<>();
+        for (int i = 1; i < route.size() - 1; i++) {
+            long before = route.get(i - 1);
+            long cell = route.get(i);
+            if (clusterOf(unpackX(before)) != clusterOf(unpackX(cell)) || clusterOf(unpackY(before)) != clusterOf(unpackY(cell))) {
+                entries.add(cell);
+            }
+        }
+        return entries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Drops every entry cell that the straight line between its neighbours on the route passes clear of
+    private List<LngLat> shortcut(LngLat start, LngLat end, long[] entries, boolean locked) {
+        List<LngLat> route = new ArrayList<>();
+        for (long entry : entries) {
+            route.add(centreOf(entry));
+        }
+        route.add(end);
+        List<LngLat> waypoints = new ArrayList<>();
+        LngLat from = start;
+        int i = 0;
+        while (i < route.size()) {
+            int furthest = i;
+            for (int j = route.size() - 1; j > i; j--) {
+                if (distance(from, route.get(j)) <= MAX_LEG && isClear(from, route.get(j), start, end, locked)) {
+                    furthest = j;
+                    break;
+                }
+            }
+            from = route.get(furthest);
+            waypoints.add(from);
+            i = furthest + 1;
+        }
+        return waypoints;
+    }
+
+    private static double distance(LngLat a, LngLat b) {
+        return Math.hypot(a.lng() - b.lng(), a.lat() - b.lat());
+    }
+
+    // Whether every cell the segment passes through is free; the start and end cells always count as free
+    private boolean isClear(LngLat from, LngLat to, LngLat start, LngLat end, boolean locked) {
+        long startCell = pack(cellX(start.lng()), cellY(start.lat()));
+        long endCell = pack(cellX(end.lng()), cellY(end.lat()));
+        int samples = (int) Math.ceil(4 * distance(from, to) / CELL);
+        for (int k = 0; k <= samples; k++) {
+            double t = samples == 0 ? 0 : (double) k / samples;
+            int x = cellX(from.lng() + t * (to.lng() - from.lng()));
+            int y = cellY(from.lat() + t * (to.lat() - from.lat()));
+            long cell = pack(x, y);
+            if (cell != startCell && cell != endCell
+                    && cluster(clusterOf(x), clusterOf(y), locked).blocked[localIndex(x, y)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double octile(int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x1 - x2);
+        int dy = Math.abs(y1 - y2);
+        return Math.max(dx, dy) + (DIAGONAL - 1) * Math.min(dx, dy);
+    }
+
+    // ------------------------------------------------------------------
+    // Clusters
+    // ------------------------------------------------------------------
+
+    private Cluster cluster(int clusterX, int clusterY, boolean locked) {
+        Map<Long, Cluster> clusters = locked ? lockedClusters : freeClusters;
+        return clusters.computeIfAbsent(pack(clusterX, clusterY), key -> new Cluster(clusterX, clusterY, locked));
+    }
+
+    // The cells of one cluster, its entrances and the distances between them
+    private final class Cluster {
+        private final int firstX;
+        private final int firstY;
+        private final boolean[] blocked = new boolean[CLUSTER_SIZE * CLUSTER_SIZE];
+        private final int[] entrances;
+        // Side (index into STEP_X and STEP_Y) that each entrance faces
+        private final int[] entranceSides;
+        private final double[][] entranceDistances;
+
+        Cluster(int clusterX, int clusterY, boolean locked) {
+            this.firstX = clusterX * CLUSTER_SIZE;
+            this.firstY = clusterY * CLUSTER_SIZE;
+            for (int y = 0; y < CLUSTER_SIZE; y++) {
+                for (int x = 0; x < CLUSTER_SIZE; x++) {
+                    blocked[y * CLUSTER_SIZE + x] = isBlocked(firstX + x, firstY + y, locked);
+                }
+            }
+
+            List<int[]> found = new ArrayList<>();
+            for (int side = 0; side < 4; side++) {
+                addEntrances(side, locked, found);
+            }
+            this.entrances = new int[found.size()];
+            this.entranceSides = new int[found.size()];
+            for (int i = 0; i < found.size(); i++) {
+                entrances[i] = found.get(i)[0];
+                entranceSides[i] = found.get(i)[1];
+            }
+            this.entranceDistances = new double[entrances.length][];
+            for (int i = 0; i < entrances.length; i++) {
+                entranceDistances[i] = distancesFrom(entrances[i]);
+            }
+        }
+
+        // Entrances on one side: runs of free cells whose neighbours across the border are free too get
+        // one in the middle, or one at each end if they are long, so routes can pass close to obstacles
+        private void addEntrances(int side, boolean locked, List<int[]> found) {
+            int runStart = -1;
+            for (int along = 0; along <= CLUSTER_SIZE; along++) {
+                boolean open = false;
+                if (along < CLUSTER_SIZE) {
+                    int local = borderCell(side, along);
+                    int x = local % CLUSTER_SIZE;
+                    int y = local / CLUSTER_SIZE;
+                    open = !blocked[local] && !isBlocked(firstX + x + STEP_X[side], firstY + y + STEP_Y[side], locked);
+                }
+                if (open && runStart < 0) {
+                    runStart = along;
+                } else if (!open && runStart >= 0) {
+                    int runEnd = along - 1;
+                    if (runEnd - runStart + 1 >= LONG_RUN) {
+                        found.add(new int[]{borderCell(side, runStart), side});
+                        found.add(new int[]{borderCell(side, runEnd), side});
+                    } else {
+                        found.add(new int[]{borderCell(side, runStart + (runEnd - runStart) / 2), side});
+                    }
+                    runStart = -1;
+                }
+            }
+        }
+
+        // The local index of the cell at a position along one side of the cluster
+        private int borderCell(int side, int along) {
+            int x = side == 0 ? CLUSTER_SIZE - 1 : side == 2 ? 0 : along;
+            int y = side == 1 ? CLUSTER_SIZE - 1 : side == 3 ? 0 : along;
+            return y * CLUSTER_SIZE + x;
+        }
+
+        double distance(int fromLocal, int toLocal) {
+            for (int i = 0; i < entrances.length; i++) {
+                if (entrances[i] == fromLocal) {
+                    return entranceDistances[i][toLocal];
+                }
+            }
+            return distancesFrom(fromLocal)[toLocal];
+        }
+
+        // 8-connected grid distances inside the cluster, in cells; diagonal steps may not cut a blocked corner
+        double[] distancesFrom(int source) {
+            double[] distance = new double[blocked.length];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            distance[source] = 0.0;
+            IndexedMinHeap open = new IndexedMinHeap(blocked.length);
+            open.insertOrUpdate(source, 0.0, 0.0);
+            while (!open.isEmpty()) {
+                int current = open.poll();
+                int x = current % CLUSTER_SIZE;
+                int y = current / CLUSTER_SIZE;
+                for (int k = 0; k < STEP_X.length; k++) {
+                    int nx = x + STEP_X[k];
+                    int ny = y + STEP_Y[k];
+                    if (nx < 0 || ny < 0 || nx >= CLUSTER_SIZE || ny >= CLUSTER_SIZE || blocked[ny * CLUSTER_SIZE + nx]) {
+                        continue;
+                    }
+                    if (k >= 4 && (blocked[y * CLUSTER_SIZE + nx] || blocked[ny * CLUSTER_SIZE + x])) {
+                        continue;
+                    }
+                    double tentative = distance[current] + (k < 4 ? 1.0 : DIAGONAL);
+                    int next = ny * CLUSTER_SIZE + nx;
+                    if (tentative < distance[next]) {
+                        distance[next] = tentative;
+                        open.insertOrUpdate(next, tentative, 0.0);
+                    }
+                }
+            }
+            return distance;
+        }
+
+        long cellKey(int local) {
+            return pack(firstX + local % CLUSTER_SIZE, firstY + local / CLUSTER_SIZE);
+        }
+    }
+
+    private boolean isBlocked(int x, int y, boolean locked) {
+        double lng = originLng + (x + 0.5) * CELL;
+        double lat = originLat + (y + 0.5) * CELL;
+        if (noFly.isInAnyRegion(lng, lat) || nearAny(noFlyEdges, lng, lat)) {
+            return true;
+        }
+        return locked && (!central.contains(lng, lat) || nearAny(centralEdges, lng, lat));
+    }
+
+    private static boolean nearAny(double[][] edges, double lng, double lat) {
+        for (double[] edge : edges) {
+            if (Math.min(edge[0], edge[2]) - BLOCK_MARGIN > lng || Math.max(edge[0], edge[2]) + BLOCK_MARGIN < lng
+                    || Math.min(edge[1], edge[3]) - BLOCK_MARGIN > lat || Math.max(edge[1], edge[3]) + BLOCK_MARGIN < lat) {
+                continue;
+            }
+            double dLng = edge[2] - edge[0];
+            double dLat = edge[3] - edge[1];
+            double lengthSquared = dLng * dLng + dLat * dLat;
+            double t = lengthSquared == 0 ? 0 : ((lng - edge[0]) * dLng + (lat - edge[1]) * dLat) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+            if (Math.hypot(lng - edge[0] - t * dLng, lat - edge[1] - t * dLat) < BLOCK_MARGIN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------
+    // Cell coordinates
+    // ------------------------------------------------------------------
+
+    private int cellX(double lng) {
+        return (int) Math.floor((lng - originLng) / CELL);
+    }
+
+    private int cellY(double lat) {
+        return (int) Math.floor((lat - originLat) / CELL);
+    }
+
+    private static int clusterOf(int cell) {
+        return Math.floorDiv(cell, CLUSTER_SIZE);
+    }
+
+    private static int localIndex(int x, int y) {
+        return Math.floorMod(y, CLUSTER_SIZE) * CLUSTER_SIZE + Math.floorMod(x, CLUSTER_SIZE);
+    }
+
+    private LngLat centreOf(long cell) {
+        return new LngLat(originLng + (unpackX(cell) + 0.5) * CELL, originLat + (unpackY(cell) + 0.5) * CELL);
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private static int unpackX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int unpackY(long key) {
+        return (int) key;
+    }
+
+    private static double[][] edgesOf(NamedRegion[] regions) {
+        List<double[]> edges = new ArrayList<>();
+        for (NamedRegion region : regions) {
+            LngLat[] vertices = region.vertices();
+            if (vertices == null) {
+                continue;
+            }
+            for (int i = 0; i < vertices.length; i++) {
+                LngLat a = vertices[i];
+                LngLat b = vertices[(i + 1) % vertices.length];
+                edges.add(new double[]{a.lng(), a.lat(), b.lng(), b.lat()});
+            }
+        }
+        return edges.toArray(new double[0][]);
+    }
+}
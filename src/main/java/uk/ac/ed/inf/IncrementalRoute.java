@@ -0,0 +1,415 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One route kept up to date across map changes with Lifelong Planning A* (LPA*).
+ * <p>
+ * The search state of the route (every lattice node it touched, with its g-score, its one-step
+ * lookahead rhs-score and the open list) outlives the search. When the route is asked for over a
+ * map whose no-fly zones differ from the last one, only the nodes within a move of an added or
+ * removed zone have their rhs-scores recomputed; the search then resumes from the open list and
+ * re-expands just the nodes whose route length actually changed. A zone that does not touch the
+ * explored area costs no expansions at all. Changing the central area starts the route over.
+ * <p>
+ * Nodes are packed {@link LatticePoint} keys relative to the start, as in {@link LatticeSearch},
+ * and scores are counted in moves. Positions close to the end are joined to a virtual goal node
+ * by edges as long as their remaining distance, so the goal is reached like any other node and
+ * the route found is the one {@link LatticeSearch} would find: the fewest moves plus the distance
+ * left at the end. The state grows with every node the route touches, so it is capped by a node
+ * limit (see {@link #setNodeLimit}); a search that runs into it gives up. An instance is not
+ * thread-safe.
+ */
+public final class IncrementalRoute {
+    private static final double INFINITE = Double.POSITIVE_INFINITY;
+    private static final int GOAL = 0;
+    private static final int START = 1;
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+
+    private final LngLatHandler handler = new LngLatHandler();
+    private final LngLat start;
+    private final LngLat end;
+    private final boolean isReturnPath;
+    private final LongIntHashMap slotsByKey = new LongIntHashMap(4096);
+    private final IndexedMinHeap open = new IndexedMinHeap(1024);
+
+    private long[] keys   = new long[1024];
+    private double[] lng  = new double[1024];
+    private double[] lat  = new double[1024];
+    private double[] g    = new double[1024];
+    private double[] rhs  = new double[1024];
+    private double[] h    = new double[1024];
+    private int[] parent  = new int[1024];
+    // Whether the slot is close to the end, i.e. a predecessor of the goal
+    private boolean[] nearEnd = new boolean[1024];
+    private int slotCount;
+    private int[] goalSlots = new int[16];
+    private int goalSlotCount;
+
+    private RouteGeometry geometry;
+    private LatticeSearch.MoveRules rules;
+    private boolean hasEnteredCentralArea;
+    private int expandedNodes;
+    private boolean latticeBoundReached;
+    private int nodeLimit = Integer.MAX_VALUE;
+    private boolean nodeLimitReached;
+
+    /**
+     * @param start        - starting coordinate
+     * @param end          - target coordinate
+     * @param isReturnPath - whether the route may not leave the central area if it starts inside it
+     */
+    public IncrementalRoute(LngLat start, LngLat end, boolean isReturnPath) {
+        this.start = start;
+        this.end = end;
+        this.isReturnPath = isReturnPath;
+    }
+
+    /**
+     * Returns the shortest route over {@code geometry}, searching it on the first call and
+     * repairing the previous route on later calls over a different map.
+     *
+     * @param geometry - the map to plan over
+     * @param rules    - move validity rules of that map
+     * @return the coordinates from start to end (including both), or an empty list if no path exists
+     * or the node limit was reached
+     */
+    public List<LngLat> findPath(RouteGeometry geometry, LatticeSearch.MoveRules rules) {
+        RouteGeometry previous = this.geometry;
+        this.geometry = geometry;
+        this.rules = rules;
+        expandedNodes = 0;
+        nodeLimitReached = false;
+        if (previous == null || !Arrays.equals(previous.centralArea().vertices(), geometry.centralArea().vertices())) {
+            restart();
+        } else if (previous.hash() != geometry.hash()) {
+            repair(changedZones(previous.noFlyZones(), geometry.noFlyZones()));
+        }
+        computeShortestPath();
+        return nodeLimitReached ? Collections.emptyList() : reconstructPath();
+    }
+
+    /**
+     * Sets the most lattice nodes the route may keep state for, which also caps the expansions of
+     * one call of {@link #findPath}. A search that would need more stops and finds no path; the
+     * state it leaves is only worth keeping if the limit is raised.
+     *
+     * @param nodeLimit the most nodes to keep, {@link Integer#MAX_VALUE} (the default) for no limit
+     */
+    public void setNodeLimit(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * @return whether the last call of {@link #findPath} stopped at the node limit
+     */
+    public boolean isNodeLimitReached() {
+        return nodeLimitReached;
+    }
+
+    /**
+     * @return the number of nodes taken off the open list by the last call of {@link #findPath}
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return the number of lattice nodes the route keeps state for
+     */
+    public int getNodeCount() {
+        return slotCount - START;
+    }
+
+    /**
+     * @return whether the search had to discard moves beyond the range of {@link LatticePoint}
+     */
+    public boolean isLatticeBoundReached() {
+        return latticeBoundReached;
+    }
+
+    // ------------------------------------------------------------------
+    // LPA*
+    // ------------------------------------------------------------------
+
+    private void restart() {
+        slotsByKey.clear();
+        open.clear();
+        slotCount = 0;
+        goalSlotCount = 0;
+        latticeBoundReached = false;
+        hasEnteredCentralArea = isReturnPath && geometry.centralChecker().contains(start);
+
+        addSlot(LatticePoint.OUT_OF_RANGE, end.lng(), end.lat());
+        h[GOAL] = 0.0;
+        int startSlot = addSlot(LatticePoint.ORIGIN_KEY, start.lng(), start.lat());
+        rhs[startSlot] = 0;
+        requeue(startSlot);
+    }
+
+    // Recomputes the rhs-score of every node within a move of a zone that was added or removed
+    private void repair(List<NamedRegion> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        double[][] boxes = new double[changed.size()][];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = boundsOf(changed.get(i));
+        }
+        int existing = slotCount;
+        for (int slot = START; slot < existing; slot++) {
+            if (!isNear(boxes, lng[slot], lat[slot])) {
+                continue;
+            }
+            updateVertex(slot);
+            // Nodes inside a removed zone were never added; they become reachable from this one
+            if (g[slot] == INFINITE) {
+                continue;
+            }
+            for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+                long key = LatticePoint.step(keys[slot], direction);
+                if (key != LatticePoint.OUT_OF_RANGE && slotsByKey.get(key) == LongIntHashMap.MISSING
+                        && isNear(boxes, start.lng() + LatticePoint.offsetLng(key), start.lat() + LatticePoint.offsetLat(key))) {
+                    relax(slot, direction, key);
+                }
+            }
+        }
+    }
+
+    private void computeShortestPath() {
+        while (!open.isEmpty() && (keyLess(open.peek(), GOAL) || rhs[GOAL] != g[GOAL])) {
+            if (slotCount - START > nodeLimit || expandedNodes >= nodeLimit) {
+                nodeLimitReached = true;
+                return;
+            }
+            int current = open.poll();
+            expandedNodes++;
+            if (g[current] > rhs[current]) {
+                g[current] = rhs[current];
+                if (current == GOAL) {
+                    continue;
+                }
+                for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+                    long key = LatticePoint.step(keys[current], direction);
+                    if (key == LatticePoint.OUT_OF_RANGE) {
+                        latticeBoundReached = true;
+                    } else {
+                        relax(current, direction, key);
+                    }
+                }
+                if (nearEnd[current] && g[current] + h[current] < rhs[GOAL]) {
+                    rhs[GOAL] = g[current] + h[current];
+                    parent[GOAL] = current;
+                    requeue(GOAL);
+                }
+            } else {
+                // Underconsistent: the node got longer, so everything routed through it is recomputed
+                g[current] = INFINITE;
+                updateVertex(current);
+                if (current == GOAL) {
+                    continue;
+                }
+                for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+                    int successor = slotsByKey.get(LatticePoint.step(keys[current], direction));
+                    if (successor != LongIntHashMap.MISSING && parent[successor] == current) {
+                        updateVertex(successor);
+                    }
+                }
+                if (nearEnd[current] && parent[GOAL] == current) {
+                    updateVertex(GOAL);
+                }
+            }
+        }
+    }
+
+    // Lowers the rhs-score of the node one move from {@code from}, adding it if it is new
+    private void relax(int from, int direction, long key) {
+        int next = slotsByKey.get(key);
+        double nextLng = next == LongIntHashMap.MISSING ? start.lng() + LatticePoint.offsetLng(key) : lng[next];
+        double nextLat = next == LongIntHashMap.MISSING ? start.lat() + LatticePoint.offsetLat(key) : lat[next];
+        if (next != LongIntHashMap.MISSING && g[from] + 1 >= rhs[next]) {
+            return;
+        }
+        if (!rules.isValidMove(new LngLat(lng[from], lat[from]), direction, new LngLat(nextLng, nextLat),
+                hasEnteredCentralArea)) {
+            return;
+        }
+        if (next == LongIntHashMap.MISSING) {
+            next = addSlot(key, nextLng, nextLat);
+        }
+        rhs[next] = g[from] + 1;
+        parent[next] = from;
+        requeue(next);
+    }
+
+    // Recomputes the rhs-score of the node from all its predecessors
+    private void updateVertex(int slot) {
+        if (slot == GOAL) {
+            rhs[GOAL] = INFINITE;
+            for (int i = 0; i < goalSlotCount; i++) {
+                int candidate = goalSlots[i];
+                if (g[candidate] + h[candidate] < rhs[GOAL]) {
+                    rhs[GOAL] = g[candidate] + h[candidate];
+                    parent[GOAL] = candidate;
+                }
+            }
+        } else if (slot != START) {
+            rhs[slot] = INFINITE;
+            LngLat position = new LngLat(lng[slot], lat[slot]);
+            for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+                // The predecessor one step back, moving towards this node in {@code direction}
+                long key = LatticePoint.step(keys[slot], (direction + LatticePoint.DIRECTIONS / 2) % LatticePoint.DIRECTIONS);
+                int predecessor = key == LatticePoint.OUT_OF_RANGE ? LongIntHashMap.MISSING : slotsByKey.get(key);
+                if (predecessor == LongIntHashMap.MISSING || g[predecessor] == INFINITE || g[predecessor] + 1 >= rhs[slot]) {
+                    continue;
+                }
+                if (rules.isValidMove(new LngLat(lng[predecessor], lat[predecessor]), direction, position, hasEnteredCentralArea)) {
+                    rhs[slot] = g[predecessor] + 1;
+                    parent[slot] = predecessor;
+                }
+            }
+        }
+        requeue(slot);
+    }
+
+    // Queues an inconsistent node with its current key, and takes a consistent one off the open list
+    private void requeue(int slot) {
+        if (g[slot] == rhs[slot]) {
+            open.remove(slot);
+        } else {
+            open.insertOrUpdate(slot, key(slot), tieBreak(slot));
+        }
+    }
+
+    // As in LatticeSearch, ties go to the node nearest the end, except that the goal loses them:
+    // the nodes next to it share its key and have to be settled first
+    private boolean keyLess(int slot, int other) {
+        return key(slot) < key(other) || (key(slot) == key(other) && tieBreak(slot) < tieBreak(other));
+    }
+
+    private double key(int slot) {
+        return Math.min(g[slot], rhs[slot]) + h[slot];
+    }
+
+    private double tieBreak(int slot) {
+        return slot == GOAL ? Double.POSITIVE_INFINITY : h[slot];
+    }
+
+    private List<LngLat> reconstructPath() {
+        if (g[GOAL] == INFINITE) {
+            return Collections.emptyList();
+        }
+        List<LngLat> path = new ArrayList<>();
+        for (int slot = parent[GOAL]; slot != START; slot = parent[slot]) {
+            if (slot < 0 || path.size() >= slotCount) {
+                throw new IllegalStateException("route parents do not lead back to the start");
+            }
+            path.add(new LngLat(lng[slot], lat[slot]));
+        }
+        path.add(start);
+        Collections.reverse(path);
+        return path;
+    }
+
+    // ------------------------------------------------------------------
+    // Slots
+    // ------------------------------------------------------------------
+
+    private int addSlot(long key, double nodeLng, double nodeLat) {
+        if (slotCount == lng.length) {
+            int capacity = slotCount * 2;
+            keys   = Arrays.copyOf(keys, capacity);
+            lng    = Arrays.copyOf(lng, capacity);
+            lat    = Arrays.copyOf(lat, capacity);
+            g      = Arrays.copyOf(g, capacity);
+            rhs    = Arrays.copyOf(rhs, capacity);
+            h      = Arrays.copyOf(h, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            nearEnd = Arrays.copyOf(nearEnd, capacity);
+        }
+        int slot = slotCount++;
+        keys[slot]   = key;
+        lng[slot]    = nodeLng;
+        lat[slot]    = nodeLat;
+        g[slot]      = INFINITE;
+        rhs[slot]    = INFINITE;
+        parent[slot] = -1;
+        nearEnd[slot] = false;
+        if (slot == GOAL) {
+            return slot;
+        }
+        slotsByKey.put(key, slot);
+        double dLng = nodeLng - end.lng();
+        double dLat = nodeLat - end.lat();
+        double distance = Math.sqrt(dLng * dLng + dLat * dLat);
+        h[slot] = distance / MOVE;
+        if (handler.isCloseTo(new LngLat(nodeLng, nodeLat), end)) {
+            if (goalSlotCount == goalSlots.length) {
+                goalSlots = Arrays.copyOf(goalSlots, goalSlotCount * 2);
+            }
+            goalSlots[goalSlotCount++] = slot;
+            nearEnd[slot] = true;
+        }
+        return slot;
+    }
+
+    // ------------------------------------------------------------------
+    // Map changes
+    // ------------------------------------------------------------------
+
+    // The zones in one list but not the other, compared by their vertices
+    private static List<NamedRegion> changedZones(NamedRegion[] before, NamedRegion[] after) {
+        List<NamedRegion> changed = new ArrayList<>();
+        for (NamedRegion zone : before) {
+            if (!containsZone(after, zone)) {
+                changed.add(zone);
+            }
+        }
+        for (NamedRegion zone : after) {
+            if (!containsZone(before, zone)) {
+                changed.add(zone);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean containsZone(NamedRegion[] zones, NamedRegion zone) {
+        for (NamedRegion candidate : zones) {
+            if (Arrays.equals(candidate.vertices(), zone.vertices())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bounding box {minLng, minLat, maxLng, maxLat} of the zone, grown by a move on every side
+    private static double[] boundsOf(NamedRegion zone) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        LngLat[] vertices = zone.vertices() == null ? new LngLat[0] : zone.vertices();
+        for (LngLat vertex : vertices) {
+            bounds[0] = Math.min(bounds[0], vertex.lng() - MOVE);
+            bounds[1] = Math.min(bounds[1], vertex.lat() - MOVE);
+            bounds[2] = Math.max(bounds[2], vertex.lng() + MOVE);
+            bounds[3] = Math.max(bounds[3], vertex.lat() + MOVE);
+        }
+        return bounds;
+    }
+
+    // Whether the position is within a move of a changed zone, so moves from or to it may have changed
+    private static boolean isNear(double[][] boxes, double nodeLng, double nodeLat) {
+        for (double[] box : boxes) {
+            if (nodeLng >= box[0] && nodeLng <= box[2] && nodeLat >= box[1] && nodeLat <= box[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
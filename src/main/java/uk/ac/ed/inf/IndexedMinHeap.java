@@ -0,0 +1,211 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over integer slot ids with decrease-key support.
+ * Each slot carries a primary key and a secondary (tie-break) key; smaller wins on both.
+ * The heap never stores a slot twice, so the open list of an A* search stays free of duplicates.
+ */
+public final class IndexedMinHeap implements OpenList {
+    private int[] heap;        // heap position -> slot
+    private int[] positions;   // slot -> heap position, or -1 when not queued
+    private double[] primary;
+    private double[] secondary;
+    private int size;
+
+    public IndexedMinHeap() {
+        this(256);
+    }
+
+    public IndexedMinHeap(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.heap      = new int[capacity];
+        this.positions = new int[capacity];
+        this.primary   = new double[capacity];
+        this.secondary = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int slot) {
+        return slot < positions.length && positions[slot] >= 0;
+    }
+
+    /**
+     * Removes every queued slot. Runs in O(size) rather than O(capacity).
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Queues {@code slot} with the given keys, or moves it to its new place if it is already queued.
+     *
+     * @param slot          - slot id, must be non-negative
+     * @param primaryKey    - main ordering key (e.g. f = g + h)
+     * @param secondaryKey  - tie-break key (e.g. h)
+     */
+    @Override
+    public void insertOrUpdate(int slot, double primaryKey, double secondaryKey) {
+        ensureSlotCapacity(slot);
+        int position = positions[slot];
+        if (position < 0) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            primary[slot]   = primaryKey;
+            secondary[slot] = secondaryKey;
+            heap[size] = slot;
+            positions[slot] = size;
+            siftUp(size++);
+            return;
+        }
+        boolean decreased = less(primaryKey, secondaryKey, primary[slot], secondary[slot]);
+        primary[slot]   = primaryKey;
+        secondary[slot] = secondaryKey;
+        if (decreased) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * @return the slot with the smallest keys, removing it from the heap
+     */
+    @Override
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty");
+        }
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * @return the slot with the smallest keys, leaving it in the heap
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty");
+        }
+        return heap[0];
+    }
+
+    /**
+     * Takes {@code slot} off the heap if it is queued.
+     *
+     * @param slot - slot id
+     */
+    public void remove(int slot) {
+        if (!contains(slot)) {
+            return;
+        }
+        int position = positions[slot];
+        positions[slot] = -1;
+        size--;
+        if (position == size) {
+            return;
+        }
+        int last = heap[size];
+        heap[position] = last;
+        positions[last] = position;
+        siftDown(position);
+        if (positions[last] == position) {
+            siftUp(position);
+        }
+    }
+
+    /**
+     * @return the smallest primary key currently queued
+     */
+    public double peekPrimary() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty");
+        }
+        return primary[heap[0]];
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        double p = primary[slot];
+        double s = secondary[slot];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if (!less(p, s, primary[parent], secondary[parent])) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        double p = primary[slot];
+        double s = secondary[slot];
+        int half = size >>> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size) {
+                int right = heap[rightPosition];
+                if (less(primary[right], secondary[right], primary[child], secondary[child])) {
+                    childPosition = rightPosition;
+                    child = right;
+                }
+            }
+            if (!less(primary[child], secondary[child], p, s)) {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    private static boolean less(double p1, double s1, double p2, double s2) {
+        return p1 < p2 || (p1 == p2 && s1 < s2);
+    }
+
+    private void ensureSlotCapacity(int slot) {
+        if (slot < positions.length) {
+            return;
+        }
+        int capacity = Math.max(slot + 1, positions.length * 2);
+        int oldLength = positions.length;
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldLength, capacity, -1);
+        primary   = Arrays.copyOf(primary, capacity);
+        secondary = Arrays.copyOf(secondary, capacity);
+    }
+}
@@ -0,0 +1,380 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Jump point style A* over the drone move lattice.
+ * <p>
+ * On open ground, straight runs of moves in one of the 16 directions can be ordered in many ways
+ * that all give the same route length, and plain A* expands every one of them. This search only
+ * queues the positions where a route may need to turn: from each expanded node it keeps moving in
+ * one direction and stops (a jump point) when the next move is invalid, when a move in one of the two
+ * adjacent directions becomes valid after being blocked (a forced neighbour, where an obstacle edge
+ * ends), when the target comes close, or when the bearing to the target crosses an adjacent direction
+ * or starts to point backwards, so the route can turn towards it. The moves skipped by a jump are
+ * replayed when the path is reconstructed, so the result has the same move-by-move format as
+ * {@link LatticeSearch}.
+ * <p>
+ * Skipping positions makes routes near-shortest rather than guaranteed shortest, and a narrow gap
+ * that is only reachable by turning in the middle of a jump can be missed; callers should fall back
+ * to {@link LatticeSearch} when no path is found. Like that search, it can be bounded by a
+ * {@link SearchCorridor}, an expansion limit and a move budget, and reports which of them ended a
+ * search without a path. An instance reuses its arrays between searches and is therefore not
+ * thread-safe.
+ */
+public final class JumpPointSearch {
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final int DIRECTIONS = LatticePoint.DIRECTIONS;
+    // Long jumps away from the target are cut so they do not fill the queue with far-off nodes
+    private static final int MAX_JUMP = 64;
+    // Slack for rounding when counting the moves left to a target; never more than a move's worth
+    private static final double MOVE_COUNT_TOLERANCE = 1e-6;
+
+    private final LngLatHandler handler = new LngLatHandler();
+    private final LongIntHashMap slotsByKey = new LongIntHashMap(1024);
+    private final IndexedMinHeap openSet = new IndexedMinHeap(256);
+
+    private long[] keys = new long[256];
+    private double[] lng = new double[256];
+    private double[] lat = new double[256];
+    private double[] gScore = new double[256];
+    private double[] hScore = new double[256];
+    private int[] parent = new int[256];
+    private byte[] parentDirection = new byte[256];
+    private int[] jumpLength = new int[256];
+    private boolean[] closed = new boolean[256];
+    private int slotCount;
+
+    private double originLng;
+    private double originLat;
+    private int expandedNodes;
+    private int checkedMoves;
+    private int expansionLimit = Integer.MAX_VALUE;
+    private boolean latticeBoundReached;
+    private SearchCorridor corridor;
+    private boolean corridorReached;
+    private boolean expansionLimitReached;
+    private int moveBudget = Integer.MAX_VALUE;
+    private boolean moveBudgetReached;
+    private LatticeSearch.FailureReason failureReason = LatticeSearch.FailureReason.NONE;
+
+    /**
+     * Finds a path from {@code start} to a position close to {@code end}.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole search
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if no path was
+     *         found, with the reason in {@link #getFailureReason()}
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, LatticeSearch.MoveRules rules) {
+        reset(start);
+        int startSlot = addSlot(LatticePoint.ORIGIN_KEY, originLng, originLat, end);
+        gScore[startSlot] = 0.0;
+        openSet.insertOrUpdate(startSlot, hScore[startSlot], hScore[startSlot]);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closed[current] = true;
+            expandedNodes++;
+
+            LngLat currentPosition = new LngLat(lng[current], lat[current]);
+            if (handler.isCloseTo(currentPosition, end)) {
+                return reconstructPath(current);
+            }
+            if (expandedNodes >= expansionLimit) {
+                expansionLimitReached = true;
+                break;
+            }
+
+            // Bit d is set when the first move in direction d is valid
+            int validMoves = 0;
+            for (int direction = 0; direction < DIRECTIONS; direction++) {
+                long key = LatticePoint.step(keys[current], direction);
+                if (key == LatticePoint.OUT_OF_RANGE) {
+                    latticeBoundReached = true;
+                } else if (isValid(currentPosition, direction, key, hasEnteredCentralArea, rules)) {
+                    validMoves |= 1 << direction;
+                }
+            }
+            for (int direction = 0; direction < DIRECTIONS; direction++) {
+                if ((validMoves & 1 << direction) != 0) {
+                    jump(current, direction, sideMoves(validMoves, direction), end, hasEnteredCentralArea, rules);
+                }
+            }
+        }
+        failureReason = reasonOfFailure();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Keeps following searches inside {@code corridor}: moves that would leave it are not taken.
+     *
+     * @param corridor - the box to search in, or {@code null} (the default) to search without bounds
+     */
+    public void setSearchCorridor(SearchCorridor corridor) {
+        this.corridor = corridor;
+    }
+
+    /**
+     * Bounds the number of jump points following searches expand before they give up and return an
+     * empty path.
+     *
+     * @param limit - the maximum number of expanded jump points, {@link Integer#MAX_VALUE} (no limit) by default
+     */
+    public void setExpansionLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("expansion limit must be positive: " + limit);
+        }
+        this.expansionLimit = limit;
+    }
+
+    /**
+     * Cuts jumps of following searches at {@code moves} moves from the start, and drops every jump
+     * point whose moves so far plus the fewest moves that could still bring it close to the target
+     * in a straight line exceed them, as {@link LatticeSearch#setMoveBudget} does.
+     *
+     * @param moves - the most moves a path may have, {@link Integer#MAX_VALUE} (no budget) by default
+     */
+    public void setMoveBudget(int moves) {
+        if (moves < 0) {
+            throw new IllegalArgumentException("move budget must not be negative: " + moves);
+        }
+        this.moveBudget = moves;
+    }
+
+    /**
+     * Jumps can miss routes that {@link LatticeSearch} finds, so no reason is a proof:
+     * {@link LatticeSearch.FailureReason#UNREACHABLE} only means the jumps ran out.
+     *
+     * @return why the last search found no path, or {@link LatticeSearch.FailureReason#NONE} if it found one
+     */
+    public LatticeSearch.FailureReason getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * @return the number of jump points taken off the open list by the last search
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return the number of single moves checked against the move rules by the last search
+     */
+    public int getCheckedMoves() {
+        return checkedMoves;
+    }
+
+    /**
+     * @return whether the last search had to discard moves beyond the range of {@link LatticePoint}
+     */
+    public boolean isLatticeBoundReached() {
+        return latticeBoundReached;
+    }
+
+    // Moves from the node in direction until a jump point, then queues that point; the first move is known to be valid
+    private void jump(int from, int direction, int sides, LngLat end, boolean locked, LatticeSearch.MoveRules rules) {
+        int left = (direction + 1) % DIRECTIONS;
+        int right = (direction + DIRECTIONS - 1) % DIRECTIONS;
+        double stepLng = LngLatHandler.stepLng(direction);
+        double stepLat = LngLatHandler.stepLat(direction);
+
+        long key = LatticePoint.step(keys[from], direction);
+        long movesLeft = moveBudget - movesTo(from);
+        if (movesLeft <= 0) {
+            moveBudgetReached = true;
+            return;
+        }
+        int maxJump = (int) Math.min(MAX_JUMP, movesLeft);
+        int length = 1;
+        while (true) {
+            LngLat position = new LngLat(originLng + LatticePoint.offsetLng(key), originLat + LatticePoint.offsetLat(key));
+            if (length == maxJump || handler.isCloseTo(position, end)
+                    || turnsTowards(position, end, stepLng, stepLat, left, right)) {
+                break;
+            }
+            long nextKey = LatticePoint.step(key, direction);
+            if (nextKey == LatticePoint.OUT_OF_RANGE) {
+                latticeBoundReached = true;
+                break;
+            }
+            if (!isValid(position, direction, nextKey, locked, rules)) {
+                break;
+            }
+            int nextSides = (isValid(position, left, LatticePoint.step(key, left), locked, rules) ? 1 : 0)
+                    | (isValid(position, right, LatticePoint.step(key, right), locked, rules) ? 2 : 0);
+            if ((nextSides & ~sides) != 0) {
+                // An adjacent direction has just opened up: the route may turn around an obstacle here
+                break;
+            }
+            sides = nextSides;
+            key = nextKey;
+            length++;
+        }
+        queue(from, direction, length, key, end);
+    }
+
+    private void queue(int from, int direction, int length, long key, LngLat end) {
+        int slot = slotsByKey.get(key);
+        if (slot != LongIntHashMap.MISSING && closed[slot]) {
+            return;
+        }
+        double tentativeGScore = gScore[from] + length * MOVE;
+        if (slot != LongIntHashMap.MISSING && tentativeGScore >= gScore[slot]) {
+            return;
+        }
+        double nextLng = originLng + LatticePoint.offsetLng(key);
+        double nextLat = originLat + LatticePoint.offsetLat(key);
+        if (moveBudget != Integer.MAX_VALUE && exceedsMoveBudget(movesTo(from) + length, nextLng, nextLat, end)) {
+            moveBudgetReached = true;
+            return;
+        }
+        if (slot == LongIntHashMap.MISSING) {
+            slot = addSlot(key, nextLng, nextLat, end);
+        }
+        parent[slot] = from;
+        parentDirection[slot] = (byte) direction;
+        jumpLength[slot] = length;
+        gScore[slot] = tentativeGScore;
+        openSet.insertOrUpdate(slot, tentativeGScore + hScore[slot], hScore[slot]);
+    }
+
+    private long movesTo(int slot) {
+        return Math.round(gScore[slot] / MOVE);
+    }
+
+    // Whether a jump point reached in the moves leaves too few to come close to the target
+    private boolean exceedsMoveBudget(long moves, double nextLng, double nextLat, LngLat end) {
+        double dLng = nextLng - end.lng();
+        double dLat = nextLat - end.lat();
+        // Close means within DRONE_IS_CLOSE_DISTANCE, so that much of the distance needs no move
+        double movesLeft = Math.ceil((Math.sqrt(dLng * dLng + dLat * dLat) - SystemConstants.DRONE_IS_CLOSE_DISTANCE)
+                / MOVE - MOVE_COUNT_TOLERANCE);
+        return moves + Math.max(0.0, movesLeft) > moveBudget;
+    }
+
+    // Bounds that cut the search short come first, as a search with more room might still find the target
+    private LatticeSearch.FailureReason reasonOfFailure() {
+        if (corridorReached || expansionLimitReached) {
+            return LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED;
+        }
+        if (latticeBoundReached) {
+            return LatticeSearch.FailureReason.LATTICE_RANGE_EXCEEDED;
+        }
+        return moveBudgetReached ? LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET : LatticeSearch.FailureReason.UNREACHABLE;
+    }
+
+    // Whether one more step would carry the target across an adjacent direction, or stop getting closer to it
+    private static boolean turnsTowards(LngLat position, LngLat end, double stepLng, double stepLat, int left, int right) {
+        double toLng = end.lng() - position.lng();
+        double toLat = end.lat() - position.lat();
+        if (toLng * stepLng + toLat * stepLat <= MOVE * MOVE / 2) {
+            return true;
+        }
+        return crossesSide(toLng, toLat, stepLng, stepLat, left) || crossesSide(toLng, toLat, stepLng, stepLat, right);
+    }
+
+    private static boolean crossesSide(double toLng, double toLat, double stepLng, double stepLat, int side) {
+        double sideLng = LngLatHandler.stepLng(side);
+        double sideLat = LngLatHandler.stepLat(side);
+        double before = sideLng * toLat - sideLat * toLng;
+        double after = sideLng * (toLat - stepLat) - sideLat * (toLng - stepLng);
+        return before != 0 && (before > 0) != (after > 0);
+    }
+
+    private boolean isValid(LngLat position, int direction, long nextKey, boolean locked, LatticeSearch.MoveRules rules) {
+        if (nextKey == LatticePoint.OUT_OF_RANGE) {
+            return false;
+        }
+        double nextLng = originLng + LatticePoint.offsetLng(nextKey);
+        double nextLat = originLat + LatticePoint.offsetLat(nextKey);
+        if (corridor != null && !corridor.contains(nextLng, nextLat)) {
+            corridorReached = true;
+            return false;
+        }
+        checkedMoves++;
+        return rules.isValidMove(position, direction, new LngLat(nextLng, nextLat), locked);
+    }
+
+    // Validity of the two adjacent directions, bit 0 counter-clockwise and bit 1 clockwise
+    private static int sideMoves(int validMoves, int direction) {
+        int left = (direction + 1) % DIRECTIONS;
+        int right = (direction + DIRECTIONS - 1) % DIRECTIONS;
+        return (validMoves >>> left & 1) | (validMoves >>> right & 1) << 1;
+    }
+
+    private void reset(LngLat start) {
+        slotsByKey.clear();
+        openSet.clear();
+        slotCount = 0;
+        originLng = start.lng();
+        originLat = start.lat();
+        expandedNodes = 0;
+        checkedMoves = 0;
+        latticeBoundReached = false;
+        corridorReached = false;
+        expansionLimitReached = false;
+        moveBudgetReached = false;
+        failureReason = LatticeSearch.FailureReason.NONE;
+    }
+
+    private int addSlot(long key, double nodeLng, double nodeLat, LngLat end) {
+        if (slotCount == lng.length) {
+            int capacity = slotCount * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            lng = Arrays.copyOf(lng, capacity);
+            lat = Arrays.copyOf(lat, capacity);
+            gScore = Arrays.copyOf(gScore, capacity);
+            hScore = Arrays.copyOf(hScore, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            parentDirection = Arrays.copyOf(parentDirection, capacity);
+            jumpLength = Arrays.copyOf(jumpLength, capacity);
+            closed = Arrays.copyOf(closed, capacity);
+        }
+        int slot = slotCount++;
+        keys[slot] = key;
+        lng[slot] = nodeLng;
+        lat[slot] = nodeLat;
+        gScore[slot] = Double.POSITIVE_INFINITY;
+        double dLng = nodeLng - end.lng();
+        double dLat = nodeLat - end.lat();
+        hScore[slot] = Math.sqrt(dLng * dLng + dLat * dLat);
+        parent[slot] = -1;
+        jumpLength[slot] = 0;
+        closed[slot] = false;
+        slotsByKey.put(key, slot);
+        return slot;
+    }
+
+    // Replays every jump move by move, from the start
+    private List<LngLat> reconstructPath(int finalSlot) {
+        int length = 1;
+        for (int slot = finalSlot; parent[slot] >= 0; slot = parent[slot]) {
+            length += jumpLength[slot];
+        }
+        double[] coordinates = new double[length * 2];
+        byte[] directions = new byte[length - 1];
+        for (int slot = finalSlot; parent[slot] >= 0; slot = parent[slot]) {
+            long key = keys[parent[slot]];
+            int first = length - jumpLength[slot];
+            for (int i = first; i < length; i++) {
+                key = LatticePoint.step(key, parentDirection[slot]);
+                coordinates[2 * i] = originLng + LatticePoint.offsetLng(key);
+                coordinates[2 * i + 1] = originLat + LatticePoint.offsetLat(key);
+                directions[i - 1] = parentDirection[slot];
+            }
+            length = first;
+        }
+        coordinates[0] = originLng;
+        coordinates[1] = originLat;
+        return new PackedPath(coordinates, directions);
+    }
+}
@@ -0,0 +1,397 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Route lengths from a few landmarks to every part of the map, for the ALT (A*, landmarks, triangle
+ * inequality) heuristic.
+ * <p>
+ * The map around the no-fly zones and the central area, {@link #MARGIN_MOVES} moves beyond them on
+ * every side, is cut into square cells one move wide. Landmarks sit at the corners and edge middles
+ * of that area and just outside the four sides of every no-fly zone, and from each one a Dijkstra search over the cell centres, with steps towards the 16
+ * nearest compass bearings checked by the move rules, records the route length to every cell it
+ * reaches. The searches for different landmarks run in parallel.
+ * <p>
+ * For moves that are valid both ways, the route between two points is at least as long as the
+ * difference of their distances from any landmark, which is usually far closer to the real route
+ * length than the straight-line distance when no-fly zones force a detour. The grid only
+ * approximates the move lattice, so {@link #lowerBound} scales the difference down and gives away
+ * {@link #SLACK_MOVES} moves, which keeps it below the real length in practice but is no guarantee:
+ * searches using the bounds should not rely on them being admissible.
+ * <p>
+ * Tables are immutable and can be written to {@code <directory>/landmarks-<geometry hash>.bin}
+ * with {@link #loadOrBuild} so that later runs over the same map skip the searches.
+ */
+public final class LandmarkTable {
+    /**
+     * moves of free space kept around the zones and the central area
+     */
+    public static final int MARGIN_MOVES = 100;
+    /**
+     * moves taken off every bound to cover the cell size
+     */
+    public static final int SLACK_MOVES = 2;
+    /**
+     * moves between a no-fly zone's bounding box and the landmarks placed beside it
+     */
+    public static final int ZONE_OFFSET_MOVES = 3;
+
+    private static final int MAGIC = 0x50444c4d; // "PDLM"
+    private static final int VERSION = 1;
+    private static final double CELL_SIZE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final short UNREACHED = -1;
+    // Distances are stored in tenths of a move
+    private static final int UNITS_PER_MOVE = 10;
+    // Both the grid and the lattice stretch a straight line by at most 3% (the grid at 2.7%, between two steps)
+    private static final double GRID_ERROR = 0.03;
+    // The 16 grid neighbours of a cell, and the length of each step in moves
+    private static final int[] STEP_COL = {1, 2, 1, 1, 0, -1, -1, -2, -1, -2, -1, -1, 0, 1, 1, 2};
+    private static final int[] STEP_ROW = {0, 1, 1, 2, 1, 2, 1, 1, 0, -1, -1, -2, -1, -2, -1, -1};
+    private static final double[] STEP_MOVES = new double[STEP_COL.length];
+
+    static {
+        for (int k = 0; k < STEP_COL.length; k++) {
+            STEP_MOVES[k] = Math.hypot(STEP_COL[k], STEP_ROW[k]);
+        }
+    }
+
+    private final long geometryHash;
+    private final double minLng;
+    private final double minLat;
+    private final int columns;
+    private final int rows;
+    private final LngLat[] landmarks;
+    // Distance from landmark l to cell c at c * landmarks.length + l, or UNREACHED
+    private final short[] distances;
+
+    /**
+     * Runs the landmark searches over the map of {@code geometry}.
+     *
+     * @param geometry - the map
+     * @param rules    - move validity rules for this geometry, called from several threads
+     */
+    public LandmarkTable(RouteGeometry geometry, LatticeSearch.MoveRules rules) {
+        this.geometryHash = geometry.hash();
+        double[] bounds = boundsOf(geometry);
+        double reach = MARGIN_MOVES * SystemConstants.DRONE_MOVE_DISTANCE;
+        this.minLng = bounds[0] - reach;
+        this.minLat = bounds[1] - reach;
+        this.columns = (int) Math.ceil((bounds[2] + reach - minLng) / CELL_SIZE);
+        this.rows = (int) Math.ceil((bounds[3] + reach - minLat) / CELL_SIZE);
+
+        this.landmarks = placeLandmarks(geometry);
+        this.distances = new short[columns * rows * landmarks.length];
+        IntStream.range(0, landmarks.length).parallel().forEach(l -> search(l, rules));
+    }
+
+    private LandmarkTable(long geometryHash, double minLng, double minLat, int columns, int rows,
+                          LngLat[] landmarks, short[] distances) {
+        this.geometryHash = geometryHash;
+        this.minLng = minLng;
+        this.minLat = minLat;
+        this.columns = columns;
+        this.rows = rows;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Reads the table of {@code geometry} from {@code directory}, or builds it and writes it there
+     * if there is no usable file yet.
+     *
+     * @param directory - directory holding the landmark files
+     * @param geometry  - the map
+     * @param rules     - move validity rules, only used if the table has to be built
+     * @return the landmark table of the map
+     */
+    public static LandmarkTable loadOrBuild(Path directory, RouteGeometry geometry, LatticeSearch.MoveRules rules) {
+        Path file = directory.toAbsolutePath().normalize().resolve("landmarks-" + geometry.hashHex() + ".bin");
+        if (Files.isRegularFile(file)) {
+            try {
+                LandmarkTable table = read(file);
+                if (table.geometryHash == geometry.hash()) {
+                    return table;
+                }
+                System.err.println("Discarding landmark table of another map: " + file);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Discarding unreadable landmark table " + file + ": " + e.getMessage());
+            }
+        }
+        LandmarkTable table = new LandmarkTable(geometry, rules);
+        try {
+            Files.createDirectories(directory);
+            table.write(file);
+        } catch (IOException e) {
+            System.err.println("Could not write landmark table " + file + ": " + e.getMessage());
+        }
+        return table;
+    }
+
+    /**
+     * Writes the table to {@code file}, replacing it atomically where the file system allows.
+     *
+     * @param file - the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 5 + Long.BYTES + Double.BYTES * (2 + 2 * landmarks.length)
+                + Short.BYTES * distances.length).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(geometryHash)
+                .putDouble(minLng).putDouble(minLat).putInt(columns).putInt(rows).putInt(landmarks.length);
+        for (LngLat landmark : landmarks) {
+            buffer.putDouble(landmark.lng()).putDouble(landmark.lat());
+        }
+        buffer.asShortBuffer().put(distances);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, buffer.array());
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param file - a file written by {@link #write}
+     * @return the table stored in the file
+     * @throws IOException if the file cannot be read or is not a landmark table
+     */
+    public static LandmarkTable read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < Integer.BYTES * 2 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a landmark table");
+        }
+        long geometryHash = buffer.getLong();
+        double minLng = buffer.getDouble();
+        double minLat = buffer.getDouble();
+        int columns = buffer.getInt();
+        int rows = buffer.getInt();
+        int count = buffer.getInt();
+        if (columns <= 0 || rows <= 0 || count <= 0) {
+            throw new IOException("bad landmark table dimensions");
+        }
+        LngLat[] landmarks = new LngLat[count];
+        for (int l = 0; l < count; l++) {
+            landmarks[l] = new LngLat(buffer.getDouble(), buffer.getDouble());
+        }
+        short[] distances = new short[Math.multiplyExact(Math.multiplyExact(columns, rows), count)];
+        if (buffer.remaining() != Short.BYTES * distances.length) {
+            throw new IOException("truncated landmark table");
+        }
+        buffer.asShortBuffer().get(distances);
+        return new LandmarkTable(geometryHash, minLng, minLat, columns, rows, landmarks, distances);
+    }
+
+    /**
+     * @return the cell holding the position, for use with {@link #lowerBound}, or -1 if it is outside the table
+     */
+    public int cellOf(double lng, double lat) {
+        int col = (int) Math.floor((lng - minLng) / CELL_SIZE);
+        int row = (int) Math.floor((lat - minLat) / CELL_SIZE);
+        if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return -1;
+        }
+        return row * columns + col;
+    }
+
+    /**
+     * Lower bound on the route length between two cells, in the units of {@link LngLat} distances,
+     * up to the grid error described above.
+     *
+     * @param fromCell - a cell from {@link #cellOf}
+     * @param toCell   - a cell from {@link #cellOf}
+     * @return the bound, or 0 if either cell is outside the table or unreached
+     */
+    public double lowerBound(int fromCell, int toCell) {
+        double best = 0.0;
+        for (int l = 0; l < landmarks.length; l++) {
+            best = Math.max(best, bound(l, fromCell, toCell));
+        }
+        return best;
+    }
+
+    /**
+     * Like {@link #lowerBound(int, int)}, but only consults the given landmarks, which is cheaper
+     * when the same target is bounded many times.
+     *
+     * @param fromCell  - a cell from {@link #cellOf}
+     * @param toCell    - a cell from {@link #cellOf}
+     * @param landmarks - indices of the landmarks to use, e.g. from {@link #bestLandmarks}
+     * @return the bound, or 0 if either cell is outside the table or unreached
+     */
+    public double lowerBound(int fromCell, int toCell, int[] landmarks) {
+        double best = 0.0;
+        for (int l : landmarks) {
+            best = Math.max(best, bound(l, fromCell, toCell));
+        }
+        return best;
+    }
+
+    /**
+     * @param fromCell - a cell from {@link #cellOf}
+     * @param toCell   - a cell from {@link #cellOf}
+     * @param limit    - the most landmarks to return
+     * @return the indices of the landmarks giving the highest bounds between the cells, best first
+     */
+    public int[] bestLandmarks(int fromCell, int toCell, int limit) {
+        Integer[] order = new Integer[landmarks.length];
+        for (int l = 0; l < order.length; l++) {
+            order[l] = l;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(bound(b, fromCell, toCell), bound(a, fromCell, toCell)));
+        int[] best = new int[Math.min(limit, order.length)];
+        for (int i = 0; i < best.length; i++) {
+            best[i] = order[i];
+        }
+        return best;
+    }
+
+    private double bound(int landmark, int fromCell, int toCell) {
+        if (fromCell < 0 || toCell < 0) {
+            return 0.0;
+        }
+        int from = distances[fromCell * landmarks.length + landmark];
+        int to = distances[toCell * landmarks.length + landmark];
+        if (from == UNREACHED || to == UNREACHED) {
+            return 0.0;
+        }
+        double moves = Math.abs(from - to) * (1 - GRID_ERROR) / UNITS_PER_MOVE - SLACK_MOVES;
+        return Math.max(0.0, moves) * SystemConstants.DRONE_MOVE_DISTANCE;
+    }
+
+    /**
+     * @return the distance in moves from landmark {@code index} to the cell of the position, or -1 if
+     *         the position is outside the table or was not reached
+     */
+    public double movesFrom(int index, LngLat position) {
+        int cell = cellOf(position.lng(), position.lat());
+        int distance = cell < 0 ? UNREACHED : distances[cell * landmarks.length + index];
+        return distance == UNREACHED ? -1 : (double) distance / UNITS_PER_MOVE;
+    }
+
+    public LngLat[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    public long getGeometryHash() {
+        return geometryHash;
+    }
+
+    // Dijkstra over the cell centres from one landmark; fills that landmark's column of the distances
+    private void search(int landmark, LatticeSearch.MoveRules rules) {
+        int count = landmarks.length;
+        int cells = columns * rows;
+        double[] distance = new double[cells];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        for (int cell = 0; cell < cells; cell++) {
+            distances[cell * count + landmark] = UNREACHED;
+        }
+        LngLat root = landmarks[landmark];
+        int rootCell = cellOf(root.lng(), root.lat());
+        distance[rootCell] = 0.0;
+        IndexedMinHeap open = new IndexedMinHeap(1024);
+        open.insertOrUpdate(rootCell, 0.0, 0.0);
+
+        while (!open.isEmpty()) {
+            int cell = open.poll();
+            distances[cell * count + landmark] = (short) Math.min(Short.MAX_VALUE, Math.round(distance[cell] * UNITS_PER_MOVE));
+            int col = cell % columns;
+            int row = cell / columns;
+            LngLat from = centreOf(col, row);
+            for (int k = 0; k < STEP_COL.length; k++) {
+                int toCol = col + STEP_COL[k];
+                int toRow = row + STEP_ROW[k];
+                if (toCol < 0 || toCol >= columns || toRow < 0 || toRow >= rows) {
+                    continue;
+                }
+                int toCell = toRow * columns + toCol;
+                double tentative = distance[cell] + STEP_MOVES[k];
+                if (tentative >= distance[toCell] || !rules.isValidMove(from, centreOf(toCol, toRow), false)) {
+                    continue;
+                }
+                distance[toCell] = tentative;
+                open.insertOrUpdate(toCell, tentative, 0.0);
+            }
+        }
+    }
+
+    private LngLat centreOf(int col, int row) {
+        return new LngLat(minLng + (col + 0.5) * CELL_SIZE, minLat + (row + 0.5) * CELL_SIZE);
+    }
+
+    // The corners and edge middles of the table, and the four sides of every no-fly zone
+    private LngLat[] placeLandmarks(RouteGeometry geometry) {
+        double maxLng = minLng + (columns - 0.5) * CELL_SIZE;
+        double maxLat = minLat + (rows - 0.5) * CELL_SIZE;
+        double midLng = (minLng + maxLng) / 2;
+        double midLat = (minLat + maxLat) / 2;
+        double lowLng = minLng + CELL_SIZE / 2;
+        double lowLat = minLat + CELL_SIZE / 2;
+        List<LngLat> placed = new ArrayList<>(List.of(
+                new LngLat(lowLng, lowLat), new LngLat(midLng, lowLat), new LngLat(maxLng, lowLat),
+                new LngLat(maxLng, midLat), new LngLat(maxLng, maxLat), new LngLat(midLng, maxLat),
+                new LngLat(lowLng, maxLat), new LngLat(lowLng, midLat)));
+
+        // Far landmarks bound long routes well, but a detour around a zone needs one close behind it
+        double offset = ZONE_OFFSET_MOVES * SystemConstants.DRONE_MOVE_DISTANCE;
+        NoFlyZoneIndex noFly = geometry.noFlyIndex();
+        for (NamedRegion zone : geometry.noFlyZones()) {
+            double[] box = boundsOf(new NamedRegion[]{zone});
+            double centreLng = (box[0] + box[2]) / 2;
+            double centreLat = (box[1] + box[3]) / 2;
+            LngLat[] sides = {
+                    new LngLat(box[2] + offset, centreLat), new LngLat(centreLng, box[3] + offset),
+                    new LngLat(box[0] - offset, centreLat), new LngLat(centreLng, box[1] - offset)
+            };
+            for (LngLat side : sides) {
+                if (!noFly.isInAnyRegion(side)) {
+                    placed.add(side);
+                }
+            }
+        }
+        return placed.toArray(new LngLat[0]);
+    }
+
+    // Bounding box {minLng, minLat, maxLng, maxLat} of the no-fly zones and the central area
+    private static double[] boundsOf(RouteGeometry geometry) {
+        NamedRegion[] zones = geometry.noFlyZones();
+        NamedRegion[] regions = Arrays.copyOf(zones, zones.length + 1);
+        regions[zones.length] = geometry.centralArea();
+        return boundsOf(regions);
+    }
+
+    // Bounding box {minLng, minLat, maxLng, maxLat} of the regions, or of Appleton Tower if they have no vertices
+    private static double[] boundsOf(NamedRegion[] regions) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (NamedRegion region : regions) {
+            if (region.vertices() == null) {
+                continue;
+            }
+            for (LngLat vertex : region.vertices()) {
+                bounds[0] = Math.min(bounds[0], vertex.lng());
+                bounds[1] = Math.min(bounds[1], vertex.lat());
+                bounds[2] = Math.max(bounds[2], vertex.lng());
+                bounds[3] = Math.max(bounds[3], vertex.lat());
+            }
+        }
+        if (bounds[0] > bounds[2]) {
+            LngLat tower = LatticePoint.APPLETON_TOWER;
+            return new double[]{tower.lng(), tower.lat(), tower.lng(), tower.lat()};
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,151 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+/**
+ * An exact drone position on the 16-direction move lattice, relative to an origin.
+ * <p>
+ * The 16 compass unit vectors are e<sup>ik&pi;/8</sup>, and since e<sup>i&pi;</sup> = -1 every
+ * reachable position is an integer combination of the first eight of them. The eight coefficients
+ * are stored as biased bytes in one {@code long}, so positions reached by different move orders
+ * have the same key, and hashing or comparing them is a single primitive operation.
+ * Coefficients are limited to [-127, 127]; {@link #step(long, int)} reports anything beyond that
+ * as {@link #OUT_OF_RANGE}. Coordinates are only materialised when converting back to {@link LngLat}.
+ *
+ * @param key the packed coefficients
+ */
+public record LatticePoint(long key) {
+
+    /**
+     * number of compass directions a drone can move in
+     */
+    public static final int DIRECTIONS = 16;
+
+    /**
+     * key of the origin (all coefficients zero)
+     */
+    public static final long ORIGIN_KEY = 0x8080808080808080L;
+
+    /**
+     * returned by {@link #step(long, int)} when a coefficient would leave its range; never a valid key
+     */
+    public static final long OUT_OF_RANGE = 0L;
+
+    public static final LatticePoint ORIGIN = new LatticePoint(ORIGIN_KEY);
+
+    /**
+     * the origin used by {@link #toLngLat()}
+     */
+    public static final LngLat APPLETON_TOWER = new LngLat(SystemConstants.APPLETON_LNG, SystemConstants.APPLETON_LAT);
+
+    private static final int BASIS_SIZE = DIRECTIONS / 2;
+    private static final int MAX_BIASED = 255;
+    private static final int MIN_BIASED = 1;
+
+    // Length-DRONE_MOVE_DISTANCE offsets of the eight basis directions (0, 22.5, ..., 157.5 degrees)
+    private static final double[] BASIS_LNG = new double[BASIS_SIZE];
+    private static final double[] BASIS_LAT = new double[BASIS_SIZE];
+
+    static {
+        for (int i = 0; i < BASIS_SIZE; i++) {
+            BASIS_LNG[i] = LngLatHandler.stepLng(i);
+            BASIS_LAT[i] = LngLatHandler.stepLat(i);
+        }
+    }
+
+    /**
+     * Moves one step along a compass direction.
+     *
+     * @param key       - packed position
+     * @param direction - compass direction index, 0 for east, increasing counter-clockwise in 22.5 degree steps
+     * @return the packed neighbouring position, or {@link #OUT_OF_RANGE}
+     */
+    public static long step(long key, int direction) {
+        int shift = (direction & (BASIS_SIZE - 1)) << 3;
+        int biased = (int) (key >>> shift) & 0xff;
+        if (direction < BASIS_SIZE) {
+            return biased == MAX_BIASED ? OUT_OF_RANGE : key + (1L << shift);
+        }
+        return biased == MIN_BIASED ? OUT_OF_RANGE : key - (1L << shift);
+    }
+
+    /**
+     * @param key   - packed position
+     * @param index - basis index between 0 and 7
+     * @return the signed coefficient of the basis direction {@code index * 22.5} degrees
+     */
+    public static int coefficient(long key, int index) {
+        return ((int) (key >>> (index << 3)) & 0xff) - 128;
+    }
+
+    /**
+     * @return the longitude offset of the packed position from its origin
+     */
+    public static double offsetLng(long key) {
+        double offset = 0.0;
+        for (int i = 0; i < BASIS_SIZE; i++) {
+            offset += coefficient(key, i) * BASIS_LNG[i];
+        }
+        return offset;
+    }
+
+    /**
+     * @return the latitude offset of the packed position from its origin
+     */
+    public static double offsetLat(long key) {
+        double offset = 0.0;
+        for (int i = 0; i < BASIS_SIZE; i++) {
+            offset += coefficient(key, i) * BASIS_LAT[i];
+        }
+        return offset;
+    }
+
+    /**
+     * Builds a point from its eight basis coefficients.
+     *
+     * @param coefficients - exactly eight values in [-127, 127]
+     * @return the lattice point
+     */
+    public static LatticePoint of(int... coefficients) {
+        if (coefficients.length != BASIS_SIZE) {
+            throw new IllegalArgumentException("expected " + BASIS_SIZE + " coefficients but got " + coefficients.length);
+        }
+        long key = 0L;
+        for (int i = 0; i < BASIS_SIZE; i++) {
+            if (coefficients[i] < MIN_BIASED - 128 || coefficients[i] > MAX_BIASED - 128) {
+                throw new IllegalArgumentException("coefficient out of range: " + coefficients[i]);
+            }
+            key |= (long) (coefficients[i] + 128) << (i << 3);
+        }
+        return new LatticePoint(key);
+    }
+
+    /**
+     * @param direction - compass direction index
+     * @return the neighbouring point, or {@code null} if it is out of range
+     */
+    public LatticePoint step(int direction) {
+        long next = step(key, direction);
+        return next == OUT_OF_RANGE ? null : new LatticePoint(next);
+    }
+
+    public int coefficient(int index) {
+        return coefficient(key, index);
+    }
+
+    /**
+     * @param origin - the position the lattice is anchored at
+     * @return the coordinate of this point
+     */
+    public LngLat toLngLat(LngLat origin) {
+        return new LngLat(origin.lng() + offsetLng(key), origin.lat() + offsetLat(key));
+    }
+
+    /**
+     * @return the coordinate of this point on the lattice anchored at Appleton Tower
+     */
+    public LngLat toLngLat() {
+        return toLngLat(APPLETON_TOWER);
+    }
+}
@@ -0,0 +1,690 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* search specialised for the drone move lattice.
+ * Nodes are identified by their packed {@link LatticePoint} key relative to the start, so a cell
+ * reached along different move orders is a single node. Nodes live in slots of primitive arrays
+ * (position, g-score, heuristic, parent). The open list is an {@link IndexedMinHeap} by default, so
+ * every node is queued at most once and improved by decrease-key instead of being pushed again;
+ * a {@link BucketQueue} can be selected instead, see {@link OpenListType}.
+ * <p>
+ * A search that locks the drone into the central area once it enters it tracks the lock per node.
+ * Since a locked path can only be inside the central area and an unlocked one has not been inside
+ * yet, the lock is a function of the cell, and the cell key alone encodes the (cell, locked) state.
+ * An instance reuses its arrays between searches and is therefore not thread-safe.
+ */
+public final class LatticeSearch {
+
+    /**
+     * Decides whether the drone may fly from one position to the next.
+     */
+    @FunctionalInterface
+    public interface MoveRules {
+        boolean isValidMove(LngLat current, LngLat next, boolean hasEnteredCentralArea);
+
+        /**
+         * Variant that is also told the compass direction of the move, so implementations can use
+         * per-direction lookups such as an {@link ObstacleRaster}.
+         */
+        default boolean isValidMove(LngLat current, int direction, LngLat next, boolean hasEnteredCentralArea) {
+            return isValidMove(current, next, hasEnteredCentralArea);
+        }
+    }
+
+    /**
+     * The open list implementation used by a search.
+     */
+    public enum OpenListType {
+        /** Binary heap ordered by f, then h. */
+        BINARY_HEAP,
+        /** Ring of f-buckets a fraction of a move wide, with constant-time queueing and polling. */
+        BUCKET_QUEUE
+    }
+
+    /**
+     * Why the last search returned no path.
+     */
+    public enum FailureReason {
+        /** The search found a path. */
+        NONE,
+        /** Every position reachable from the start was searched without coming close to the target. */
+        UNREACHABLE,
+        /** The search corridor or the expansion limit ran out before the target was reached. */
+        SEARCH_BOUND_EXHAUSTED,
+        /** The route needed moves beyond the range of {@link LatticePoint}. */
+        LATTICE_RANGE_EXCEEDED,
+        /** Every route the search could still have found needed more moves than the move budget. */
+        OUT_OF_MOVE_BUDGET
+    }
+
+    // Buckets a sixteenth of a move wide; within one, the latest queued (usually deepest) slot comes out first
+    private static final int BUCKETS_PER_MOVE = 16;
+    // Landmarks consulted per target: those with the best bounds at the start of the search
+    private static final int ACTIVE_LANDMARKS = 4;
+    // Heuristic weight taken off between the iterations of an anytime search
+    private static final double WEIGHT_STEP = 0.5;
+    // Expansions between deadline checks of an anytime search
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+    // Slack for rounding when counting the moves left to a target; never more than a move's worth
+    private static final double MOVE_COUNT_TOLERANCE = 1e-6;
+    // Nodes a search may hold, whatever its bounds, before it gives up; about a gigabyte of state
+    private static final int MAX_SLOTS = 1 << 23;
+
+    private final LngLatHandler handler = new LngLatHandler();
+    private final LongIntHashMap slotsByKey = new LongIntHashMap(4096);
+    private final IndexedMinHeap heap = new IndexedMinHeap(1024);
+    private final BucketQueue bucketQueue = new BucketQueue(SystemConstants.DRONE_MOVE_DISTANCE / BUCKETS_PER_MOVE);
+    private OpenList openSet = heap;
+
+    private long[] keys      = new long[1024];
+    private double[] lng     = new double[1024];
+    private double[] lat     = new double[1024];
+    private double[] gScore  = new double[1024];
+    private double[] hScore  = new double[1024];
+    private int[] parent     = new int[1024];
+    // Compass direction of the move from the parent
+    private byte[] parentDirection = new byte[1024];
+    private boolean[] closed = new boolean[1024];
+    // Closed slots whose g-score improved during an anytime iteration; the next iteration reopens them
+    private boolean[] inconsistent = new boolean[1024];
+    // Whether the path to the slot is locked into the central area
+    private boolean[] locked = new boolean[1024];
+    private int slotCount;
+
+    private int expandedNodes;
+    private int expansionLimit = Integer.MAX_VALUE;
+    // The expansion limit of the current search, lowered to the expansion budget of the move budget's reach
+    private int searchExpansionLimit;
+    private boolean latticeBoundReached;
+    private SearchCorridor corridor;
+    private boolean corridorReached;
+    private boolean expansionLimitReached;
+    private int moveBudget = Integer.MAX_VALUE;
+    private boolean moveBudgetReached;
+    private boolean lockOnEntry;
+    private FailureReason failureReason = FailureReason.NONE;
+
+    private double heuristicWeight = 1.0;
+    private double suboptimalityBound = 1.0;
+    private boolean anytime;
+    private boolean interrupted;
+
+    private LandmarkTable landmarks;
+    // Landmark table cell of each target of the current search, and the landmarks that bound it best from the start
+    private int[] targetCells = new int[0];
+    private int[][] targetLandmarks = new int[0][];
+
+    /**
+     * Finds a path from {@code start} to a position close to {@code end}.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole search
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if no path exists
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, MoveRules rules) {
+        return findPath(start, end, hasEnteredCentralArea, false, rules);
+    }
+
+    /**
+     * Finds a path as {@link #findPath(LngLat, LngLat, boolean, MoveRules)} does, optionally
+     * locking the drone into the central area from the node where it enters it, as return paths are.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area from the start
+     * @param lockOnEntry            - whether the drone is locked into the central area once the path enters it
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if no path exists
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, boolean lockOnEntry,
+                                 MoveRules rules) {
+        LngLat[] targets = {end};
+        boolean[] reached = new boolean[1];
+        this.lockOnEntry = lockOnEntry;
+        start(start, hasEnteredCentralArea, targets, reached);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closed[current] = true;
+            expandedNodes++;
+
+            LngLat currentPosition = new LngLat(lng[current], lat[current]);
+            if (handler.isCloseTo(currentPosition, end)) {
+                suboptimalityBound = boundOf(heuristicWeight);
+                return reconstructPath(current);
+            }
+            if (isOutOfExpansions()) {
+                break;
+            }
+            expand(current, currentPosition, start, rules, targets, reached);
+        }
+        failureReason = reasonOfFailure();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Anytime (ARA*-style) variant of {@link #findPath}: a weighted search with
+     * {@code initialWeight} finds a first path quickly, and further searches with lower weights
+     * improve it until the weight reaches 1 or the deadline passes. Each iteration reuses the nodes
+     * of the previous ones, reopening only those whose g-score improved. After the search,
+     * {@link #getSuboptimalityBound()} gives the factor by which the returned path may be longer
+     * than the shortest one. The first path is always completed, even past the deadline.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole search
+     * @param rules                  - move validity rules
+     * @param initialWeight          - heuristic weight of the first iteration, at least 1
+     * @param deadlineNanos          - {@link System#nanoTime()} value after which no further iteration starts
+     * @return the best path found, or an empty list if no path exists
+     */
+    public List<LngLat> findPathAnytime(LngLat start, LngLat end, boolean hasEnteredCentralArea, MoveRules rules,
+                                        double initialWeight, long deadlineNanos) {
+        return findPathAnytime(start, end, hasEnteredCentralArea, false, rules, initialWeight, deadlineNanos);
+    }
+
+    /**
+     * Anytime variant of {@link #findPath(LngLat, LngLat, boolean, boolean, MoveRules)}, as
+     * {@link #findPathAnytime(LngLat, LngLat, boolean, MoveRules, double, long)} is of the plain search.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area from the start
+     * @param lockOnEntry            - whether the drone is locked into the central area once the path enters it
+     * @param rules                  - move validity rules
+     * @param initialWeight          - heuristic weight of the first iteration, at least 1
+     * @param deadlineNanos          - {@link System#nanoTime()} value after which no further iteration starts
+     * @return the best path found, or an empty list if no path exists
+     */
+    public List<LngLat> findPathAnytime(LngLat start, LngLat end, boolean hasEnteredCentralArea, boolean lockOnEntry,
+                                        MoveRules rules, double initialWeight, long deadlineNanos) {
+        if (!(initialWeight >= 1.0)) {
+            throw new IllegalArgumentException("heuristic weight must be at least 1: " + initialWeight);
+        }
+        double configuredWeight = heuristicWeight;
+        heuristicWeight = initialWeight;
+        anytime = true;
+        try {
+            LngLat[] targets = {end};
+            boolean[] reached = new boolean[1];
+            this.lockOnEntry = lockOnEntry;
+            start(start, hasEnteredCentralArea, targets, reached);
+            int best = -1;
+            while (true) {
+                int found = improvePath(start, end, rules, targets, reached, best, deadlineNanos);
+                if (found >= 0) {
+                    best = found;
+                }
+                if (best < 0) {
+                    failureReason = reasonOfFailure();
+                    return Collections.emptyList();
+                }
+                if (interrupted) {
+                    // The bound of the last completed iteration still holds
+                    break;
+                }
+                suboptimalityBound = boundOf(Math.max(1.0, Math.min(heuristicWeight, gScore[best] / lowestUnsettledEstimate())));
+                if (heuristicWeight <= 1.0 || System.nanoTime() >= deadlineNanos) {
+                    break;
+                }
+                heuristicWeight = Math.max(1.0, heuristicWeight - WEIGHT_STEP);
+                reopen();
+            }
+            return reconstructPath(best);
+        } finally {
+            heuristicWeight = configuredWeight;
+            anytime = false;
+        }
+    }
+
+    /**
+     * Finds paths from {@code start} to positions close to each of {@code ends} with a single search.
+     * The search is guided towards the nearest target not reached yet; whenever one is reached the
+     * open list is re-keyed for the remaining ones, so the nodes explored so far are reused instead
+     * of starting over. Each path is near-shortest, like those of {@link #findPath}. The search
+     * corridor, the expansion limit and the move budget bound it as they bound {@link #findPath}.
+     *
+     * @param start                  - starting coordinate
+     * @param ends                   - target coordinates
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole search
+     * @param rules                  - move validity rules
+     * @return one path per target, in the order of {@code ends}, each from start to the target
+     *         (including both), or empty if that target cannot be reached
+     */
+    public List<List<LngLat>> findPaths(LngLat start, LngLat[] ends, boolean hasEnteredCentralArea, MoveRules rules) {
+        List<List<LngLat>> paths = new ArrayList<>(Collections.nCopies(ends.length, Collections.emptyList()));
+        boolean[] reached = new boolean[ends.length];
+        int remaining = ends.length;
+        if (remaining == 0) {
+            return paths;
+        }
+        lockOnEntry = false;
+        start(start, hasEnteredCentralArea, ends, reached);
+        suboptimalityBound = boundOf(heuristicWeight);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closed[current] = true;
+            expandedNodes++;
+
+            LngLat currentPosition = new LngLat(lng[current], lat[current]);
+            boolean reachedAny = false;
+            for (int i = 0; i < ends.length; i++) {
+                if (!reached[i] && handler.isCloseTo(currentPosition, ends[i])) {
+                    reached[i] = true;
+                    reachedAny = true;
+                    remaining--;
+                    paths.set(i, reconstructPath(current));
+                }
+            }
+            if (remaining == 0) {
+                return paths;
+            }
+            if (isOutOfExpansions()) {
+                break;
+            }
+            if (reachedAny) {
+                requeueOpenSlots(ends, reached);
+            }
+            expand(current, currentPosition, start, rules, ends, reached);
+        }
+        failureReason = reasonOfFailure();
+        return paths;
+    }
+
+    /**
+     * Selects the open list used by following searches.
+     *
+     * @param type - the open list implementation
+     */
+    public void setOpenList(OpenListType type) {
+        openSet = type == OpenListType.BUCKET_QUEUE ? bucketQueue : heap;
+    }
+
+    /**
+     * Tightens the straight-line heuristic with landmark bounds, so searches that must detour around
+     * no-fly zones expand fewer nodes. The table must belong to the map the move rules check.
+     * Landmark bounds come from a grid that only approximates the lattice and may overestimate a
+     * little, so while they are in use {@link #getSuboptimalityBound()} is {@link Double#NaN}, and
+     * the move budget is still checked against straight-line distances.
+     *
+     * @param landmarks - the landmark table of the map, or {@code null} (the default) for straight-line distances only
+     */
+    public void setLandmarks(LandmarkTable landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Inflates the heuristic by {@code weight} (weighted A*): searches expand far fewer nodes, and
+     * paths are at most {@code weight} times as long as the shortest ones.
+     *
+     * @param weight - the heuristic weight, at least 1; 1 (plain A*) by default
+     */
+    public void setHeuristicWeight(double weight) {
+        if (!(weight >= 1.0)) {
+            throw new IllegalArgumentException("heuristic weight must be at least 1: " + weight);
+        }
+        this.heuristicWeight = weight;
+    }
+
+    /**
+     * @return the factor by which the last path found may be longer than the shortest path: the
+     *         heuristic weight for {@link #findPath}, or the bound reached by {@link #findPathAnytime};
+     *         {@link Double#NaN} if the search used landmarks, which guarantee no bound
+     */
+    public double getSuboptimalityBound() {
+        return suboptimalityBound;
+    }
+
+    /**
+     * Keeps following searches inside {@code corridor}: moves that would leave it are not taken.
+     *
+     * @param corridor - the box to search in, or {@code null} (the default) to search without bounds
+     */
+    public void setSearchCorridor(SearchCorridor corridor) {
+        this.corridor = corridor;
+    }
+
+    /**
+     * Prunes every node of following searches that cannot reach a target within {@code moves}
+     * moves: its moves so far plus the fewest moves that could still bring it close to the target
+     * in a straight line. The bound never overestimates, so the search still finds the shortest
+     * path if it is within the budget, and otherwise gives up with
+     * {@link FailureReason#OUT_OF_MOVE_BUDGET} without going beyond the budget's reach. Moves are
+     * checked against the budget before the search corridor, so a corridor holding everything within
+     * the budget's reach never cuts the search short. The budget is not a bound on the work of a
+     * search: the lattice is dense, so even a short budget reaches a great many nodes. A search with
+     * a budget therefore expands at most the {@link SearchCorridor#expansionBudget()} of the
+     * {@link SearchCorridor#withinMoves} box, besides any {@link #setExpansionLimit} limit, and gives
+     * up with {@link FailureReason#SEARCH_BOUND_EXHAUSTED} when it runs out.
+     *
+     * @param moves - the most moves a path may have, {@link Integer#MAX_VALUE} (no budget) by default
+     */
+    public void setMoveBudget(int moves) {
+        if (moves < 0) {
+            throw new IllegalArgumentException("move budget must not be negative: " + moves);
+        }
+        this.moveBudget = moves;
+    }
+
+    /**
+     * @return why the last search found no path, or {@link FailureReason#NONE} if it found one
+     *         ({@link #findPaths}: if it found all of them)
+     */
+    public FailureReason getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * Bounds the number of nodes {@link #findPath}, {@link #findPathAnytime} and {@link #findPaths}
+     * expand before they give up and return an empty path (the anytime search its best path so far,
+     * the multi-target search the paths found so far), e.g. for short searches whose target is
+     * expected to be near. Whatever the limit, a search gives up once it holds about eight million
+     * nodes, which would otherwise run out of memory.
+     *
+     * @param limit - the maximum number of expanded nodes, {@link Integer#MAX_VALUE} (no limit) by default
+     */
+    public void setExpansionLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("expansion limit must be positive: " + limit);
+        }
+        this.expansionLimit = limit;
+    }
+
+    /**
+     * @return the number of nodes taken off the open list by the last search
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return whether the last search had to discard moves beyond the range of {@link LatticePoint}
+     */
+    public boolean isLatticeBoundReached() {
+        return latticeBoundReached;
+    }
+
+    private void start(LngLat start, boolean hasEnteredCentralArea, LngLat[] targets, boolean[] reached) {
+        reset();
+        searchExpansionLimit = moveBudget == Integer.MAX_VALUE ? expansionLimit
+                : Math.min(expansionLimit, SearchCorridor.withinMoves(start, targets, moveBudget).expansionBudget());
+        if (landmarks != null) {
+            int startCell = landmarks.cellOf(start.lng(), start.lat());
+            targetCells = new int[targets.length];
+            targetLandmarks = new int[targets.length][];
+            for (int i = 0; i < targets.length; i++) {
+                targetCells[i] = landmarks.cellOf(targets[i].lng(), targets[i].lat());
+                targetLandmarks[i] = landmarks.bestLandmarks(startCell, targetCells[i], ACTIVE_LANDMARKS);
+            }
+        }
+        int startSlot = addSlot(LatticePoint.ORIGIN_KEY, start.lng(), start.lat(), -1);
+        gScore[startSlot] = 0.0;
+        locked[startSlot] = hasEnteredCentralArea;
+        hScore[startSlot] = heuristic(start.lng(), start.lat(), targets, reached);
+        openSet.insertOrUpdate(startSlot, priority(startSlot), hScore[startSlot]);
+    }
+
+    // Queues or improves every valid neighbour of the node
+    private void expand(int current, LngLat currentPosition, LngLat origin, MoveRules rules,
+                        LngLat[] targets, boolean[] reached) {
+        for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+            long key = LatticePoint.step(keys[current], direction);
+            if (key == LatticePoint.OUT_OF_RANGE) {
+                latticeBoundReached = true;
+                continue;
+            }
+            int neighbor = slotsByKey.get(key);
+            if (neighbor != LongIntHashMap.MISSING && closed[neighbor] && !anytime) {
+                continue;
+            }
+            double nextLng = neighbor == LongIntHashMap.MISSING ? origin.lng() + LatticePoint.offsetLng(key) : lng[neighbor];
+            double nextLat = neighbor == LongIntHashMap.MISSING ? origin.lat() + LatticePoint.offsetLat(key) : lat[neighbor];
+            if (moveBudget != Integer.MAX_VALUE && exceedsMoveBudget(current, neighbor, nextLng, nextLat, targets, reached)) {
+                moveBudgetReached = true;
+                continue;
+            }
+            if (corridor != null && !corridor.contains(nextLng, nextLat)) {
+                corridorReached = true;
+                continue;
+            }
+            LngLat next = new LngLat(nextLng, nextLat);
+            if (!rules.isValidMove(currentPosition, direction, next, locked[current])) {
+                continue;
+            }
+
+            double tentativeGScore = gScore[current] + SystemConstants.DRONE_MOVE_DISTANCE;
+            if (neighbor == LongIntHashMap.MISSING) {
+                neighbor = addSlot(key, nextLng, nextLat, current);
+                hScore[neighbor] = heuristic(nextLng, nextLat, targets, reached);
+                // A valid move is still valid when locked exactly if it ends in the central area; that
+                // depends on the cell only, so every later parent of the slot agrees on the lock
+                locked[neighbor] = locked[current]
+                        || lockOnEntry && rules.isValidMove(currentPosition, direction, next, true);
+            } else if (tentativeGScore >= gScore[neighbor]) {
+                continue;
+            }
+            parent[neighbor] = current;
+            parentDirection[neighbor] = (byte) direction;
+            gScore[neighbor] = tentativeGScore;
+            if (closed[neighbor]) {
+                inconsistent[neighbor] = true;
+                continue;
+            }
+            openSet.insertOrUpdate(neighbor, priority(neighbor), hScore[neighbor]);
+        }
+    }
+
+    // Rebuilds the open list with the heuristic of the targets still to reach
+    private void requeueOpenSlots(LngLat[] targets, boolean[] reached) {
+        openSet.clear();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!closed[slot]) {
+                hScore[slot] = heuristic(lng[slot], lat[slot], targets, reached);
+                openSet.insertOrUpdate(slot, priority(slot), hScore[slot]);
+            }
+        }
+    }
+
+    // One anytime iteration: expands until a target node better than the best one so far comes off
+    // the open list (returned), or no queued node can lead to a better path (-1)
+    private int improvePath(LngLat origin, LngLat end, MoveRules rules, LngLat[] targets, boolean[] reached,
+                            int best, long deadlineNanos) {
+        double bestCost = best < 0 ? Double.POSITIVE_INFINITY : gScore[best];
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            if (priority(current) >= bestCost) {
+                openSet.insertOrUpdate(current, priority(current), hScore[current]);
+                return -1;
+            }
+            closed[current] = true;
+            expandedNodes++;
+
+            LngLat currentPosition = new LngLat(lng[current], lat[current]);
+            if (handler.isCloseTo(currentPosition, end)) {
+                return current;
+            }
+            if (best >= 0 && expandedNodes % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() >= deadlineNanos) {
+                interrupted = true;
+                return -1;
+            }
+            if (isOutOfExpansions()) {
+                interrupted = true;
+                return -1;
+            }
+            expand(current, currentPosition, origin, rules, targets, reached);
+        }
+        return -1;
+    }
+
+    // Starts the next anytime iteration: every closed slot may be expanded again, and the open list
+    // holds the slots still queued plus the inconsistent ones, keyed with the new weight
+    private void reopen() {
+        openSet.clear();
+        for (int slot = 0; slot < slotCount; slot++) {
+            boolean queued = !closed[slot] || inconsistent[slot];
+            closed[slot] = false;
+            inconsistent[slot] = false;
+            if (queued) {
+                openSet.insertOrUpdate(slot, priority(slot), hScore[slot]);
+            }
+        }
+    }
+
+    // The lowest unweighted f-score of a slot that is queued or inconsistent; no path can be shorter
+    private double lowestUnsettledEstimate() {
+        double lowest = Double.POSITIVE_INFINITY;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (openSet.contains(slot) || inconsistent[slot]) {
+                lowest = Math.min(lowest, gScore[slot] + hScore[slot]);
+            }
+        }
+        return lowest;
+    }
+
+    // Whether a move from the node to the neighbour leaves too few moves to come close to any target
+    // not reached yet; checked before the move rules, which cost far more. Landmark bounds may
+    // overestimate, so only the straight-line distance may prune a node
+    private boolean exceedsMoveBudget(int current, int neighbor, double nextLng, double nextLat,
+                                      LngLat[] targets, boolean[] reached) {
+        double estimate = landmarks == null && neighbor != LongIntHashMap.MISSING
+                ? hScore[neighbor] : nearestTarget(nextLng, nextLat, targets, reached);
+        long movesSoFar = Math.round(gScore[current] / SystemConstants.DRONE_MOVE_DISTANCE) + 1;
+        // Close means within DRONE_IS_CLOSE_DISTANCE, so that much of the estimate needs no move
+        double movesLeft = Math.ceil((estimate - SystemConstants.DRONE_IS_CLOSE_DISTANCE)
+                / SystemConstants.DRONE_MOVE_DISTANCE - MOVE_COUNT_TOLERANCE);
+        return movesSoFar + Math.max(0.0, movesLeft) > moveBudget;
+    }
+
+    // Whether the search has spent its expansions or holds as many nodes as it may
+    private boolean isOutOfExpansions() {
+        if (expandedNodes >= searchExpansionLimit || slotCount >= MAX_SLOTS) {
+            expansionLimitReached = true;
+        }
+        return expansionLimitReached;
+    }
+
+    // A search that ran into a bound might still find the target with more room; one that only
+    // pruned nodes beyond the move budget found every route within it. The corridor only turns away
+    // moves the budget allowed, so its hits always leave a route within the budget unexplored
+    private FailureReason reasonOfFailure() {
+        if (corridorReached || expansionLimitReached) {
+            return FailureReason.SEARCH_BOUND_EXHAUSTED;
+        }
+        if (latticeBoundReached) {
+            return FailureReason.LATTICE_RANGE_EXCEEDED;
+        }
+        return moveBudgetReached ? FailureReason.OUT_OF_MOVE_BUDGET : FailureReason.UNREACHABLE;
+    }
+
+    private double priority(int slot) {
+        return gScore[slot] + heuristicWeight * hScore[slot];
+    }
+
+    // Straight-line distance to the nearest target not reached yet
+    private double nearestTarget(double fromLng, double fromLat, LngLat[] targets, boolean[] reached) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            if (!reached[i]) {
+                nearest = Math.min(nearest, distance(fromLng, fromLat, targets[i]));
+            }
+        }
+        return nearest;
+    }
+
+    // The bound a search with the given weight guarantees, which landmark estimates void
+    private double boundOf(double weight) {
+        return landmarks == null ? weight : Double.NaN;
+    }
+
+    // Distance to the nearest target not reached yet, raised to the landmark bound if there is one
+    private double heuristic(double fromLng, double fromLat, LngLat[] targets, boolean[] reached) {
+        int cell = landmarks == null ? -1 : landmarks.cellOf(fromLng, fromLat);
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            if (!reached[i]) {
+                double estimate = distance(fromLng, fromLat, targets[i]);
+                if (cell >= 0) {
+                    estimate = Math.max(estimate, landmarks.lowerBound(cell, targetCells[i], targetLandmarks[i]));
+                }
+                nearest = Math.min(nearest, estimate);
+            }
+        }
+        return nearest;
+    }
+
+    private void reset() {
+        slotsByKey.clear();
+        openSet.clear();
+        slotCount = 0;
+        expandedNodes = 0;
+        latticeBoundReached = false;
+        corridorReached = false;
+        expansionLimitReached = false;
+        moveBudgetReached = false;
+        failureReason = FailureReason.NONE;
+        interrupted = false;
+        suboptimalityBound = 1.0;
+    }
+
+    private int addSlot(long key, double nodeLng, double nodeLat, int parentSlot) {
+        if (slotCount == lng.length) {
+            int capacity = slotCount * 2;
+            keys   = Arrays.copyOf(keys, capacity);
+            lng    = Arrays.copyOf(lng, capacity);
+            lat    = Arrays.copyOf(lat, capacity);
+            gScore = Arrays.copyOf(gScore, capacity);
+            hScore = Arrays.copyOf(hScore, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            parentDirection = Arrays.copyOf(parentDirection, capacity);
+            closed = Arrays.copyOf(closed, capacity);
+            inconsistent = Arrays.copyOf(inconsistent, capacity);
+            locked = Arrays.copyOf(locked, capacity);
+        }
+        int slot = slotCount++;
+        keys[slot]   = key;
+        lng[slot]    = nodeLng;
+        lat[slot]    = nodeLat;
+        gScore[slot] = Double.POSITIVE_INFINITY;
+        parent[slot] = parentSlot;
+        closed[slot] = false;
+        inconsistent[slot] = false;
+        locked[slot] = false;
+        slotsByKey.put(key, slot);
+        return slot;
+    }
+
+    private List<LngLat> reconstructPath(int finalSlot) {
+        int length = 0;
+        for (int slot = finalSlot; slot >= 0; slot = parent[slot]) {
+            length++;
+        }
+        double[] coordinates = new double[length * 2];
+        byte[] directions = new byte[length - 1];
+        for (int slot = finalSlot; slot >= 0; slot = parent[slot]) {
+            length--;
+            coordinates[2 * length] = lng[slot];
+            coordinates[2 * length + 1] = lat[slot];
+            if (length > 0) {
+                directions[length - 1] = parentDirection[slot];
+            }
+        }
+        return new PackedPath(coordinates, directions);
+    }
+
+    private static double distance(double fromLng, double fromLat, LngLat to) {
+        double dLng = fromLng - to.lng();
+        double dLat = fromLat - to.lat();
+        return Math.sqrt(dLng * dLng + dLat * dLat);
+    }
+}
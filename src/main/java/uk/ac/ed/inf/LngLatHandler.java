@@ -7,6 +7,35 @@ import uk.ac.ed.inf.ilp.data.Restaurant;
 
 public class LngLatHandler {
 
+    /**
+     * The 16 compass angles the drone can fly in, in increments of 22.5 degrees
+     */
+    public static final double[] COMPASS_ANGLES = {
+            0.0, 22.5, 45.0, 67.5,
+            90.0, 112.5, 135.0, 157.5,
+            180.0, 202.5, 225.0, 247.5,
+            270.0, 292.5, 315.0, 337.5
+    };
+
+    private static final double COMPASS_STEP = 22.5;
+
+    // A central area and its checker, swapped as one so threads sharing a handler see matching pairs
+    private record CachedCentralChecker(NamedRegion region, CentralAreaChecker checker) { }
+
+    private volatile CachedCentralChecker centralChecker;
+
+    // (dx, dy) offset of one move along each compass angle, as nextPosition's trig path computes it
+    private static final double[] STEP_LNG = new double[COMPASS_ANGLES.length];
+    private static final double[] STEP_LAT = new double[COMPASS_ANGLES.length];
+
+    static {
+        for (int i = 0; i < COMPASS_ANGLES.length; i++) {
+            double angleRadians = Math.toRadians(COMPASS_ANGLES[i]);
+            STEP_LNG[i] = SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(angleRadians);
+            STEP_LAT[i] = SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(angleRadians);
+        }
+    }
+
     /**
      *
      * @param startPosition- starting co-ordinate
@@ -37,9 +66,23 @@ public class LngLatHandler {
             throw new IllegalArgumentException("the named region is null");
         } else if (!centralArea.name().equals("central")) {
             throw new IllegalArgumentException("the named region: " + centralArea.name() + " is not valid - must be: central");
-        } else {
-            return this.isInRegion(point, centralArea);
         }
+        CentralAreaChecker checker = centralCheckerOf(centralArea);
+        if (checker.isRectangle()) {
+            // The usual rectangular central area is answered without the generic polygon test
+            return checker.contains(point);
+        }
+        return this.isInRegion(point, centralArea);
+    }
+
+    // The checker of the central area, reused while callers keep passing the same region object
+    private CentralAreaChecker centralCheckerOf(NamedRegion centralArea) {
+        CachedCentralChecker cached = centralChecker;
+        if (cached == null || cached.region() != centralArea) {
+            cached = new CachedCentralChecker(centralArea, new CentralAreaChecker(centralArea));
+            centralChecker = cached;
+        }
+        return cached.checker();
     }
 
     /**
@@ -119,6 +162,11 @@ public class LngLatHandler {
      */
 
     public LngLat nextPosition(LngLat startPosition, double angle) {
+        int direction = compassDirection(angle);
+        if (direction >= 0) {
+            return nextCompassPosition(startPosition, direction);
+        }
+
         double distance = SystemConstants.DRONE_MOVE_DISTANCE;
 
         // Convert angle to radians
@@ -137,6 +185,44 @@ public class LngLatHandler {
         return new LngLat(newLongitude, newLatitude);
     }
 
+    /**
+     * @param startPosition - current co-ordinate
+     * @param direction - index into {@link #COMPASS_ANGLES}
+     * @return the position one move away along the compass direction, using the precomputed step table
+     */
+    public LngLat nextCompassPosition(LngLat startPosition, int direction) {
+        return new LngLat(startPosition.lng() + STEP_LNG[direction], startPosition.lat() + STEP_LAT[direction]);
+    }
+
+    /**
+     * @param angle - angle in degrees
+     * @return the index of the angle in {@link #COMPASS_ANGLES}, or -1 if it is not exactly one of them
+     */
+    public static int compassDirection(double angle) {
+        if (angle < 0.0 || angle >= 360.0) {
+            return -1;
+        }
+        double index = angle / COMPASS_STEP;
+        int direction = (int) index;
+        return direction == index ? direction : -1;
+    }
+
+    /**
+     * @param direction - index into {@link #COMPASS_ANGLES}
+     * @return the longitude change of one move in that direction
+     */
+    public static double stepLng(int direction) {
+        return STEP_LNG[direction];
+    }
+
+    /**
+     * @param direction - index into {@link #COMPASS_ANGLES}
+     * @return the latitude change of one move in that direction
+     */
+    public static double stepLat(int direction) {
+        return STEP_LAT[direction];
+    }
+
     /** @param from Starting point
      * @param to   Ending point
      * @return Angle in degrees
@@ -179,10 +265,21 @@ public class LngLatHandler {
     }
 
     private boolean doLineSegmentsIntersect(LngLat p1, LngLat p2, LngLat q1, LngLat q2) {
-        int o1 = orientation(p1, p2, q1);
-        int o2 = orientation(p1, p2, q2);
-        int o3 = orientation(q1, q2, p1);
-        int o4 = orientation(q1, q2, p2);
+        return segmentsIntersect(p1.lng(), p1.lat(), p2.lng(), p2.lat(), q1.lng(), q1.lat(), q2.lng(), q2.lat());
+    }
+
+    /**
+     * Primitive form of the segment intersection test, so callers holding raw coordinates
+     * do not need to build {@link LngLat} objects. Touching and collinear overlapping segments intersect.
+     *
+     * @return whether segment p1-p2 intersects segment q1-q2
+     */
+    public static boolean segmentsIntersect(double p1Lng, double p1Lat, double p2Lng, double p2Lat,
+                                            double q1Lng, double q1Lat, double q2Lng, double q2Lat) {
+        int o1 = orientation(p1Lng, p1Lat, p2Lng, p2Lat, q1Lng, q1Lat);
+        int o2 = orientation(p1Lng, p1Lat, p2Lng, p2Lat, q2Lng, q2Lat);
+        int o3 = orientation(q1Lng, q1Lat, q2Lng, q2Lat, p1Lng, p1Lat);
+        int o4 = orientation(q1Lng, q1Lat, q2Lng, q2Lat, p2Lng, p2Lat);
 
         // General case
         if (o1 != o2 && o3 != o4) {
@@ -190,23 +287,23 @@ public class LngLatHandler {
         }
 
         // Special cases
-        if (o1 == 0 && onSegment(p1, q1, p2)) return true;
-        if (o2 == 0 && onSegment(p1, q2, p2)) return true;
-        if (o3 == 0 && onSegment(q1, p1, q2)) return true;
-        if (o4 == 0 && onSegment(q1, p2, q2)) return true;
+        if (o1 == 0 && onSegment(p1Lng, p1Lat, q1Lng, q1Lat, p2Lng, p2Lat)) return true;
+        if (o2 == 0 && onSegment(p1Lng, p1Lat, q2Lng, q2Lat, p2Lng, p2Lat)) return true;
+        if (o3 == 0 && onSegment(q1Lng, q1Lat, p1Lng, p1Lat, q2Lng, q2Lat)) return true;
+        if (o4 == 0 && onSegment(q1Lng, q1Lat, p2Lng, p2Lat, q2Lng, q2Lat)) return true;
 
         return false;
     }
 
-    private int orientation(LngLat p, LngLat q, LngLat r) {
-        double val = (q.lat() - p.lat()) * (r.lng() - q.lng()) - (q.lng() - p.lng()) * (r.lat() - q.lat());
+    private static int orientation(double pLng, double pLat, double qLng, double qLat, double rLng, double rLat) {
+        double val = (qLat - pLat) * (rLng - qLng) - (qLng - pLng) * (rLat - qLat);
         if (val == 0) return 0; // Collinear
         return (val > 0) ? 1 : 2; // Clockwise or counterclockwise
     }
 
-    private boolean onSegment(LngLat p, LngLat q, LngLat r) {
-        return q.lat() <= Math.max(p.lat(), r.lat()) && q.lat() >= Math.min(p.lat(), r.lat()) &&
-                q.lng() <= Math.max(p.lng(), r.lng()) && q.lng() >= Math.min(p.lng(), r.lng());
+    private static boolean onSegment(double pLng, double pLat, double qLng, double qLat, double rLng, double rLat) {
+        return qLat <= Math.max(pLat, rLat) && qLat >= Math.min(pLat, rLat) &&
+                qLng <= Math.max(pLng, rLng) && qLng >= Math.min(pLng, rLng);
     }
 
 
@@ -0,0 +1,119 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to {@code int} values.
+ * Used by the lattice search to map packed node keys to slot ids without boxing.
+ */
+public final class LongIntHashMap {
+    public static final int MISSING = -1;
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntHashMap() {
+        this(1024);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key - the key to look up, must not be {@code Long.MIN_VALUE}
+     * @return the mapped value, or {@link #MISSING}
+     */
+    public int get(long key) {
+        int index = mix(key) & mask;
+        while (true) {
+            long existing = keys[index];
+            if (existing == key) {
+                return values[index];
+            }
+            if (existing == EMPTY_KEY) {
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Associates {@code key} with {@code value}, replacing any previous mapping.
+     *
+     * @param key   - the key, must not be {@code Long.MIN_VALUE}
+     * @param value - the value to store
+     */
+    public void put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Long.MIN_VALUE is reserved as the empty marker");
+        }
+        int index = mix(key) & mask;
+        while (true) {
+            long existing = keys[index];
+            if (existing == key) {
+                values[index] = value;
+                return;
+            }
+            if (existing == EMPTY_KEY) {
+                keys[index] = key;
+                values[index] = value;
+                if (++size * 2 > keys.length) {
+                    rehash();
+                }
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                int index = mix(key) & mask;
+                while (keys[index] != EMPTY_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    // murmur3 finaliser: spreads packed coordinate bits over the whole table
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
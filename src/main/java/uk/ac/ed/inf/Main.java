@@ -5,12 +5,16 @@ package uk.ac.ed.inf;
 public class Main {
     public static void main(String[] args){
         if (!areArgumentsValid(args)) {
-            System.err.println("Please enter the Date and the correct REST service URL in that order");
+            System.err.println("Please enter the Date and the correct REST service URL in that order,"
+                    + " optionally followed by a route store directory");
             return;
     }
 
         String orderDate = args[0];
         String baseUrl = args[1];
+        if (args.length == 3) {
+            System.setProperty(RouteCalculator.ROUTE_STORE_PROPERTY, args[2]);
+        }
 
         try {
             OrderProcessingHandler manager = new OrderProcessingHandler(baseUrl);
@@ -22,6 +26,6 @@ public class Main {
 }
 // method to ensure that there are the correct number of arguments inputted
 private static boolean areArgumentsValid(String[] args) {
-    return args.length == 2;
+    return args.length == 2 || args.length == 3;
 }
 }
\ No newline at end of file
@@ -41,6 +41,14 @@ public record MovesJson(
      * @param orderNumber         - order number of the order
      */
     public static void addMoves(List<MovesJson> moves, List<LngLat> mostRecentFlightPath, String orderNumber) {
+        if (mostRecentFlightPath instanceof PackedPath packed) {
+            // The directions were fixed when the path was packed, so no angle is computed again
+            for (int i = 0; i < packed.moveCount(); i++) {
+                moves.add(new MovesJson(orderNumber, packed.lng(i), packed.lat(i), packed.angle(i),
+                        packed.lng(i + 1), packed.lat(i + 1)));
+            }
+            return;
+        }
         for (int i = 0; i < mostRecentFlightPath.size() - 1; i++) {
             LngLat fromLngLat = mostRecentFlightPath.get(i);
             LngLat toLngLat = mostRecentFlightPath.get(i + 1);
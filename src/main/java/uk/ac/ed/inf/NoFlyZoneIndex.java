@@ -0,0 +1,227 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A uniform grid over the no-fly zones, built once per geometry.
+ * <p>
+ * Every polygon edge is registered in each cell its bounding box overlaps, and every region in each
+ * cell its bounding box (grown by the "close to a vertex" tolerance of
+ * {@link LngLatHandler#isInRegion}) overlaps; regions are tested as {@link CompiledPolygon}s. A move is a short segment, so its validity checks only
+ * look at the one to four cells under it instead of every edge of every zone. Results are identical
+ * to testing all regions. Instances are immutable and safe to share between threads.
+ */
+public final class NoFlyZoneIndex {
+    // Cells are at least two moves wide; very large maps get coarser cells instead of more of them
+    private static final double MIN_CELL_SIZE = 2 * SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final int MAX_CELLS_PER_AXIS = 512;
+    private static final double REGION_MARGIN = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+    // Widens segment queries so rounding in the intersection test cannot reach past the cells looked at
+    private static final double QUERY_MARGIN = 1e-12;
+
+    private final CompiledPolygon[] polygons;
+
+    // Edge endpoints, edge e runs from (x1[e], y1[e]) to (x2[e], y2[e])
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+
+    private final double minLng;
+    private final double minLat;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    // Compressed rows: entries of cell c are cellEdges[edgeStart[c] .. edgeStart[c + 1])
+    private final int[] edgeStart;
+    private final int[] cellEdges;
+    private final int[] regionStart;
+    private final int[] cellRegions;
+
+    /**
+     * @param regions - the no-fly zones to index
+     */
+    public NoFlyZoneIndex(NamedRegion[] regions) {
+        polygons = new CompiledPolygon[regions.length];
+        for (int r = 0; r < regions.length; r++) {
+            polygons[r] = new CompiledPolygon(regions[r]);
+        }
+
+        List<double[]> edges = new ArrayList<>();
+        double lowLng = Double.POSITIVE_INFINITY, lowLat = Double.POSITIVE_INFINITY;
+        double highLng = Double.NEGATIVE_INFINITY, highLat = Double.NEGATIVE_INFINITY;
+        for (NamedRegion region : regions) {
+            LngLat[] vertices = region.vertices();
+            if (vertices == null) {
+                continue;
+            }
+            for (int i = 0; i < vertices.length; i++) {
+                LngLat a = vertices[i];
+                LngLat b = vertices[(i + 1) % vertices.length];
+                edges.add(new double[]{a.lng(), a.lat(), b.lng(), b.lat()});
+                lowLng = Math.min(lowLng, a.lng());
+                lowLat = Math.min(lowLat, a.lat());
+                highLng = Math.max(highLng, a.lng());
+                highLat = Math.max(highLat, a.lat());
+            }
+        }
+
+        int edgeCount = edges.size();
+        x1 = new double[edgeCount];
+        y1 = new double[edgeCount];
+        x2 = new double[edgeCount];
+        y2 = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            double[] edge = edges.get(e);
+            x1[e] = edge[0];
+            y1[e] = edge[1];
+            x2[e] = edge[2];
+            y2[e] = edge[3];
+        }
+
+        if (edgeCount == 0) {
+            lowLng = lowLat = highLng = highLat = 0.0;
+        }
+        minLng = lowLng - REGION_MARGIN;
+        minLat = lowLat - REGION_MARGIN;
+        double width = highLng - lowLng + 2 * REGION_MARGIN;
+        double height = highLat - lowLat + 2 * REGION_MARGIN;
+        cellSize = Math.max(MIN_CELL_SIZE, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+
+        int cells = columns * rows;
+        List<List<Integer>> edgesByCell = new ArrayList<>(cells);
+        List<List<Integer>> regionsByCell = new ArrayList<>(cells);
+        for (int c = 0; c < cells; c++) {
+            edgesByCell.add(new ArrayList<>(0));
+            regionsByCell.add(new ArrayList<>(0));
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            addToCells(edgesByCell, e, Math.min(x1[e], x2[e]), Math.min(y1[e], y2[e]),
+                    Math.max(x1[e], x2[e]), Math.max(y1[e], y2[e]));
+        }
+        for (int r = 0; r < regions.length; r++) {
+            LngLat[] vertices = regions[r].vertices();
+            if (vertices == null || vertices.length < 3) {
+                continue;
+            }
+            double rMinLng = Double.POSITIVE_INFINITY, rMinLat = Double.POSITIVE_INFINITY;
+            double rMaxLng = Double.NEGATIVE_INFINITY, rMaxLat = Double.NEGATIVE_INFINITY;
+            for (LngLat vertex : vertices) {
+                rMinLng = Math.min(rMinLng, vertex.lng());
+                rMinLat = Math.min(rMinLat, vertex.lat());
+                rMaxLng = Math.max(rMaxLng, vertex.lng());
+                rMaxLat = Math.max(rMaxLat, vertex.lat());
+            }
+            addToCells(regionsByCell, r, rMinLng - REGION_MARGIN, rMinLat - REGION_MARGIN,
+                    rMaxLng + REGION_MARGIN, rMaxLat + REGION_MARGIN);
+        }
+
+        edgeStart = new int[cells + 1];
+        cellEdges = flatten(edgesByCell, edgeStart);
+        regionStart = new int[cells + 1];
+        cellRegions = flatten(regionsByCell, regionStart);
+    }
+
+    /**
+     * @return whether the segment from p1 to p2 intersects any no-fly zone edge
+     */
+    public boolean intersectsAnyEdge(double p1Lng, double p1Lat, double p2Lng, double p2Lat) {
+        int colFrom = Math.max(0, column(Math.min(p1Lng, p2Lng) - QUERY_MARGIN));
+        int colTo = Math.min(columns - 1, column(Math.max(p1Lng, p2Lng) + QUERY_MARGIN));
+        int rowFrom = Math.max(0, row(Math.min(p1Lat, p2Lat) - QUERY_MARGIN));
+        int rowTo = Math.min(rows - 1, row(Math.max(p1Lat, p2Lat) + QUERY_MARGIN));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int col = colFrom; col <= colTo; col++) {
+                int cell = row * columns + col;
+                for (int i = edgeStart[cell]; i < edgeStart[cell + 1]; i++) {
+                    int e = cellEdges[i];
+                    if (LngLatHandler.segmentsIntersect(p1Lng, p1Lat, p2Lng, p2Lat, x1[e], y1[e], x2[e], y2[e])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the segment from p1 to p2 intersects any no-fly zone edge
+     */
+    public boolean intersectsAnyEdge(LngLat p1, LngLat p2) {
+        return intersectsAnyEdge(p1.lng(), p1.lat(), p2.lng(), p2.lat());
+    }
+
+    /**
+     * @param position - point to test
+     * @return whether the point lies in any no-fly zone, with the same semantics as {@link LngLatHandler#isInRegion}
+     */
+    public boolean isInAnyRegion(LngLat position) {
+        return isInAnyRegion(position.lng(), position.lat());
+    }
+
+    /**
+     * @return whether ({@code lng}, {@code lat}) lies in any no-fly zone
+     */
+    public boolean isInAnyRegion(double lng, double lat) {
+        int col = column(lng);
+        int row = row(lat);
+        if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return false;
+        }
+        int cell = row * columns + col;
+        for (int i = regionStart[cell]; i < regionStart[cell + 1]; i++) {
+            if (polygons[cellRegions[i]].contains(lng, lat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addToCells(List<List<Integer>> byCell, int id, double lowLng, double lowLat, double highLng, double highLat) {
+        int colFrom = Math.max(0, column(lowLng));
+        int colTo = Math.min(columns - 1, column(highLng));
+        int rowFrom = Math.max(0, row(lowLat));
+        int rowTo = Math.min(rows - 1, row(highLat));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int col = colFrom; col <= colTo; col++) {
+                byCell.get(row * columns + col).add(id);
+            }
+        }
+    }
+
+    // -1 and columns / rows mark coordinates before and after the grid
+    private int column(double lng) {
+        double offset = Math.floor((lng - minLng) / cellSize);
+        return (int) Math.max(-1, Math.min(columns, offset));
+    }
+
+    private int row(double lat) {
+        double offset = Math.floor((lat - minLat) / cellSize);
+        return (int) Math.max(-1, Math.min(rows, offset));
+    }
+
+    private static int[] flatten(List<List<Integer>> byCell, int[] start) {
+        int total = 0;
+        for (int c = 0; c < byCell.size(); c++) {
+            start[c] = total;
+            total += byCell.get(c).size();
+        }
+        start[byCell.size()] = total;
+        int[] flat = new int[total];
+        int i = 0;
+        for (List<Integer> ids : byCell) {
+            for (int id : ids) {
+                flat[i++] = id;
+            }
+        }
+        return flat;
+    }
+}
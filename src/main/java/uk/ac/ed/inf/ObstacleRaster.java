@@ -0,0 +1,235 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed occupancy raster over the no-fly zones and the central area.
+ * <p>
+ * The map is cut into square cells one move wide. For every cell and each of the 16 compass
+ * directions the raster records what is known about a move in that direction from any point in the
+ * cell: whether it is certainly clear of the no-fly zones, certainly ends inside one, and whether it
+ * certainly ends inside or outside the central area. A fact is only recorded when no polygon boundary
+ * (grown by the vertex tolerance of {@link LngLatHandler#isInRegion}) comes near the cells involved,
+ * so every recorded bit agrees with the exact polygon tests; moves near a boundary have no bit set and
+ * must still be checked exactly.
+ * <p>
+ * Rows are classified in parallel. The raster is immutable and is shared by every search over its
+ * {@link RouteGeometry}.
+ */
+public final class ObstacleRaster {
+    // Bit groups of a cell word, each shifted left by the compass direction index
+    private static final int NO_FLY_CLEAR = 0;
+    private static final int NO_FLY_BLOCKED = 16;
+    private static final int CENTRAL_INSIDE = 32;
+    private static final int CENTRAL_OUTSIDE = 48;
+
+    private static final int MAX_CELLS_PER_AXIS = 2048;
+    // Any point isInRegion accepts because of a boundary lies within this distance of the boundary
+    private static final double BOUNDARY_MARGIN = SystemConstants.DRONE_IS_CLOSE_DISTANCE + 1e-6;
+    private static final double BORDER = 2 * SystemConstants.DRONE_MOVE_DISTANCE + BOUNDARY_MARGIN;
+
+    private final double minLng;
+    private final double minLat;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final long[] cells;
+
+    /**
+     * Builds the raster for {@code geometry}, using its compiled no-fly and central area tests.
+     *
+     * @param geometry - the map to rasterize
+     */
+    public ObstacleRaster(RouteGeometry geometry) {
+        double[][] noFlyEdges = edgesOf(geometry.noFlyZones());
+        double[][] centralEdges = edgesOf(new NamedRegion[]{geometry.centralArea()});
+
+        double lowLng = Double.POSITIVE_INFINITY, lowLat = Double.POSITIVE_INFINITY;
+        double highLng = Double.NEGATIVE_INFINITY, highLat = Double.NEGATIVE_INFINITY;
+        for (double[][] edges : new double[][][]{noFlyEdges, centralEdges}) {
+            for (double[] edge : edges) {
+                lowLng = Math.min(lowLng, Math.min(edge[0], edge[2]));
+                lowLat = Math.min(lowLat, Math.min(edge[1], edge[3]));
+                highLng = Math.max(highLng, Math.max(edge[0], edge[2]));
+                highLat = Math.max(highLat, Math.max(edge[1], edge[3]));
+            }
+        }
+        if (lowLng > highLng) {
+            lowLng = lowLat = highLng = highLat = 0.0;
+        }
+        minLng = lowLng - BORDER;
+        minLat = lowLat - BORDER;
+        double width = highLng - lowLng + 2 * BORDER;
+        double height = highLat - lowLat + 2 * BORDER;
+        cellSize = Math.max(SystemConstants.DRONE_MOVE_DISTANCE, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+        columns = (int) Math.ceil(width / cellSize);
+        rows = (int) Math.ceil(height / cellSize);
+        cells = new long[columns * rows];
+
+        NoFlyZoneIndex noFly = geometry.noFlyIndex();
+        CentralAreaChecker central = geometry.centralChecker();
+        IntStream.range(0, rows).parallel().forEach(row -> classifyRow(row, noFlyEdges, centralEdges, noFly, central));
+    }
+
+    /**
+     * @return the cell word for the cell holding ({@code lng}, {@code lat}), or 0 (nothing known)
+     * outside the raster
+     */
+    public long cellBits(double lng, double lat) {
+        double col = Math.floor((lng - minLng) / cellSize);
+        double row = Math.floor((lat - minLat) / cellSize);
+        if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return 0L;
+        }
+        return cells[(int) row * columns + (int) col];
+    }
+
+    /**
+     * @return whether the cell word says a move in {@code direction} cannot touch a no-fly zone
+     */
+    public static boolean isNoFlyClear(long bits, int direction) {
+        return (bits >>> (NO_FLY_CLEAR + direction) & 1L) != 0;
+    }
+
+    /**
+     * @return whether the cell word says a move in {@code direction} ends inside a no-fly zone
+     */
+    public static boolean isNoFlyBlocked(long bits, int direction) {
+        return (bits >>> (NO_FLY_BLOCKED + direction) & 1L) != 0;
+    }
+
+    /**
+     * @return whether the cell word says a move in {@code direction} ends inside the central area
+     */
+    public static boolean endsInCentral(long bits, int direction) {
+        return (bits >>> (CENTRAL_INSIDE + direction) & 1L) != 0;
+    }
+
+    /**
+     * @return whether the cell word says a move in {@code direction} ends outside the central area
+     */
+    public static boolean endsOutsideCentral(long bits, int direction) {
+        return (bits >>> (CENTRAL_OUTSIDE + direction) & 1L) != 0;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private void classifyRow(int row, double[][] noFlyEdges, double[][] centralEdges,
+                             NoFlyZoneIndex noFly, CentralAreaChecker central) {
+        double cellLat = minLat + row * cellSize;
+        // Only edges within reach of a move from this row can matter
+        double reach = SystemConstants.DRONE_MOVE_DISTANCE + BOUNDARY_MARGIN;
+        double[][] nearNoFly = edgesInBand(noFlyEdges, cellLat - reach, cellLat + cellSize + reach);
+        double[][] nearCentral = edgesInBand(centralEdges, cellLat - reach, cellLat + cellSize + reach);
+
+        for (int col = 0; col < columns; col++) {
+            double cellLng = minLng + col * cellSize;
+            long bits = 0L;
+            for (int d = 0; d < LatticePoint.DIRECTIONS; d++) {
+                double endLng = cellLng + LngLatHandler.stepLng(d);
+                double endLat = cellLat + LngLatHandler.stepLat(d);
+                double endCentreLng = endLng + cellSize / 2;
+                double endCentreLat = endLat + cellSize / 2;
+
+                // Every possible end point lies in the end cell, and the move stays in the box around both cells
+                boolean endNearNoFly = touchesAny(nearNoFly, endLng, endLat, endLng + cellSize, endLat + cellSize);
+                if (!endNearNoFly) {
+                    boolean endInNoFly = noFly.isInAnyRegion(endCentreLng, endCentreLat);
+                    if (endInNoFly) {
+                        bits |= 1L << (NO_FLY_BLOCKED + d);
+                    } else if (!touchesAny(nearNoFly, Math.min(cellLng, endLng), Math.min(cellLat, endLat),
+                            Math.max(cellLng, endLng) + cellSize, Math.max(cellLat, endLat) + cellSize)) {
+                        bits |= 1L << (NO_FLY_CLEAR + d);
+                    }
+                }
+                if (!touchesAny(nearCentral, endLng, endLat, endLng + cellSize, endLat + cellSize)) {
+                    boolean endInCentral = central.contains(endCentreLng, endCentreLat);
+                    bits |= 1L << ((endInCentral ? CENTRAL_INSIDE : CENTRAL_OUTSIDE) + d);
+                }
+            }
+            cells[row * columns + col] = bits;
+        }
+    }
+
+    // Whether any edge comes within BOUNDARY_MARGIN of the box
+    private static boolean touchesAny(double[][] edges, double lowLng, double lowLat, double highLng, double highLat) {
+        lowLng -= BOUNDARY_MARGIN;
+        lowLat -= BOUNDARY_MARGIN;
+        highLng += BOUNDARY_MARGIN;
+        highLat += BOUNDARY_MARGIN;
+        for (double[] edge : edges) {
+            if (segmentTouchesBox(edge[0], edge[1], edge[2], edge[3], lowLng, lowLat, highLng, highLat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Liang-Barsky clipping of the segment against the box: [enter, exit] is the part of the segment inside it
+    private static boolean segmentTouchesBox(double x1, double y1, double x2, double y2,
+                                             double lowX, double lowY, double highX, double highY) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double enter = 0.0;
+        double exit = 1.0;
+        if (dx == 0) {
+            if (x1 < lowX || x1 > highX) {
+                return false;
+            }
+        } else {
+            double tLow = (lowX - x1) / dx;
+            double tHigh = (highX - x1) / dx;
+            enter = Math.max(enter, Math.min(tLow, tHigh));
+            exit = Math.min(exit, Math.max(tLow, tHigh));
+        }
+        if (dy == 0) {
+            if (y1 < lowY || y1 > highY) {
+                return false;
+            }
+        } else {
+            double tLow = (lowY - y1) / dy;
+            double tHigh = (highY - y1) / dy;
+            enter = Math.max(enter, Math.min(tLow, tHigh));
+            exit = Math.min(exit, Math.max(tLow, tHigh));
+        }
+        return enter <= exit;
+    }
+
+    private static double[][] edgesInBand(double[][] edges, double lowLat, double highLat) {
+        List<double[]> near = new ArrayList<>();
+        for (double[] edge : edges) {
+            if (Math.max(edge[1], edge[3]) >= lowLat - BOUNDARY_MARGIN && Math.min(edge[1], edge[3]) <= highLat + BOUNDARY_MARGIN) {
+                near.add(edge);
+            }
+        }
+        return near.toArray(new double[0][]);
+    }
+
+    private static double[][] edgesOf(NamedRegion[] regions) {
+        List<double[]> edges = new ArrayList<>();
+        for (NamedRegion region : regions) {
+            LngLat[] vertices = region.vertices();
+            if (vertices == null) {
+                continue;
+            }
+            for (int i = 0; i < vertices.length; i++) {
+                LngLat a = vertices[i];
+                LngLat b = vertices[(i + 1) % vertices.length];
+                edges.add(new double[]{a.lng(), a.lat(), b.lng(), b.lat()});
+            }
+        }
+        return edges.toArray(new double[0][]);
+    }
+}
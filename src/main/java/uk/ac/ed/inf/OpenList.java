@@ -0,0 +1,36 @@
+package uk.ac.ed.inf;
+
+/**
+ * The open list of a search over integer slot ids: queued slots come out smallest key first.
+ * Queueing a slot that is already queued moves it to its new key, so each slot is returned at most
+ * once per time it was queued.
+ */
+public interface OpenList {
+
+    /**
+     * Queues {@code slot} with the given keys, or moves it to its new place if it is already queued.
+     *
+     * @param slot          - slot id, must be non-negative
+     * @param primaryKey    - main ordering key (e.g. f = g + h)
+     * @param secondaryKey  - tie-break key (e.g. h); implementations may ignore it
+     */
+    void insertOrUpdate(int slot, double primaryKey, double secondaryKey);
+
+    /**
+     * Removes and returns the slot with the smallest key.
+     *
+     * @throws IllegalStateException if the list is empty
+     */
+    int poll();
+
+    boolean contains(int slot);
+
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Removes every queued slot.
+     */
+    void clear();
+}
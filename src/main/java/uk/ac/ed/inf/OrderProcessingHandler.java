@@ -4,12 +4,15 @@ package uk.ac.ed.inf;
 
 import uk.ac.ed.inf.ilp.constant.OrderStatus;
 import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
 import uk.ac.ed.inf.ilp.data.LngLat;
 import uk.ac.ed.inf.ilp.data.Order;
 import uk.ac.ed.inf.ilp.data.Restaurant;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * class that performs all the processing for the orders
@@ -42,7 +45,9 @@ public class OrderProcessingHandler {
                 System.out.println("No orders returned from REST for date: " + orderDate);
             } else {
                 LngLat startPoint = new LngLat(-3.186874, 55.944494);
-                processEachOrderAndGenerateDeliveryInfo(orders, restaurants,
+                Order[] validatedOrders = validateOrders(orders, restaurants);
+                warmUpOutwardPaths(validatedOrders, restaurants, startPoint);
+                processEachOrderAndGenerateDeliveryInfo(orders, validatedOrders, restaurants,
                         startPoint, flightPaths, moves, deliveries);
             }
 
@@ -55,8 +60,42 @@ public class OrderProcessingHandler {
         }
     }
 
+    // Each order validated once, so the warm-up and the delivery share the result; null where validation failed
+    private Order[] validateOrders(Order[] orders, Restaurant[] restaurants) {
+        Order[] validatedOrders = new Order[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            try {
+                validatedOrders[i] = orderValidator.validateOrder(orders[i], restaurants);
+            } catch (Exception e) {
+                System.err.println("Error validating order " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return validatedOrders;
+    }
+
+    // One search for the outward routes of the valid orders; the orders then read them from the cache.
+    // A failed warm-up only costs time, since each order searches its own route if it is not cached
+    private void warmUpOutwardPaths(Order[] validatedOrders, Restaurant[] restaurants, LngLat startPoint) {
+        try {
+            Set<Restaurant> ordered = new LinkedHashSet<>();
+            for (Order validated : validatedOrders) {
+                if (validated == null) {
+                    continue;
+                }
+                Restaurant restaurant = OrderValidator.restaurantFinder(validated, restaurants);
+                if (validated.getOrderValidationCode().equals(OrderValidationCode.NO_ERROR) && restaurant != null) {
+                    ordered.add(restaurant);
+                }
+            }
+            routeCalculator.findOutwardPaths(startPoint, ordered.toArray(new Restaurant[0]));
+        } catch (Exception e) {
+            System.err.println("Error warming up outward paths: " + e.getMessage());
+        }
+    }
+
     private void processEachOrderAndGenerateDeliveryInfo(
             Order[] orders,
+            Order[] validatedOrders,
             Restaurant[] restaurants,
             LngLat startPoint,
             List<LngLat> flightPaths,
@@ -65,8 +104,8 @@ public class OrderProcessingHandler {
     ) {
         int iteration = 0;
         for (Order order : orders) {
-            iteration++;
-            processSingleOrder(order, restaurants, startPoint, flightPaths, moves, iteration);
+            processSingleOrder(order, validatedOrders[iteration], restaurants, startPoint, flightPaths, moves,
+                    ++iteration);
             DeliveriesJson.updateDeliveryInfo(deliveries, order);
             System.out.println("Processed order index: " + iteration);
         }
@@ -74,6 +113,7 @@ public class OrderProcessingHandler {
 
     private void processSingleOrder(
             Order order,
+            Order processedOrder,
             Restaurant[] restaurants,
             LngLat startPoint,
             List<LngLat> flightPaths,
@@ -81,7 +121,9 @@ public class OrderProcessingHandler {
             int numOfOrderProcessed
     ) {
         try {
-            Order processedOrder = orderValidator.validateOrder(order, restaurants);
+            if (processedOrder == null) {
+                throw new IllegalStateException("Order could not be validated");
+            }
 
             if (processedOrder.getOrderValidationCode().equals(OrderValidationCode.NO_ERROR)) {
                 System.out.println("Processing order " + numOfOrderProcessed);
@@ -113,23 +155,37 @@ public class OrderProcessingHandler {
 
             System.out.println("Calculating path to " + destination.location());
 
-            // Calculate path to restaurant
+            // Calculate path to restaurant; an order no route reaches cannot be delivered, whatever the reason
             List<LngLat> pathToDestination = routeCalculator.findPath(startPoint, destination.location(), false);
-            if (!pathToDestination.isEmpty()) {
-                flightPaths.addAll(pathToDestination);
-                MovesJson.addMoves(moves, pathToDestination, order.getOrderNo());
-                MovesJson.addHoverMove(moves, destination.location(), order.getOrderNo());
+            if (pathToDestination.isEmpty()) {
+                LatticeSearch.FailureReason reason = routeCalculator.getFailureReason(startPoint,
+                        destination.location(), false);
+                throw new IllegalStateException(reason == LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET
+                        ? "Restaurant out of the drone's range for order: " + order.getOrderNo()
+                        : "No route to the restaurant (" + reason + ") for order: " + order.getOrderNo());
             }
 
-            // Calculate return path
-            List<LngLat> returnPath = routeCalculator.findPath(destination.location(), startPoint, true);
-            if (!returnPath.isEmpty()) {
-                flightPaths.addAll(returnPath);
-                MovesJson.addMoves(moves, returnPath, order.getOrderNo());
-                if (!moves.isEmpty()) {  // Only add hover move if there are previous moves
-                    MovesJson.addHoverMove(moves, startPoint, order.getOrderNo());
-                }
+            // Calculate return path, with the moves the battery has left after the outward flight and both hovers
+            int returnBudget = SystemConstants.DRONE_MAX_MOVES - (pathToDestination.size() - 1) - 2;
+            List<LngLat> returnPath = returnBudget < 0 ? List.of()
+                    : routeCalculator.findPath(destination.location(), startPoint, true, returnBudget);
+            if (returnBudget < 0 || returnPath.isEmpty() && routeCalculator.getFailureReason(destination.location(),
+                    startPoint, true, returnBudget) == LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET) {
+                throw new IllegalStateException("Round trip exceeds " + SystemConstants.DRONE_MAX_MOVES
+                        + " moves for order: " + order.getOrderNo());
             }
+            if (returnPath.isEmpty()) {
+                throw new IllegalStateException("No route back from the restaurant ("
+                        + routeCalculator.getFailureReason(destination.location(), startPoint, true, returnBudget)
+                        + ") for order: " + order.getOrderNo());
+            }
+
+            flightPaths.addAll(pathToDestination);
+            MovesJson.addMoves(moves, pathToDestination, order.getOrderNo());
+            MovesJson.addHoverMove(moves, destination.location(), order.getOrderNo());
+            flightPaths.addAll(returnPath);
+            MovesJson.addMoves(moves, returnPath, order.getOrderNo());
+            MovesJson.addHoverMove(moves, startPoint, order.getOrderNo());
 
         } catch (Exception e) {
             System.err.println("Error in handling valid order: " + e.getMessage());
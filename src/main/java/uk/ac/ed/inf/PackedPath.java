@@ -0,0 +1,155 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable flight path packed into primitive arrays: the coordinates of every position in one
+ * {@code double[]} and the compass direction of every move in one {@code byte[]}.
+ * <p>
+ * Positions are only materialised as {@link LngLat} when read, so a path costs 17 bytes per
+ * position instead of a list slot and an object each. Instances can be shared between threads and
+ * cached without copying; every mutator throws {@link UnsupportedOperationException}. Moves can be
+ * written out from the stored directions ({@link #angle(int)}) without recomputing their angles.
+ */
+public final class PackedPath extends AbstractList<LngLat> implements RandomAccess {
+    /**
+     * the path with no positions, returned for routes that were not found
+     */
+    public static final PackedPath EMPTY = new PackedPath(new double[0], new byte[0]);
+
+    // lng, lat of position i at 2i, 2i + 1
+    private final double[] coordinates;
+    // compass direction index of the move from position i to i + 1
+    private final byte[] directions;
+
+    /**
+     * Wraps the arrays without copying them; the caller must not modify them afterwards.
+     *
+     * @param coordinates - longitude and latitude of every position, interleaved
+     * @param directions  - compass direction index of every move, one fewer than the positions
+     */
+    PackedPath(double[] coordinates, byte[] directions) {
+        if (coordinates.length % 2 != 0 || directions.length != Math.max(0, coordinates.length / 2 - 1)) {
+            throw new IllegalArgumentException("need one direction per move: " + coordinates.length / 2
+                    + " positions, " + directions.length + " directions");
+        }
+        this.coordinates = coordinates;
+        this.directions = directions;
+    }
+
+    /**
+     * Packs a path of compass moves. The direction of each move is the compass angle closest to it,
+     * as {@link LngLatHandler#calculateAngle} rounds it.
+     *
+     * @param path - the positions of the path, e.g. from a search
+     * @return {@code path} itself if it is already packed, otherwise a packed copy of it
+     */
+    public static PackedPath of(List<LngLat> path) {
+        if (path instanceof PackedPath packed) {
+            return packed;
+        }
+        if (path.isEmpty()) {
+            return EMPTY;
+        }
+        double[] coordinates = new double[path.size() * 2];
+        byte[] directions = new byte[path.size() - 1];
+        int i = 0;
+        LngLat previous = null;
+        // Iterated rather than indexed, so linked lists are packed in linear time
+        for (LngLat position : path) {
+            if (previous != null) {
+                directions[i - 1] = (byte) LngLatHandler.compassDirection(
+                        LngLatHandler.calculateAngle(previous, position) % 360.0);
+            }
+            coordinates[2 * i] = position.lng();
+            coordinates[2 * i + 1] = position.lat();
+            previous = position;
+            i++;
+        }
+        return new PackedPath(coordinates, directions);
+    }
+
+    /**
+     * Replays moves on the {@link LatticePoint} lattice from {@code start}, giving exactly the
+     * coordinates a lattice search produces for them.
+     *
+     * @param start      - the first position
+     * @param directions - compass direction index of every move; kept without copying
+     * @return the path, or {@code null} if a move leaves the range of the lattice
+     */
+    public static PackedPath replay(LngLat start, byte[] directions) {
+        double[] coordinates = new double[(directions.length + 1) * 2];
+        coordinates[0] = start.lng();
+        coordinates[1] = start.lat();
+        long key = LatticePoint.ORIGIN_KEY;
+        for (int i = 0; i < directions.length; i++) {
+            key = LatticePoint.step(key, directions[i]);
+            if (key == LatticePoint.OUT_OF_RANGE) {
+                return null;
+            }
+            coordinates[2 * i + 2] = start.lng() + LatticePoint.offsetLng(key);
+            coordinates[2 * i + 3] = start.lat() + LatticePoint.offsetLat(key);
+        }
+        return new PackedPath(coordinates, directions);
+    }
+
+    @Override
+    public LngLat get(int index) {
+        return new LngLat(lng(index), lat(index));
+    }
+
+    @Override
+    public int size() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * @param index - position index
+     * @return the longitude of the position, without materialising it
+     */
+    public double lng(int index) {
+        return coordinates[2 * checkIndex(index)];
+    }
+
+    /**
+     * @param index - position index
+     * @return the latitude of the position, without materialising it
+     */
+    public double lat(int index) {
+        return coordinates[2 * checkIndex(index) + 1];
+    }
+
+    /**
+     * @return the number of moves, one fewer than the positions (0 for an empty path)
+     */
+    public int moveCount() {
+        return directions.length;
+    }
+
+    /**
+     * @param move - move index; move {@code i} goes from position {@code i} to {@code i + 1}
+     * @return the index of the move's angle in {@link LngLatHandler#COMPASS_ANGLES}
+     */
+    public int direction(int move) {
+        return directions[move];
+    }
+
+    /**
+     * @param move - move index; move {@code i} goes from position {@code i} to {@code i + 1}
+     * @return the angle of the move in degrees, in [0, 360)
+     */
+    public double angle(int move) {
+        return LngLatHandler.COMPASS_ANGLES[directions[move]];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return index;
+    }
+}
@@ -0,0 +1,229 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe, bounded least-recently-used cache of flight paths.
+ * <p>
+ * The cache is bounded both by entry count and by the total number of positions held across all
+ * paths. Cached paths are stored as unmodifiable lists (a {@link PackedPath} as it is) and handed
+ * out without copying. Concurrent requests for the same missing key share a single load instead of
+ * each running a search.
+ *
+ * @param <K> the key type
+ */
+public final class PathCache<K> {
+
+    /**
+     * A snapshot of the cache counters.
+     *
+     * @param hits          lookups answered from the cache
+     * @param misses        lookups that had to load a path
+     * @param evictions     entries dropped to stay within the limits
+     * @param loadTimeNanos total time spent loading missing paths
+     * @param size          current number of entries
+     * @param positions     current number of positions held across all entries
+     */
+    public record Stats(long hits, long misses, long evictions, long loadTimeNanos, int size, long positions) {
+        /**
+         * @return the fraction of lookups answered from the cache, or 0 if there were none
+         */
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<K, List<LngLat>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<K, CompletableFuture<List<LngLat>>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+
+    private int maxEntries;
+    private long maxPositions;
+    private long positions;
+
+    /**
+     * @param maxEntries   - maximum number of cached paths
+     * @param maxPositions - maximum number of positions held across all cached paths
+     */
+    public PathCache(int maxEntries, long maxPositions) {
+        setLimits(maxEntries, maxPositions);
+    }
+
+    /**
+     * Changes the bounds, evicting least recently used entries if the cache is now over them.
+     *
+     * @param maxEntries   - maximum number of cached paths, at least 1
+     * @param maxPositions - maximum number of positions held across all cached paths, at least 1
+     */
+    public void setLimits(int maxEntries, long maxPositions) {
+        if (maxEntries < 1 || maxPositions < 1) {
+            throw new IllegalArgumentException("cache limits must be positive");
+        }
+        synchronized (lock) {
+            this.maxEntries = maxEntries;
+            this.maxPositions = maxPositions;
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * @param key - the key to look up
+     * @return the cached path, or {@code null} if absent; does not change the counters
+     */
+    public List<LngLat> getIfPresent(K key) {
+        synchronized (lock) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Returns the cached path for {@code key}, loading and caching it first if needed.
+     *
+     * @param key    - the key to look up
+     * @param loader - computes the path on a miss; must not return {@code null}
+     * @return an unmodifiable view of the path
+     */
+    public List<LngLat> get(K key, Function<? super K, ? extends List<LngLat>> loader) {
+        List<LngLat> cached = getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<List<LngLat>> pending = new CompletableFuture<>();
+        CompletableFuture<List<LngLat>> inProgress = loading.putIfAbsent(key, pending);
+        if (inProgress != null) {
+            // Another thread is already loading this key
+            hits.increment();
+            return await(inProgress);
+        }
+
+        try {
+            cached = getIfPresent(key);
+            if (cached != null) {
+                hits.increment();
+                pending.complete(cached);
+                return cached;
+            }
+            misses.increment();
+            long start = System.nanoTime();
+            List<LngLat> loaded = unmodifiable(loader.apply(key));
+            loadTimeNanos.add(System.nanoTime() - start);
+
+            put(key, loaded);
+            pending.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, pending);
+        }
+    }
+
+    /**
+     * Stores {@code path} under {@code key}, replacing any previous entry.
+     *
+     * @param key  - the key
+     * @param path - the path to store; it is wrapped, not copied, so callers must not modify it afterwards
+     */
+    public void put(K key, List<LngLat> path) {
+        List<LngLat> view = unmodifiable(path);
+        synchronized (lock) {
+            List<LngLat> previous = entries.put(key, view);
+            if (previous != null) {
+                positions -= weight(previous);
+            }
+            positions += weight(view);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Removes every entry whose key matches {@code filter}.
+     *
+     * @param filter - selects the keys to drop
+     * @return the number of entries removed
+     */
+    public int invalidateIf(Predicate<? super K> filter) {
+        int removed = 0;
+        synchronized (lock) {
+            Iterator<Map.Entry<K, List<LngLat>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, List<LngLat>> entry = iterator.next();
+                if (filter.test(entry.getKey())) {
+                    positions -= weight(entry.getValue());
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every entry. The counters are kept.
+     */
+    public void invalidateAll() {
+        synchronized (lock) {
+            entries.clear();
+            positions = 0;
+        }
+    }
+
+    public Stats stats() {
+        synchronized (lock) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), loadTimeNanos.sum(), entries.size(), positions);
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<List<LngLat>> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || positions > maxPositions) && entries.size() > 1) {
+            positions -= weight(eldest.next());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    // Packed paths are immutable already and are stored as they are
+    private static List<LngLat> unmodifiable(List<LngLat> path) {
+        return path instanceof PackedPath ? path : Collections.unmodifiableList(path);
+    }
+
+    private static long weight(List<LngLat> path) {
+        return Math.max(1, path.size());
+    }
+
+    private static List<LngLat> await(CompletableFuture<List<LngLat>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
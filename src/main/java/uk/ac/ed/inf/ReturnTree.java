@@ -0,0 +1,258 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A backward search tree over the drone move lattice, rooted at the point every return path ends at.
+ * <p>
+ * The tree is grown breadth first from the root, one move per layer, with each layer's nodes expanded
+ * in parallel and merged in a fixed order so the tree does not depend on the thread count. The map
+ * around the root is cut into square cells smaller than the {@code isCloseTo} distance and each cell
+ * keeps only the first node to reach it, so the tree stays as large as the area it covers. Every node
+ * records the move that leads one step closer to the root.
+ * <p>
+ * Moves are checked with the return path rule: a move that starts inside the central area must end
+ * inside it, so the route from any node to the root never leaves the central area after entering it.
+ * <p>
+ * A return path from a position is found without searching: the tree nodes within the
+ * {@code isCloseTo} distance of the position have their moves replayed from the position itself, which
+ * shifts the route by less than that distance, so it still ends close to the root. Replayed moves are
+ * checked against the move rules again, and of the nodes whose whole route is valid, the one giving
+ * the fewest moves is used. Routes are not shortest: each cell keeps one node, so the tree's route
+ * from a cell is the shortest only to that node, and a replay starts from a position up to the
+ * {@code isCloseTo} distance away from it. They are typically two or three moves
+ * longer than searched ones, e.g. 33 instead of 31 or 109 instead of 106 moves, and no bound is
+ * claimed. The tree is immutable and can be shared by every search over its geometry.
+ */
+public final class ReturnTree {
+    /**
+     * default number of moves the tree reaches out from its root
+     */
+    public static final int DEFAULT_RADIUS = 127;
+
+    private static final double CLOSE = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+    // Small enough that a node in the same cell as a position is always close to it
+    private static final double CELL_SIZE = CLOSE / 1.5;
+    private static final int CELL_REACH = (int) Math.ceil(CLOSE / CELL_SIZE);
+    private static final int OPPOSITE = LatticePoint.DIRECTIONS / 2;
+
+    private final LngLat root;
+    private final CentralAreaChecker central;
+    private final double minLng;
+    private final double minLat;
+    private final int columns;
+    private final int rows;
+    // Per cell: the node's lattice key relative to the root (0 if the cell has no node),
+    // its number of moves from the root, its parent cell and the move towards it
+    private final long[] keys;
+    private final int[] depth;
+    private final int[] parentCell;
+    private final byte[] direction;
+    private final int nodeCount;
+
+    /**
+     * Grows the tree from {@code root} over the map of {@code geometry}.
+     *
+     * @param geometry - the map, used for the central area rule
+     * @param root     - the end point of every return path
+     * @param radius   - the maximum number of moves from the root, at most 127
+     * @param rules    - move validity rules for this geometry, called from several threads
+     */
+    public ReturnTree(RouteGeometry geometry, LngLat root, int radius, LatticeSearch.MoveRules rules) {
+        if (radius < 0 || radius > 127) {
+            throw new IllegalArgumentException("radius must be between 0 and 127 moves: " + radius);
+        }
+        this.root = root;
+        this.central = geometry.centralChecker();
+        double reach = radius * SystemConstants.DRONE_MOVE_DISTANCE + CELL_SIZE;
+        this.minLng = root.lng() - reach;
+        this.minLat = root.lat() - reach;
+        this.columns = (int) Math.ceil(2 * reach / CELL_SIZE);
+        this.rows = columns;
+        this.keys = new long[columns * rows];
+        this.depth = new int[columns * rows];
+        this.parentCell = new int[columns * rows];
+        this.direction = new byte[columns * rows];
+        Arrays.fill(depth, -1);
+        this.nodeCount = grow(radius, rules);
+    }
+
+    /**
+     * Finds a return path from {@code start} to close to the root by replaying the tree.
+     *
+     * @param start - the starting coordinate
+     * @param rules - move validity rules used to check the replayed moves
+     * @return the coordinates from start to close to the root (including both), or {@code null} if
+     *         the start is beyond the tree or no nearby node gives a valid route
+     */
+    public List<LngLat> findPath(LngLat start, LatticeSearch.MoveRules rules) {
+        LngLatHandler handler = new LngLatHandler();
+        if (handler.isCloseTo(start, root)) {
+            return new ArrayList<>(List.of(start));
+        }
+        // A replay can end early once it is close to the root, so the shallowest node is not always best
+        List<LngLat> best = null;
+        for (int cell : nearbyNodes(start)) {
+            if (best != null && depth[cell] + 1 >= best.size()) {
+                break;
+            }
+            List<LngLat> path = replay(start, cell, rules, handler);
+            if (path != null && (best == null || path.size() < best.size())) {
+                best = path;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of moves from the root to the node nearest {@code position}, or -1 if
+     *         no node is within the {@code isCloseTo} distance
+     */
+    public int movesFrom(LngLat position) {
+        int[] candidates = nearbyNodes(position);
+        return candidates.length == 0 ? -1 : depth[candidates[0]];
+    }
+
+    public LngLat getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private int grow(int radius, LatticeSearch.MoveRules rules) {
+        int rootCell = cellOf(root.lng(), root.lat());
+        keys[rootCell] = LatticePoint.ORIGIN_KEY;
+        depth[rootCell] = 0;
+        parentCell[rootCell] = -1;
+        int[] frontier = {rootCell};
+        int count = 1;
+
+        for (int layer = 1; layer <= radius && frontier.length > 0; layer++) {
+            int[] current = frontier;
+            // Slot i * 16 + d holds the lattice key of the node reached backwards from current[i] in direction d, or 0
+            long[] reached = new long[current.length * LatticePoint.DIRECTIONS];
+            IntStream.range(0, current.length).parallel()
+                    .forEach(i -> expand(current[i], i * LatticePoint.DIRECTIONS, reached, rules));
+
+            int[] next = new int[reached.length];
+            int nextSize = 0;
+            for (int slot = 0; slot < reached.length; slot++) {
+                long key = reached[slot];
+                if (key == 0L) {
+                    continue;
+                }
+                int cell = cellOf(root.lng() + LatticePoint.offsetLng(key), root.lat() + LatticePoint.offsetLat(key));
+                if (depth[cell] >= 0) {
+                    continue;
+                }
+                keys[cell] = key;
+                depth[cell] = layer;
+                parentCell[cell] = current[slot / LatticePoint.DIRECTIONS];
+                direction[cell] = (byte) (slot % LatticePoint.DIRECTIONS);
+                next[nextSize++] = cell;
+            }
+            frontier = Arrays.copyOf(next, nextSize);
+            count += nextSize;
+        }
+        return count;
+    }
+
+    // Records every valid move that ends at the cell's node and starts in a cell no earlier layer has claimed
+    private void expand(int cell, int firstSlot, long[] reached, LatticeSearch.MoveRules rules) {
+        long key = keys[cell];
+        LngLat to = new LngLat(root.lng() + LatticePoint.offsetLng(key), root.lat() + LatticePoint.offsetLat(key));
+        for (int d = 0; d < LatticePoint.DIRECTIONS; d++) {
+            long fromKey = LatticePoint.step(key, (d + OPPOSITE) % LatticePoint.DIRECTIONS);
+            if (fromKey == LatticePoint.OUT_OF_RANGE) {
+                continue;
+            }
+            double fromLng = root.lng() + LatticePoint.offsetLng(fromKey);
+            double fromLat = root.lat() + LatticePoint.offsetLat(fromKey);
+            int fromCell = cellOf(fromLng, fromLat);
+            // Cells claimed by earlier layers never change, so this read is safe while the layer runs
+            if (fromCell < 0 || depth[fromCell] >= 0) {
+                continue;
+            }
+            LngLat from = new LngLat(fromLng, fromLat);
+            if (rules.isValidMove(from, d, to, central.contains(fromLng, fromLat))) {
+                reached[firstSlot + d] = fromKey;
+            }
+        }
+    }
+
+    // Nodes within the isCloseTo distance of the position, fewest moves first
+    private int[] nearbyNodes(LngLat position) {
+        int col = (int) Math.floor((position.lng() - minLng) / CELL_SIZE);
+        int row = (int) Math.floor((position.lat() - minLat) / CELL_SIZE);
+        int[] found = new int[(2 * CELL_REACH + 1) * (2 * CELL_REACH + 1)];
+        int size = 0;
+        for (int r = row - CELL_REACH; r <= row + CELL_REACH; r++) {
+            for (int c = col - CELL_REACH; c <= col + CELL_REACH; c++) {
+                if (r < 0 || r >= rows || c < 0 || c >= columns) {
+                    continue;
+                }
+                int cell = r * columns + c;
+                if (depth[cell] < 0) {
+                    continue;
+                }
+                double dLng = root.lng() + LatticePoint.offsetLng(keys[cell]) - position.lng();
+                double dLat = root.lat() + LatticePoint.offsetLat(keys[cell]) - position.lat();
+                if (Math.sqrt(dLng * dLng + dLat * dLat) < CLOSE) {
+                    found[size++] = cell;
+                }
+            }
+        }
+        int[] nodes = Arrays.copyOf(found, size);
+        // Insertion sort by depth; there are at most a few dozen candidates
+        for (int i = 1; i < nodes.length; i++) {
+            int cell = nodes[i];
+            int j = i - 1;
+            for (; j >= 0 && depth[nodes[j]] > depth[cell]; j--) {
+                nodes[j + 1] = nodes[j];
+            }
+            nodes[j + 1] = cell;
+        }
+        return nodes;
+    }
+
+    // Flies the moves recorded from the node to the root, starting at the position instead of the node
+    private List<LngLat> replay(LngLat start, int cell, LatticeSearch.MoveRules rules, LngLatHandler handler) {
+        List<LngLat> path = new ArrayList<>(depth[cell] + 1);
+        path.add(start);
+        LngLat position = start;
+        boolean entered = central.contains(start);
+        long key = LatticePoint.ORIGIN_KEY;
+        for (; parentCell[cell] >= 0 && !handler.isCloseTo(position, root); cell = parentCell[cell]) {
+            int move = direction[cell];
+            key = LatticePoint.step(key, move);
+            LngLat next = new LngLat(start.lng() + LatticePoint.offsetLng(key), start.lat() + LatticePoint.offsetLat(key));
+            if (!rules.isValidMove(position, move, next, entered)) {
+                return null;
+            }
+            entered |= central.contains(next);
+            path.add(next);
+            position = next;
+        }
+        return handler.isCloseTo(position, root) ? path : null;
+    }
+
+    private int cellOf(double lng, double lat) {
+        int col = (int) Math.floor((lng - minLng) / CELL_SIZE);
+        int row = (int) Math.floor((lat - minLat) / CELL_SIZE);
+        if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return -1;
+        }
+        return row * columns + col;
+    }
+}
@@ -1,9 +1,18 @@
 package uk.ac.ed.inf;
 
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
 import uk.ac.ed.inf.ilp.data.LngLat;
 import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * The {@code SimpleRouteCalculator} class calculates the shortest path between two points,
@@ -11,46 +20,196 @@ import java.util.*;
  * (for "return path" scenarios).
  */
 public class RouteCalculator {
+    /**
+     * The A* implementation used by {@link #findPath}.
+     */
+    public enum SearchEngine {
+        /** Object-per-node search over {@code LngLat} keys. */
+        NODE_GRAPH,
+        /** Primitive-array search keyed by packed lattice indices, see {@link LatticeSearch}. */
+        LATTICE
+    }
+
+    /**
+     * The search strategy of the {@link SearchEngine#LATTICE} engine.
+     */
+    public enum SearchMode {
+        /** A* from the start towards the target, see {@link LatticeSearch}. */
+        A_STAR,
+        /** A* from both ends, joined where they meet, see {@link BidirectionalSearch}. */
+        BIDIRECTIONAL,
+        /** A* over straight runs of moves between jump points, see {@link JumpPointSearch}. */
+        JUMP_POINT,
+        /** Shortest polyline through the no-fly zone corners, flown in compass moves, see {@link VisibilityGraph}. */
+        VISIBILITY_GRAPH,
+        /** A* over entrances between map clusters, refined one cluster at a time, see {@link HierarchicalPlanner}. */
+        HIERARCHICAL,
+        /** A* with the heuristic inflated by {@link #setHeuristicWeight}; paths are at most that many times too long. */
+        WEIGHTED_A_STAR,
+        /** Weighted A* whose path is improved with falling weights until {@link #setAnytimeTimeLimit} runs out. */
+        ANYTIME
+    }
+
+    /**
+     * A path together with the factor by which it may be longer than the shortest path.
+     *
+     * @param path               the path, as returned by {@link #findPath(LngLat, LngLat, boolean)}
+     * @param suboptimalityBound 1 for a shortest path, the bound guaranteed by a weighted or anytime
+     *                           search, or {@link Double#NaN} if the path was not searched with a known bound
+     */
+    public record BoundedPath(List<LngLat> path, double suboptimalityBound) { }
+
+    /**
+     * Receives the positions one compass move away from a point.
+     */
+    @FunctionalInterface
+    public interface NeighborVisitor {
+        /**
+         * @param direction index into {@link LngLatHandler#COMPASS_ANGLES}
+         * @param lng       longitude of the neighbouring position
+         * @param lat       latitude of the neighbouring position
+         */
+        void visit(int direction, double lng, double lat);
+    }
+
+    // Each thread reuses its own lattice search workspace between calls
+    private static final ThreadLocal<LatticeSearch> LATTICE_SEARCH = ThreadLocal.withInitial(LatticeSearch::new);
+    private static final ThreadLocal<BidirectionalSearch> BIDIRECTIONAL_SEARCH =
+            ThreadLocal.withInitial(BidirectionalSearch::new);
+    private static final ThreadLocal<JumpPointSearch> JUMP_POINT_SEARCH = ThreadLocal.withInitial(JumpPointSearch::new);
+    private static final StraightLineWalk STRAIGHT_LINE_WALK = new StraightLineWalk();
+
     private final LngLatHandler handler;
-    private final NamedRegion[] noFlyRegions;
-    private final NamedRegion centralArea;
+    private volatile RouteGeometry geometry;
+    private volatile SearchEngine searchEngine = SearchEngine.LATTICE;
+    private volatile SearchMode searchMode = SearchMode.A_STAR;
+    private volatile Path routeStoreDirectory;
+    private volatile boolean obstacleRasterEnabled = true;
+    private volatile boolean straightLineWalkEnabled = false;
+    private volatile boolean returnTreeEnabled = false;
+    private volatile boolean landmarksEnabled = false;
+    private volatile boolean incrementalReplanningEnabled = false;
+    private volatile double heuristicWeight = DEFAULT_HEURISTIC_WEIGHT;
+    private volatile long anytimeTimeLimitMillis = DEFAULT_ANYTIME_TIME_LIMIT_MILLIS;
+    private volatile int corridorMarginMoves = DEFAULT_CORRIDOR_MARGIN_MOVES;
+    private volatile int corridorWidenings = DEFAULT_CORRIDOR_WIDENINGS;
+    private volatile int moveBudget = DEFAULT_MOVE_BUDGET;
+    private volatile LatticeSearch.OpenListType openListType = LatticeSearch.OpenListType.BINARY_HEAP;
 
-    // Caches for outward vs. return paths
-    private static final Map<Pair<LngLat, LngLat>, List<LngLat>> OUTWARD_PATH_CACHE = new HashMap<>();
-    private static final Map<Pair<LngLat, LngLat>, List<LngLat>> RETURN_PATH_CACHE  = new HashMap<>();
+    /**
+     * System property naming a directory for the persistent route store; unset disables it
+     */
+    public static final String ROUTE_STORE_PROPERTY = "pizzadronz.routeStore";
 
-    // The 16 compass angles in increments of 22.5
-    private static final double[] COMPASS_ANGLES = {
-            0.0, 22.5, 45.0, 67.5,
-            90.0, 112.5, 135.0, 157.5,
-            180.0, 202.5, 225.0, 247.5,
-            270.0, 292.5, 315.0, 337.5
-    };
+    /**
+     * Default heuristic weight of {@link SearchMode#WEIGHTED_A_STAR}, and the first weight of {@link SearchMode#ANYTIME}
+     */
+    public static final double DEFAULT_HEURISTIC_WEIGHT = 2.0;
+    /**
+     * Default time an {@link SearchMode#ANYTIME} search may spend improving a path, in milliseconds
+     */
+    public static final long DEFAULT_ANYTIME_TIME_LIMIT_MILLIS = 100;
+    /**
+     * Default free space around the points and the zones of a lattice search corridor, in moves
+     */
+    public static final int DEFAULT_CORRIDOR_MARGIN_MOVES = 16;
+    /**
+     * Default number of times an exhausted corridor is widened before the search gives up
+     */
+    public static final int DEFAULT_CORRIDOR_WIDENINGS = 1;
+
+    /**
+     * Default most moves a path may have: as many as the drone can fly on one battery
+     */
+    public static final int DEFAULT_MOVE_BUDGET = SystemConstants.DRONE_MAX_MOVES;
+
+    // Each widening multiplies the corridor margin by this
+    private static final int CORRIDOR_WIDENING_FACTOR = 2;
+
+    // Default bounds of the shared path cache
+    public static final int DEFAULT_CACHE_ENTRIES    = 1024;
+    public static final long DEFAULT_CACHE_POSITIONS = 1_000_000L;
+    // Most routes whose search state is kept by incremental replanning
+    public static final int MAX_INCREMENTAL_ROUTES   = 256;
+
+    // Identifies a cached path; outward and return paths between the same points differ,
+    // paths are only reused over geometry with the same content hash, and each mode, move budget and set
+    // of search settings keeps its own. Return paths read off the return tree can be longer than searched
+    // ones, so they are kept apart too
+    private record PathKey(long geometryHash, LngLat start, LngLat end, boolean isReturnPath, boolean returnTree,
+                           SearchMode mode, int moveBudget, SearchSettings settings) { }
+
+    // The calculator settings besides the mode and the move budget that can change a path or a miss.
+    // Settings a mode does not use are left at a fixed value, so that its paths are shared regardless.
+    // The obstacle raster only answers moves the exact checks agree on, so it is not among them
+    private record SearchSettings(SearchEngine engine, boolean straightLineWalk, boolean landmarks,
+                                  boolean incrementalReplanning, double heuristicWeight, long anytimeTimeLimitMillis,
+                                  int corridorMarginMoves, int corridorWidenings,
+                                  LatticeSearch.OpenListType openListType) {
+        // The same in every process, unlike hashCode, so the route store can keep settings apart
+        long fingerprint() {
+            String text = engine.name() + ' ' + straightLineWalk + ' ' + landmarks + ' ' + incrementalReplanning
+                    + ' ' + Double.doubleToLongBits(heuristicWeight) + ' ' + anytimeTimeLimitMillis
+                    + ' ' + corridorMarginMoves + ' ' + corridorWidenings + ' ' + openListType.name();
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+                return ByteBuffer.wrap(digest).getLong();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    }
+
+    // Shared by every calculator in the process, whatever map it plans over
+    private static final PathCache<PathKey> PATH_CACHE =
+            new PathCache<>(DEFAULT_CACHE_ENTRIES, DEFAULT_CACHE_POSITIONS);
+    // Suboptimality bounds of the searched paths; dropped with their geometry's cached paths
+    private static final Map<PathKey, Double> PATH_BOUNDS = new ConcurrentHashMap<>();
+    // Why searched paths came back empty; dropped with their geometry's cached paths
+    private static final Map<PathKey, LatticeSearch.FailureReason> PATH_FAILURES = new ConcurrentHashMap<>();
+
+    // Identifies an incrementally replanned route; the same route is kept across maps
+    private record RouteKey(LngLat start, LngLat end, boolean isReturnPath) { }
+
+    // Search state of the routes planned with incremental replanning, see IncrementalRoute; the
+    // least recently used route is dropped past MAX_INCREMENTAL_ROUTES
+    private final Map<RouteKey, IncrementalRoute> incrementalRoutes = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<RouteKey, IncrementalRoute> eldest) {
+                    return size() > MAX_INCREMENTAL_ROUTES;
+                }
+            });
 
     /**
      * Constructs the route calculator with the given data sources.
      *
      * @param baseUrl Base URL for fetching no-fly zones and central area data.
+     * @throws IllegalStateException if the route store named by {@link #ROUTE_STORE_PROPERTY} cannot be used
      */
     public RouteCalculator(String baseUrl) {
         this.handler = new LngLatHandler();
 
         RestServiceClient client   = new RestServiceClient(baseUrl);
-        this.noFlyRegions          = client.getNoFlyZones();
+        NamedRegion[] noFlyRegions = client.getNoFlyZones();
 
         // In some course specs, 'centralArea' might already be a NamedRegion directly.
         NamedRegion tempCentral    = client.getCentralArea();
-        this.centralArea           = new NamedRegion("central", tempCentral.vertices());
+        NamedRegion centralArea    = new NamedRegion("central", tempCentral.vertices());
+        this.geometry              = new RouteGeometry(noFlyRegions, centralArea);
+        useConfiguredRouteStore();
     }
 
     /**
      * Constructs the route calculator directly with arrays of no-fly zones and a central area.
      * This is helpful in tests where you want to inject your own data.
+     *
+     * @throws IllegalStateException if the route store named by {@link #ROUTE_STORE_PROPERTY} cannot be used
      */
     public RouteCalculator(NamedRegion[] noFlyRegions, NamedRegion centralArea) {
-        this.handler      = new LngLatHandler();
-        this.noFlyRegions = noFlyRegions;
-        this.centralArea  = centralArea;
+        this.handler  = new LngLatHandler();
+        this.geometry = new RouteGeometry(noFlyRegions, centralArea);
+        useConfiguredRouteStore();
     }
 
     /**
@@ -61,41 +220,806 @@ public class RouteCalculator {
      * @param isReturnPath  If {@code true}, once the path has entered the central area,
      *                      it must not leave again.
      * @return The sequence of coordinates from start to end (including both),
-     *         or an empty list if no path is found.
+     *         or an empty list if no path is found. The list is unmodifiable.
      */
     public List<LngLat> findPath(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath) {
-        // Decide which cache we will use
-        Map<Pair<LngLat, LngLat>, List<LngLat>> pathCache =
-                isReturnPath ? RETURN_PATH_CACHE : OUTWARD_PATH_CACHE;
+        return findPath(startLngLat, endLngLat, isReturnPath, searchMode);
+    }
+
+    /**
+     * Finds a path as {@link #findPath(LngLat, LngLat, boolean)} does, using {@code mode} for this
+     * call instead of the calculator's search mode.
+     *
+     * @param startLngLat   The starting coordinate.
+     * @param endLngLat     The destination coordinate.
+     * @param isReturnPath  If {@code true}, once the path has entered the central area,
+     *                      it must not leave again.
+     * @param mode          The search strategy to use if the path is not cached yet.
+     * @return The sequence of coordinates from start to end (including both),
+     *         or an empty list if no path is found. The list is unmodifiable.
+     */
+    public List<LngLat> findPath(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath, SearchMode mode) {
+        return findPath(startLngLat, endLngLat, isReturnPath, Objects.requireNonNull(mode), moveBudget);
+    }
 
-        Pair<LngLat, LngLat> cacheKey = new Pair<>(startLngLat, endLngLat);
-        if (pathCache.containsKey(cacheKey)) {
-            // Return a copy of the cached path to avoid external modifications
-            return new ArrayList<>(pathCache.get(cacheKey));
+    /**
+     * Finds a path as {@link #findPath(LngLat, LngLat, boolean)} does, with at most {@code moveBudget}
+     * moves for this call instead of the calculator's move budget, e.g. the moves an order has left
+     * for its return flight.
+     *
+     * @param startLngLat   The starting coordinate.
+     * @param endLngLat     The destination coordinate.
+     * @param isReturnPath  If {@code true}, once the path has entered the central area,
+     *                      it must not leave again.
+     * @param moveBudget    The most moves the path may have.
+     * @return The sequence of coordinates from start to end (including both), or an empty list if
+     *         no path within the budget is found. The list is unmodifiable.
+     */
+    public List<LngLat> findPath(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath, int moveBudget) {
+        if (moveBudget < 0) {
+            throw new IllegalArgumentException("move budget must not be negative: " + moveBudget);
         }
+        return findPath(startLngLat, endLngLat, isReturnPath, searchMode, moveBudget);
+    }
 
-        // Compute a new path using A*
-        List<LngLat> path = calculatePath(startLngLat, endLngLat, isReturnPath);
+    private List<LngLat> findPath(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath, SearchMode mode,
+                                  int moveBudget) {
+        // Cached paths are unmodifiable, so they can be shared without copying
+        RouteGeometry current = geometry;
+        return PATH_CACHE.get(pathKey(current, startLngLat, endLngLat, isReturnPath, mode, moveBudget),
+                key -> loadPath(current, key, () -> calculatePath(current, key)));
+    }
 
-        // Store in cache
-        pathCache.put(cacheKey, new ArrayList<>(path));
-        return path;
+    // The key of a path under the calculator's current settings
+    private PathKey pathKey(RouteGeometry geometry, LngLat start, LngLat end, boolean isReturnPath, SearchMode mode,
+                            int moveBudget) {
+        boolean returnTree = searchEngine == SearchEngine.LATTICE && isReturnPath && returnTreeEnabled
+                && end.equals(LatticePoint.APPLETON_TOWER);
+        return new PathKey(geometry.hash(), start, end, isReturnPath, returnTree, mode, moveBudget, settings(mode));
+    }
+
+    // The current settings, as far as they matter to a path searched with the mode
+    private SearchSettings settings(SearchMode mode) {
+        boolean weighted = mode == SearchMode.WEIGHTED_A_STAR || mode == SearchMode.ANYTIME;
+        return new SearchSettings(searchEngine, straightLineWalkEnabled, landmarksEnabled,
+                mode == SearchMode.A_STAR && incrementalReplanningEnabled,
+                weighted ? heuristicWeight : 1.0,
+                mode == SearchMode.ANYTIME ? anytimeTimeLimitMillis : 0,
+                corridorMarginMoves, corridorWidenings, openListType);
+    }
+
+    /**
+     * Finds a path as {@link #findPath(LngLat, LngLat, boolean)} does and reports how far from
+     * shortest it may be, e.g. for {@link SearchMode#WEIGHTED_A_STAR} and {@link SearchMode#ANYTIME}.
+     *
+     * @param startLngLat   The starting coordinate.
+     * @param endLngLat     The destination coordinate.
+     * @param isReturnPath  If {@code true}, once the path has entered the central area,
+     *                      it must not leave again.
+     * @return The path and its suboptimality bound.
+     */
+    public BoundedPath findBoundedPath(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath) {
+        SearchMode mode = searchMode;
+        List<LngLat> path = findPath(startLngLat, endLngLat, isReturnPath, mode);
+        Double bound = PATH_BOUNDS.get(pathKey(geometry, startLngLat, endLngLat, isReturnPath, mode, moveBudget));
+        return new BoundedPath(path, bound == null ? Double.NaN : bound);
+    }
+
+    /**
+     * Tells why {@link #findPath(LngLat, LngLat, boolean)} returned no path between the points with
+     * the current search mode, e.g. to tell a target no route reaches from one the search corridor
+     * was too small for, or from one only routes longer than the move budget reach.
+     *
+     * @param startLngLat   The starting coordinate.
+     * @param endLngLat     The destination coordinate.
+     * @param isReturnPath  Whether the path was a return path.
+     * @return The reason the lattice search gave up, {@link LatticeSearch.FailureReason#OUT_OF_MOVE_BUDGET}
+     *         if a path was found but has more moves than the budget, or {@code null} if the path was
+     *         found, has not been searched, or was searched by a strategy that does not report reasons.
+     */
+    public LatticeSearch.FailureReason getFailureReason(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath) {
+        return getFailureReason(startLngLat, endLngLat, isReturnPath, moveBudget);
+    }
+
+    /**
+     * Tells why {@link #findPath(LngLat, LngLat, boolean, int)} returned no path between the points
+     * with the given move budget, as {@link #getFailureReason(LngLat, LngLat, boolean)} does.
+     *
+     * @param startLngLat   The starting coordinate.
+     * @param endLngLat     The destination coordinate.
+     * @param isReturnPath  Whether the path was a return path.
+     * @param moveBudget    The move budget the path was searched with.
+     * @return The reason no path was returned, or {@code null}.
+     */
+    public LatticeSearch.FailureReason getFailureReason(LngLat startLngLat, LngLat endLngLat, boolean isReturnPath,
+                                                        int moveBudget) {
+        return PATH_FAILURES.get(pathKey(geometry, startLngLat, endLngLat, isReturnPath, searchMode, moveBudget));
+    }
+
+    /**
+     * Finds the outward path from {@code start} to every restaurant, as
+     * {@link #findPath(LngLat, LngLat, boolean)} does with {@code isReturnPath = false}, but with a
+     * single multi-target search for all paths that are not cached yet (see
+     * {@link LatticeSearch#findPaths}), bounded by one search corridor around the start and all
+     * restaurants. Restaurants that search does not reach are searched one by one, as
+     * {@link #findPath(LngLat, LngLat, boolean)} would. The paths are cached, so later lookups of the
+     * same routes are hits; this makes the method suitable for warming the cache before orders are processed.
+     *
+     * @param start       The starting coordinate, usually Appleton Tower.
+     * @param restaurants The restaurants, e.g. from {@link RestServiceClient#getRestaurants()}.
+     * @return The route table: for each restaurant, in the given order, the unmodifiable path from
+     *         start to it, or an empty list if it cannot be reached.
+     */
+    public Map<Restaurant, List<LngLat>> findOutwardPaths(LngLat start, Restaurant[] restaurants) {
+        RouteGeometry current = geometry;
+        SearchMode mode = searchMode;
+        int budget = moveBudget;
+        Set<LngLat> missing = new LinkedHashSet<>();
+        for (Restaurant restaurant : restaurants) {
+            if (PATH_CACHE.getIfPresent(pathKey(current, start, restaurant.location(), false, mode, budget)) == null) {
+                missing.add(restaurant.location());
+            }
+        }
+        Map<LngLat, List<LngLat>> searched = searchOutward(current, start, missing.toArray(new LngLat[0]), mode, budget);
+
+        Map<Restaurant, List<LngLat>> table = new LinkedHashMap<>();
+        for (Restaurant restaurant : restaurants) {
+            LngLat end = restaurant.location();
+            List<LngLat> found = searched.get(end);
+            PathKey key = pathKey(current, start, end, false, mode, budget);
+            Supplier<List<LngLat>> calculator = found != null ? () -> found : () -> calculatePath(current, key);
+            table.put(restaurant, PATH_CACHE.get(key, k -> loadPath(current, k, calculator)));
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    // One lattice search towards all targets, in one corridor around all of them; targets it does not
+    // reach are left out of the result, to be searched one by one with widening corridors
+    private Map<LngLat, List<LngLat>> searchOutward(RouteGeometry geometry, LngLat start, LngLat[] targets,
+                                                 SearchMode mode, int moveBudget) {
+        Map<LngLat, List<LngLat>> paths = new HashMap<>();
+        if (searchEngine != SearchEngine.LATTICE || targets.length == 0) {
+            return paths;
+        }
+        LatticeSearch search = LATTICE_SEARCH.get();
+        search.setOpenList(openListType);
+        search.setLandmarks(landmarksOf(geometry));
+        search.setHeuristicWeight(mode == SearchMode.WEIGHTED_A_STAR ? heuristicWeight : 1.0);
+        search.setMoveBudget(moveBudget);
+        int margin = corridorMarginMoves;
+        if (margin > 0) {
+            SearchCorridor corridor = SearchCorridor.around(start, targets, geometry.noFlyZones(),
+                    margin * SystemConstants.DRONE_MOVE_DISTANCE);
+            search.setSearchCorridor(corridor);
+            search.setExpansionLimit(corridor.expansionBudget());
+        }
+        List<List<LngLat>> found;
+        try {
+            found = search.findPaths(start, targets, false, new GeometryMoveRules(geometry));
+        } finally {
+            search.setSearchCorridor(null);
+            search.setExpansionLimit(Integer.MAX_VALUE);
+            search.setMoveBudget(Integer.MAX_VALUE);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (!found.get(i).isEmpty()) {
+                PATH_BOUNDS.put(pathKey(geometry, start, targets[i], false, mode, moveBudget),
+                        search.getSuboptimalityBound());
+                paths.put(targets[i], found.get(i));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Keeps computed routes in a persistent store under {@code directory}, one file per geometry,
+     * so that later runs over the same map reuse them instead of searching again. A search that
+     * found no route is kept with the move budget it ran under, and only reused for budgets no
+     * larger than that one.
+     *
+     * @param directory the store directory, or {@code null} to stop using a store
+     */
+    public void useRouteStore(Path directory) {
+        this.routeStoreDirectory = directory;
+        if (directory != null) {
+            // Map the existing file now; its records are indexed on first lookup
+            RouteStore.open(directory, geometry);
+        }
+    }
+
+    private void useConfiguredRouteStore() {
+        String directory = System.getProperty(ROUTE_STORE_PROPERTY);
+        if (directory != null && !directory.isBlank()) {
+            try {
+                useRouteStore(Path.of(directory));
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Cannot use the route store set by " + ROUTE_STORE_PROPERTY
+                        + ": " + directory, e);
+            }
+        }
+    }
+
+    private List<LngLat> loadPath(RouteGeometry geometry, PathKey key, Supplier<List<LngLat>> calculator) {
+        Path directory = routeStoreDirectory;
+        // The store does not tell tree routes from searched ones, and the tree serves its routes without a search
+        RouteStore store = directory == null || key.returnTree() ? null : RouteStore.open(directory, geometry);
+        long settings = key.settings().fingerprint();
+        if (store != null) {
+            BoundedPath stored = store.find(key.start(), key.end(), key.isReturnPath(), key.mode(), settings,
+                    key.moveBudget());
+            // Only a shortest route proves that none fits a smaller budget; a longer one leaves it to the search
+            if (stored != null && (stored.path().size() - 1 <= key.moveBudget() || stored.suboptimalityBound() == 1.0)) {
+                if (!Double.isNaN(stored.suboptimalityBound())) {
+                    PATH_BOUNDS.put(key, stored.suboptimalityBound());
+                }
+                if (stored.path().isEmpty()) {
+                    PATH_FAILURES.put(key, key.moveBudget() == Integer.MAX_VALUE
+                            ? LatticeSearch.FailureReason.UNREACHABLE : LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET);
+                }
+                return withinMoveBudget(key, PackedPath.of(stored.path()));
+            }
+        }
+        // Packed once here, so the cache and every caller share one compact, immutable path
+        List<LngLat> path = PackedPath.of(calculator.get());
+        if (store != null) {
+            // A route holds for other budgets, corridors and runs; a miss only for the budget it was proven under
+            LatticeSearch.FailureReason failure = PATH_FAILURES.get(key);
+            if (!path.isEmpty()) {
+                store.save(key.start(), key.end(), key.isReturnPath(), key.mode(), settings, key.moveBudget(), path,
+                        PATH_BOUNDS.getOrDefault(key, Double.NaN));
+            } else if (failure == LatticeSearch.FailureReason.UNREACHABLE
+                    || failure == LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET) {
+                store.save(key.start(), key.end(), key.isReturnPath(), key.mode(), settings,
+                        failure == LatticeSearch.FailureReason.UNREACHABLE ? Integer.MAX_VALUE : key.moveBudget(),
+                        path, Double.NaN);
+            }
+        }
+        return withinMoveBudget(key, path);
+    }
+
+    // The path, or an empty one recorded as out of the move budget if it has more moves than the key allows
+    private static List<LngLat> withinMoveBudget(PathKey key, List<LngLat> path) {
+        if (path.size() - 1 <= key.moveBudget()) {
+            return path;
+        }
+        PATH_FAILURES.put(key, LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET);
+        return PackedPath.EMPTY;
+    }
+
+    /**
+     * @return the map this calculator currently plans over
+     */
+    public RouteGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @param mode the search mode
+     * @return the fingerprint of the current settings that paths searched with {@code mode} depend
+     *         on, under which the {@link RouteStore} keeps them
+     */
+    public long getSettingsFingerprint(SearchMode mode) {
+        return settings(mode).fingerprint();
+    }
+
+    /**
+     * Replaces the no-fly zones and central area used for new searches. Cached paths of the
+     * previous geometry are dropped; paths cached for any other geometry are kept. Routes kept for
+     * incremental replanning are repaired for the new geometry when they are next asked for.
+     *
+     * @param noFlyRegions the new no-fly zones
+     * @param centralArea  the new central area
+     */
+    public void updateGeometry(NamedRegion[] noFlyRegions, NamedRegion centralArea) {
+        RouteGeometry updated  = new RouteGeometry(noFlyRegions, centralArea);
+        RouteGeometry previous = geometry;
+        if (previous.hash() == updated.hash()) {
+            // Same map (e.g. for another date): keep the structures already built for it
+            return;
+        }
+        geometry = updated;
+        invalidateGeneration(previous.hash());
+    }
+
+    /**
+     * Turns the precomputed {@link ObstacleRaster} on or off. When on, the raster is built in
+     * parallel on the first search over a map and answers most move checks with one array lookup;
+     * only moves near a boundary use the exact polygon tests. Paths are the same either way.
+     *
+     * @param enabled whether searches may use the raster, {@code true} by default
+     */
+    public void setObstacleRasterEnabled(boolean enabled) {
+        this.obstacleRasterEnabled = enabled;
+    }
+
+    public boolean isObstacleRasterEnabled() {
+        return obstacleRasterEnabled;
+    }
+
+    /**
+     * Turns the {@link StraightLineWalk} on or off. When on, the lattice engine first walks straight
+     * towards the target and only searches if a move on the way is invalid; on open ground this
+     * answers in microseconds, with routes at most a move or two longer than searched ones. Paths
+     * are then no longer guaranteed to be shortest, even in {@link SearchMode#A_STAR}: a walked
+     * route reports its own suboptimality bound, and is cached and stored apart from searched ones.
+     *
+     * @param enabled whether paths may be walked without a search, {@code false} by default
+     */
+    public void setStraightLineWalkEnabled(boolean enabled) {
+        this.straightLineWalkEnabled = enabled;
+    }
+
+    public boolean isStraightLineWalkEnabled() {
+        return straightLineWalkEnabled;
+    }
+
+    /**
+     * Turns the {@link ReturnTree} on or off. When on, return paths to Appleton Tower are read off a
+     * backward search tree that is grown in parallel once per map and reused for every date over the
+     * same map; positions the tree cannot serve are searched as usual. Tree routes are not shortest:
+     * they are typically two or three moves longer than searched ones, and
+     * {@link #findBoundedPath} reports no suboptimality bound for them (see {@link ReturnTree}).
+     * They are cached apart from searched routes and are not kept in the route store.
+     *
+     * @param enabled whether return paths may use the tree, {@code false} by default
+     */
+    public void setReturnTreeEnabled(boolean enabled) {
+        this.returnTreeEnabled = enabled;
+    }
+
+    public boolean isReturnTreeEnabled() {
+        return returnTreeEnabled;
+    }
+
+    /**
+     * Turns the {@link LandmarkTable} heuristic of lattice A* on or off. The table is built in
+     * parallel once per map; with a route store in use it is also kept next to the stored routes,
+     * so later runs over the same map read it instead of building it again. Landmark bounds are not
+     * guaranteed to be exact, so paths searched with them carry a {@link Double#NaN} suboptimality bound.
+     * <p>
+     * The table pays off where a long no-fly zone stands across the straight line to the target and
+     * the straight-line heuristic leads A* into the pocket behind it: around a wall 27 moves long, a
+     * 27-move route that plain A* finds after about 2 million expansions (some 20 s) takes about
+     * 53 thousand with landmarks (0.6 s), plus about a second to build the table. Where the zones
+     * rarely block the straight line, as on the usual Edinburgh map, plain A* already expands few
+     * nodes; landmark lookups then make each expansion dearer and the build is not repaid, so the
+     * searches get slower. Turn it on only for maps of the first kind.
+     *
+     * @param enabled whether lattice searches may use landmark bounds, {@code false} by default
+     */
+    public void setLandmarksEnabled(boolean enabled) {
+        this.landmarksEnabled = enabled;
+    }
+
+    public boolean isLandmarksEnabled() {
+        return landmarksEnabled;
     }
 
     /**
-     * Clears the cached paths for both outward and return paths.
-     * Useful if underlying geometry changes or for certain test setups.
+     * Turns incremental replanning of {@link SearchMode#A_STAR} paths on or off. When on, the
+     * calculator keeps the search state of every route it plans (see {@link IncrementalRoute}); after
+     * {@link #updateGeometry} changes the no-fly zones, a route asked for again is repaired around the
+     * added or removed zones instead of being searched from scratch. The state is held for at most
+     * {@value #MAX_INCREMENTAL_ROUTES} routes, the least recently used one being dropped, and until
+     * {@link #resetState()} or until replanning is turned off. A route may keep no more nodes than
+     * the lattice search could expand for it, under the widest corridor and the move budget; one
+     * that needs more is dropped and searched like any other.
+     *
+     * @param enabled whether A* paths are planned incrementally, {@code false} by default
+     */
+    public void setIncrementalReplanningEnabled(boolean enabled) {
+        this.incrementalReplanningEnabled = enabled;
+        if (!enabled) {
+            incrementalRoutes.clear();
+        }
+    }
+
+    public boolean isIncrementalReplanningEnabled() {
+        return incrementalReplanningEnabled;
+    }
+
+    private LandmarkTable landmarksOf(RouteGeometry geometry) {
+        return landmarksEnabled ? geometry.landmarkTable(new GeometryMoveRules(geometry), routeStoreDirectory) : null;
+    }
+
+    /**
+     * Selects the A* implementation used for paths that are not cached yet.
+     *
+     * @param searchEngine the engine to use, {@link SearchEngine#LATTICE} by default
+     */
+    public void setSearchEngine(SearchEngine searchEngine) {
+        this.searchEngine = Objects.requireNonNull(searchEngine);
+    }
+
+    public SearchEngine getSearchEngine() {
+        return searchEngine;
+    }
+
+    /**
+     * Selects the search strategy used by {@link #findPath(LngLat, LngLat, boolean)}.
+     *
+     * @param searchMode the strategy, {@link SearchMode#A_STAR} by default
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = Objects.requireNonNull(searchMode);
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Sets the heuristic weight of {@link SearchMode#WEIGHTED_A_STAR}, which is also the first weight
+     * of {@link SearchMode#ANYTIME}. Higher weights search faster and allow longer paths. Paths
+     * already cached for a mode are not searched again.
+     *
+     * @param weight the weight, at least 1, {@link #DEFAULT_HEURISTIC_WEIGHT} by default
+     */
+    public void setHeuristicWeight(double weight) {
+        if (!(weight >= 1.0)) {
+            throw new IllegalArgumentException("heuristic weight must be at least 1: " + weight);
+        }
+        this.heuristicWeight = weight;
+    }
+
+    public double getHeuristicWeight() {
+        return heuristicWeight;
+    }
+
+    /**
+     * Sets how long an {@link SearchMode#ANYTIME} search may keep improving a path. The first path is
+     * always completed, even if that takes longer.
+     *
+     * @param millis the time limit per path in milliseconds, {@link #DEFAULT_ANYTIME_TIME_LIMIT_MILLIS} by default
+     */
+    public void setAnytimeTimeLimit(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("time limit must not be negative: " + millis);
+        }
+        this.anytimeTimeLimitMillis = millis;
+    }
+
+    public long getAnytimeTimeLimit() {
+        return anytimeTimeLimitMillis;
+    }
+
+    /**
+     * Bounds lattice A* searches, including the one towards all restaurants in
+     * {@link #findOutwardPaths}, to a {@link SearchCorridor} around the start, the target and the
+     * no-fly zones in between, with an expansion budget in proportion to its area. A search that
+     * exhausts its corridor is retried in one with twice the margin, up to {@code widenings} times;
+     * after that the path is given up as empty, with
+     * {@link LatticeSearch.FailureReason#SEARCH_BOUND_EXHAUSTED} as its failure reason, instead of
+     * flooding the map in search of a target no route reaches.
+     * <p>
+     * The other planners are held to the corridor too, and a route they miss is left to the A*
+     * search. Jump point and bidirectional searches run in the first corridor with its expansion
+     * budget, and the node graph engine in the widest one. Incremental replanning keeps no more nodes
+     * than the widest corridor's expansion budget. The hierarchical and visibility graph planners
+     * search a graph of clusters or zone corners rather than the lattice, so their work does not grow
+     * with the corridor; a route of theirs that leaves the widest corridor is discarded. Every search
+     * is also held to the expansions the move budget can reach (see {@link #setMoveBudget}), so
+     * turning the corridor off does not leave it unbounded.
+     *
+     * @param marginMoves the first margin in moves, {@link #DEFAULT_CORRIDOR_MARGIN_MOVES} by default,
+     *                    or 0 to search without bounds
+     * @param widenings   how often the corridor may be widened, {@link #DEFAULT_CORRIDOR_WIDENINGS} by default
+     */
+    public void setSearchCorridor(int marginMoves, int widenings) {
+        if (marginMoves < 0 || widenings < 0) {
+            throw new IllegalArgumentException("corridor margin and widenings must not be negative");
+        }
+        this.corridorMarginMoves = marginMoves;
+        this.corridorWidenings = widenings;
+    }
+
+    public int getCorridorMargin() {
+        return corridorMarginMoves;
+    }
+
+    public int getCorridorWidenings() {
+        return corridorWidenings;
+    }
+
+    /**
+     * Bounds the moves of the paths this calculator returns. The searches prune every node that
+     * cannot reach the target within the budget; paths of the other strategies are checked once
+     * found. A path over the budget is returned as empty, with
+     * {@link LatticeSearch.FailureReason#OUT_OF_MOVE_BUDGET} as its failure reason, so that targets
+     * out of the drone's range are told apart from targets no route reaches. The budget limits the
+     * length of a route, not the work of finding one: the lattice within reach of even a short
+     * budget is vast, so each search is also held to the expansion budget of the box the move budget
+     * reaches (see {@link SearchCorridor#withinMoves}).
+     *
+     * @param moves the most moves a path may have, {@link #DEFAULT_MOVE_BUDGET} by default
+     */
+    public void setMoveBudget(int moves) {
+        if (moves < 0) {
+            throw new IllegalArgumentException("move budget must not be negative: " + moves);
+        }
+        this.moveBudget = moves;
+    }
+
+    public int getMoveBudget() {
+        return moveBudget;
+    }
+
+    /**
+     * Selects the open list of the {@link SearchEngine#LATTICE} engine. The bucket queue queues and
+     * polls in constant time instead of comparing keys, which pays off on long searches; it may
+     * break near-ties between equally short paths differently from the heap.
+     *
+     * @param openListType the open list to use, {@link LatticeSearch.OpenListType#BINARY_HEAP} by default
+     */
+    public void setOpenListType(LatticeSearch.OpenListType openListType) {
+        this.openListType = Objects.requireNonNull(openListType);
+    }
+
+    public LatticeSearch.OpenListType getOpenListType() {
+        return openListType;
+    }
+
+    /**
+     * Clears the cached outward and return paths of this calculator's geometry.
+     * Paths cached by calculators over other maps are unaffected.
      */
     public void resetState() {
-        OUTWARD_PATH_CACHE.clear();
-        RETURN_PATH_CACHE.clear();
+        invalidateGeneration(geometry.hash());
+        incrementalRoutes.clear();
+    }
+
+    private static void invalidateGeneration(long geometryHash) {
+        PATH_CACHE.invalidateIf(key -> key.geometryHash() == geometryHash);
+        PATH_BOUNDS.keySet().removeIf(key -> key.geometryHash() == geometryHash);
+        PATH_FAILURES.keySet().removeIf(key -> key.geometryHash() == geometryHash);
+    }
+
+    /**
+     * Changes the bounds of the process-wide path cache. Least recently used paths are
+     * evicted once either bound is exceeded.
+     *
+     * @param maxEntries   maximum number of cached paths
+     * @param maxPositions maximum number of positions held across all cached paths
+     */
+    public static void setPathCacheLimits(int maxEntries, long maxPositions) {
+        PATH_CACHE.setLimits(maxEntries, maxPositions);
+    }
+
+    /**
+     * @return hit, miss, eviction and load-time counters of the process-wide path cache
+     */
+    public static PathCache.Stats getPathCacheStats() {
+        return PATH_CACHE.stats();
     }
 
     // ------------------------------------------------------------------
     // Internal A* Implementation
     // ------------------------------------------------------------------
 
-    private List<LngLat> calculatePath(LngLat start, LngLat end, boolean isReturnPath) {
+    // Paths of strategies other than the lattice search may exceed the move budget; loadPath empties those
+    private List<LngLat> calculatePath(RouteGeometry geometry, PathKey key) {
+        LngLat start = key.start();
+        LngLat end = key.end();
+        boolean isReturnPath = key.isReturnPath();
+        SearchMode mode = key.mode();
+        int moveBudget = key.moveBudget();
+        if (searchEngine == SearchEngine.LATTICE && straightLineWalkEnabled) {
+            boolean hasEnteredCentralArea = isReturnPath && isInCentralArea(geometry, start);
+            List<LngLat> path = STRAIGHT_LINE_WALK.findPath(start, end, hasEnteredCentralArea, isReturnPath,
+                    new GeometryMoveRules(geometry));
+            // A walk is not always shortest, so one over the budget leaves it to the search
+            if (!path.isEmpty() && path.size() - 1 <= moveBudget) {
+                PATH_BOUNDS.put(key, STRAIGHT_LINE_WALK.suboptimalityBound(path, end));
+                return path;
+            }
+        }
+        if (key.returnTree()) {
+            GeometryMoveRules rules = new GeometryMoveRules(geometry);
+            List<LngLat> path = geometry.returnTree(rules).findPath(start, rules);
+            if (path != null) {
+                return path;
+            }
+        }
+        if (searchEngine == SearchEngine.LATTICE && mode == SearchMode.A_STAR && incrementalReplanningEnabled) {
+            List<LngLat> path = incrementalPath(geometry, key);
+            if (path != null && path.size() - 1 <= moveBudget && keepsCentralLock(geometry, isReturnPath, path)) {
+                return path;
+            }
+        }
+        boolean latticeRangeExceeded = false;
+        if (searchEngine == SearchEngine.LATTICE && mode == SearchMode.BIDIRECTIONAL) {
+            boolean hasEnteredCentralArea = isReturnPath && isInCentralArea(geometry, start);
+            BidirectionalSearch search = BIDIRECTIONAL_SEARCH.get();
+            List<LngLat> path = bidirectionalPath(search, geometry, start, end, hasEnteredCentralArea, moveBudget);
+            LatticeSearch.FailureReason failure = search.getFailureReason();
+            latticeRangeExceeded = failure == LatticeSearch.FailureReason.LATTICE_RANGE_EXCEEDED;
+            if (failure == LatticeSearch.FailureReason.UNREACHABLE) {
+                PATH_FAILURES.put(key, failure);
+                return path;
+            }
+            // A bound the search ran into leaves the path to the lattice search, which can widen the corridor
+            if (!path.isEmpty() && keepsCentralLock(geometry, isReturnPath, path)) {
+                return path;
+            }
+        }
+        if (searchEngine == SearchEngine.LATTICE && !latticeRangeExceeded) {
+            boolean hasEnteredCentralArea = isReturnPath && isInCentralArea(geometry, start);
+            List<LngLat> planned = plannedPath(geometry, start, end, hasEnteredCentralArea, mode, moveBudget);
+            // Jumps can skip past a turn into a narrow gap, and a polyline can come too close to a zone
+            // to be flown, so a miss is retried with plain A*, as is a return path that leaves the
+            // central area again after entering it
+            if (!planned.isEmpty() && planned.size() - 1 <= moveBudget && keepsCentralLock(geometry, isReturnPath, planned)) {
+                return planned;
+            }
+            LatticeSearch search = LATTICE_SEARCH.get();
+            search.setOpenList(openListType);
+            search.setLandmarks(landmarksOf(geometry));
+            List<LngLat> path = searchInCorridor(search, geometry, start, end, hasEnteredCentralArea, isReturnPath,
+                    mode, moveBudget);
+            if (!path.isEmpty()) {
+                PATH_BOUNDS.put(key, search.getSuboptimalityBound());
+                return path;
+            }
+            PATH_FAILURES.put(key, search.getFailureReason());
+            // Only routes longer than the lattice coefficient range can need the unbounded engine
+            if (search.getFailureReason() != LatticeSearch.FailureReason.LATTICE_RANGE_EXCEEDED) {
+                return path;
+            }
+        }
+        return calculateNodeGraphPath(geometry, key);
+    }
+
+    // The route kept for these points, repaired for the current map, or null if it ran into a bound
+    // and is left to the bounded searches
+    private List<LngLat> incrementalPath(RouteGeometry geometry, PathKey pathKey) {
+        RouteKey key = new RouteKey(pathKey.start(), pathKey.end(), pathKey.isReturnPath());
+        IncrementalRoute route = incrementalRoutes.computeIfAbsent(key,
+                k -> new IncrementalRoute(k.start(), k.end(), k.isReturnPath()));
+        synchronized (route) {
+            route.setNodeLimit(expansionLimit(widestCorridor(geometry, key.start(), key.end()), key.start(), key.end(),
+                    pathKey.moveBudget()));
+            List<LngLat> path = route.findPath(geometry, new GeometryMoveRules(geometry));
+            if (route.isNodeLimitReached()) {
+                incrementalRoutes.remove(key, route);
+                return null;
+            }
+            if (!path.isEmpty()) {
+                PATH_BOUNDS.put(pathKey, 1.0);
+            }
+            return !path.isEmpty() || !route.isLatticeBoundReached() ? path : null;
+        }
+    }
+
+    // Lattice search of the mode, in corridors of growing margins until one holds a path or no
+    // wider one is allowed
+    private List<LngLat> searchInCorridor(LatticeSearch search, RouteGeometry geometry, LngLat start, LngLat end,
+                                          boolean hasEnteredCentralArea, boolean lockOnEntry, SearchMode mode,
+                                          int moveBudget) {
+        GeometryMoveRules rules = new GeometryMoveRules(geometry);
+        int margin = corridorMarginMoves;
+        int widenings = corridorWidenings;
+        search.setMoveBudget(moveBudget);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                if (margin > 0) {
+                    SearchCorridor corridor = SearchCorridor.around(start, end, geometry.noFlyZones(),
+                            margin * SystemConstants.DRONE_MOVE_DISTANCE);
+                    search.setSearchCorridor(corridor);
+                    search.setExpansionLimit(corridor.expansionBudget());
+                }
+                List<LngLat> path;
+                if (mode == SearchMode.ANYTIME) {
+                    long deadline = System.nanoTime() + anytimeTimeLimitMillis * 1_000_000L;
+                    path = search.findPathAnytime(start, end, hasEnteredCentralArea, lockOnEntry, rules,
+                            heuristicWeight, deadline);
+                } else {
+                    search.setHeuristicWeight(mode == SearchMode.WEIGHTED_A_STAR ? heuristicWeight : 1.0);
+                    path = search.findPath(start, end, hasEnteredCentralArea, lockOnEntry, rules);
+                }
+                if (!path.isEmpty() || margin == 0 || attempt == widenings
+                        || search.getFailureReason() != LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED) {
+                    return path;
+                }
+                margin *= CORRIDOR_WIDENING_FACTOR;
+            }
+        } finally {
+            search.setSearchCorridor(null);
+            search.setExpansionLimit(Integer.MAX_VALUE);
+            search.setMoveBudget(Integer.MAX_VALUE);
+        }
+    }
+
+    // The route of a mode that plans without plain A*, or an empty list if it found none
+    private List<LngLat> plannedPath(RouteGeometry geometry, LngLat start, LngLat end, boolean hasEnteredCentralArea,
+                                     SearchMode mode, int moveBudget) {
+        return switch (mode) {
+            case JUMP_POINT -> jumpPointPath(geometry, start, end, hasEnteredCentralArea, moveBudget);
+            case VISIBILITY_GRAPH -> inCorridor(widestCorridor(geometry, start, end), geometry.visibilityGraph()
+                    .findPath(start, end, hasEnteredCentralArea, new GeometryMoveRules(geometry)));
+            case HIERARCHICAL -> inCorridor(widestCorridor(geometry, start, end), geometry.hierarchicalPlanner()
+                    .findPath(start, end, hasEnteredCentralArea, new GeometryMoveRules(geometry)));
+            default -> Collections.emptyList();
+        };
+    }
+
+    // The path if it stays in the corridor (or there is none), otherwise an empty list, leaving the
+    // route to the lattice search
+    private static List<LngLat> inCorridor(SearchCorridor corridor, List<LngLat> path) {
+        if (corridor != null) {
+            for (LngLat position : path) {
+                if (!corridor.contains(position.lng(), position.lat())) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+        return path;
+    }
+
+    // The expansions a search between the points may spend: no more than the box the move budget
+    // reaches allows, nor the corridor if there is one
+    private static int expansionLimit(SearchCorridor corridor, LngLat start, LngLat end, int moveBudget) {
+        int limit = SearchCorridor.withinMoves(start, new LngLat[]{end}, moveBudget).expansionBudget();
+        return corridor == null ? limit : Math.min(limit, corridor.expansionBudget());
+    }
+
+    // The corridor of the last widening of the lattice search, or null if it searches without one
+    private SearchCorridor widestCorridor(RouteGeometry geometry, LngLat start, LngLat end) {
+        if (corridorMarginMoves == 0) {
+            return null;
+        }
+        double widestMargin = corridorMarginMoves * Math.pow(CORRIDOR_WIDENING_FACTOR, corridorWidenings);
+        return SearchCorridor.around(start, end, geometry.noFlyZones(), widestMargin * SystemConstants.DRONE_MOVE_DISTANCE);
+    }
+
+    // Bidirectional search in the first corridor of the lattice search and within the move budget
+    private List<LngLat> bidirectionalPath(BidirectionalSearch search, RouteGeometry geometry, LngLat start, LngLat end,
+                                           boolean hasEnteredCentralArea, int moveBudget) {
+        search.setMoveBudget(moveBudget);
+        SearchCorridor corridor = corridorMarginMoves == 0 ? null : SearchCorridor.around(start, end,
+                geometry.noFlyZones(), corridorMarginMoves * SystemConstants.DRONE_MOVE_DISTANCE);
+        search.setSearchCorridor(corridor);
+        search.setExpansionLimit(expansionLimit(corridor, start, end, moveBudget));
+        try {
+            return search.findPath(start, end, hasEnteredCentralArea, new GeometryMoveRules(geometry));
+        } finally {
+            search.setSearchCorridor(null);
+            search.setExpansionLimit(Integer.MAX_VALUE);
+            search.setMoveBudget(Integer.MAX_VALUE);
+        }
+    }
+
+    // Jump point search in the first corridor of the lattice search and within the move budget; a
+    // bound it runs into leaves the path to the lattice search, which can widen the corridor
+    private List<LngLat> jumpPointPath(RouteGeometry geometry, LngLat start, LngLat end, boolean hasEnteredCentralArea,
+                                       int moveBudget) {
+        JumpPointSearch search = JUMP_POINT_SEARCH.get();
+        search.setMoveBudget(moveBudget);
+        SearchCorridor corridor = corridorMarginMoves == 0 ? null : SearchCorridor.around(start, end,
+                geometry.noFlyZones(), corridorMarginMoves * SystemConstants.DRONE_MOVE_DISTANCE);
+        search.setSearchCorridor(corridor);
+        search.setExpansionLimit(expansionLimit(corridor, start, end, moveBudget));
+        try {
+            return search.findPath(start, end, hasEnteredCentralArea, new GeometryMoveRules(geometry));
+        } finally {
+            search.setSearchCorridor(null);
+            search.setExpansionLimit(Integer.MAX_VALUE);
+            search.setMoveBudget(Integer.MAX_VALUE);
+        }
+    }
+
+    // Bounded like the lattice search: by the widest corridor it may search, by the move budget and
+    // by the expansion budget of both, recording why no path was found
+    private List<LngLat> calculateNodeGraphPath(RouteGeometry geometry, PathKey key) {
+        LngLat start = key.start();
+        LngLat end = key.end();
+        boolean isReturnPath = key.isReturnPath();
+        int moveBudget = key.moveBudget();
+        SearchCorridor corridor = widestCorridor(geometry, start, end);
+        int expansionLimit = expansionLimit(corridor, start, end, moveBudget);
+        // The bounds the search ran into, as the reasons they give for a miss
+        EnumSet<LatticeSearch.FailureReason> boundsReached = EnumSet.noneOf(LatticeSearch.FailureReason.class);
+        int expansions = 0;
+
         // Priority Queue for A*, sorting by f(n) = g(n) + h(n)
         PriorityQueue<Node> openSet = new PriorityQueue<>(Comparator.comparingDouble(n -> n.gScore + n.hScore));
 
@@ -104,17 +1028,17 @@ public class RouteCalculator {
         Set<Node> visited           = new HashSet<>();
         Map<LngLat, Double> gScores = new HashMap<>();
 
-        // Create start node
+        // Create start node; if isReturnPath == true, a path only becomes "locked" once it physically
+        // enters the central area, so each node tracks whether its own path has
         Node startNode     = new Node(start);
         startNode.gScore   = 0.0;
         startNode.hScore   = handler.distanceTo(start, end);
+        startNode.hasEnteredCentral = isReturnPath && isInCentralArea(geometry, start);
 
         openSet.add(startNode);
         allNodes.put(start, startNode);
         gScores.put(start, 0.0);
-
-        // If isReturnPath == true, we only become "locked" once we physically enter the central area
-        boolean hasEnteredCentralArea = isReturnPath && handler.isInCentralArea(start, centralArea);
+        ObstacleRaster raster = rasterOf(geometry);
 
         while (!openSet.isEmpty()) {
             Node current = openSet.poll();
@@ -125,48 +1049,81 @@ public class RouteCalculator {
 
             // If we are "close enough" to the target:
             if (handler.isCloseTo(current.coordinate, end)) {
+                PATH_FAILURES.remove(key);
                 return reconstructPath(current);
             }
+            if (++expansions > expansionLimit) {
+                boundsReached.add(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED);
+                break;
+            }
+            long moves = Math.round(current.gScore / SystemConstants.DRONE_MOVE_DISTANCE) + 1;
 
             // Expand neighbors (16 compass moves)
-            for (LngLat neighborPos : generateNeighborPositions(current.coordinate)) {
-                if (!isValidMove(current.coordinate, neighborPos, hasEnteredCentralArea)) {
-                    continue;
+            forEachNeighbor(current.coordinate.lng(), current.coordinate.lat(), (direction, lng, lat) -> {
+                LngLat neighborPos = new LngLat(lng, lat);
+                // As in the lattice search, a move is checked against the budget before the corridor
+                if (moves + movesLeft(neighborPos, end) > moveBudget) {
+                    boundsReached.add(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET);
+                    return;
+                }
+                if (corridor != null && !corridor.contains(lng, lat)) {
+                    boundsReached.add(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED);
+                    return;
+                }
+                if (!isValidMove(geometry, raster, current.coordinate, direction, neighborPos,
+                        current.hasEnteredCentral)) {
+                    return;
                 }
 
                 Node neighbor = allNodes.computeIfAbsent(neighborPos, Node::new);
 
                 // If already visited, skip
                 if (visited.contains(neighbor)) {
-                    continue;
+                    return;
                 }
 
-                // If we haven't entered central area yet, check whether this move enters it
-                boolean neighborInCentral = handler.isInCentralArea(neighborPos, centralArea);
-                boolean nextHasEntered    = hasEnteredCentralArea || neighborInCentral;
+                // If we haven't entered central area yet, check whether this move enters it. A locked path is
+                // inside the central area and an unlocked one has not been, so all parents agree on the flag
+                boolean nextHasEntered = current.hasEnteredCentral || isReturnPath && isInCentralArea(geometry, neighborPos);
 
                 double tentativeGScore = current.gScore + handler.distanceTo(current.coordinate, neighborPos);
                 if (tentativeGScore < gScores.getOrDefault(neighborPos, Double.POSITIVE_INFINITY)) {
                     neighbor.parent = current;
                     neighbor.gScore = tentativeGScore;
                     neighbor.hScore = handler.distanceTo(neighborPos, end);
-                    neighbor.hasEnteredCentral = nextHasEntered; // track for neighbor if needed
+                    neighbor.hasEnteredCentral = nextHasEntered;
 
                     gScores.put(neighborPos, tentativeGScore);
                     openSet.add(neighbor);
                 }
-            }
+            });
         }
-        // No path found => return empty
+        // No path found => return empty, with the bound that may have hidden one
+        PATH_FAILURES.put(key, boundsReached.contains(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED)
+                ? LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED
+                : boundsReached.contains(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET)
+                ? LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET : LatticeSearch.FailureReason.UNREACHABLE);
         return Collections.emptyList();
     }
 
-    private List<LngLat> generateNeighborPositions(LngLat current) {
-        List<LngLat> neighbors = new ArrayList<>();
-        for (double angle : COMPASS_ANGLES) {
-            neighbors.add(handler.nextPosition(current, angle));
+    // The fewest moves that could bring the position close to the target in a straight line
+    private double movesLeft(LngLat position, LngLat end) {
+        double distance = handler.distanceTo(position, end) - SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+        return Math.max(0.0, Math.ceil(distance / SystemConstants.DRONE_MOVE_DISTANCE - 1e-6));
+    }
+
+    /**
+     * Visits the 16 positions one move away from ({@code lng}, {@code lat}) using the precomputed
+     * compass step table, without allocating any objects.
+     *
+     * @param lng     longitude of the current position
+     * @param lat     latitude of the current position
+     * @param visitor receives each neighbouring position
+     */
+    public void forEachNeighbor(double lng, double lat, NeighborVisitor visitor) {
+        for (int direction = 0; direction < LngLatHandler.COMPASS_ANGLES.length; direction++) {
+            visitor.visit(direction, lng + LngLatHandler.stepLng(direction), lat + LngLatHandler.stepLat(direction));
         }
-        return neighbors;
     }
 
     /**
@@ -175,52 +1132,98 @@ public class RouteCalculator {
      *  - Must not intersect any no-fly zone boundary.
      *  - If we have already entered the central area (hasEnteredCentralArea==true),
      *    we cannot leave it again.
+     * Facts recorded in the raster for the move's cell and direction are used first.
      */
-    private boolean isValidMove(LngLat current, LngLat next, boolean hasEnteredCentralArea) {
+    private boolean isValidMove(RouteGeometry geometry, ObstacleRaster raster, LngLat current, int direction,
+                                LngLat next, boolean hasEnteredCentralArea) {
+        long bits = raster == null ? 0L : raster.cellBits(current.lng(), current.lat());
         // If we are "locked" in central area, disallow moves that exit the central area
-        if (hasEnteredCentralArea && !handler.isInCentralArea(next, centralArea)) {
+        if (hasEnteredCentralArea && !ObstacleRaster.endsInCentral(bits, direction)
+                && (ObstacleRaster.endsOutsideCentral(bits, direction) || !isInCentralArea(geometry, next))) {
+            return false;
+        }
+        if (ObstacleRaster.isNoFlyClear(bits, direction)) {
+            return true;
+        }
+        if (ObstacleRaster.isNoFlyBlocked(bits, direction)) {
             return false;
         }
         // Cannot be inside a no-fly region
-        if (isInNoFlyRegion(next)) {
+        if (isInNoFlyRegion(geometry, next)) {
             return false;
         }
         // Cannot cross any no-fly boundary
-        if (intersectsNoFlyZone(current, next)) {
+        if (intersectsNoFlyZone(geometry, current, next)) {
             return false;
         }
         return true;
     }
 
-    private boolean intersectsNoFlyZone(LngLat p1, LngLat p2) {
-        for (NamedRegion region : noFlyRegions) {
-            if (handler.doLineSegmentsIntersect(p1, p2, region)) {
-                return true;
-            }
+    private ObstacleRaster rasterOf(RouteGeometry geometry) {
+        return obstacleRasterEnabled ? geometry.obstacleRaster() : null;
+    }
+
+    // Move rules of one search, bound to the geometry snapshot it started with
+    private final class GeometryMoveRules implements LatticeSearch.MoveRules {
+        private final RouteGeometry geometry;
+        private final ObstacleRaster raster;
+
+        GeometryMoveRules(RouteGeometry geometry) {
+            this.geometry = geometry;
+            this.raster = rasterOf(geometry);
+        }
+
+        @Override
+        public boolean isValidMove(LngLat current, LngLat next, boolean hasEnteredCentralArea) {
+            // Without a direction the raster cannot be consulted
+            return RouteCalculator.this.isValidMove(geometry, null, current, 0, next, hasEnteredCentralArea);
+        }
+
+        @Override
+        public boolean isValidMove(LngLat current, int direction, LngLat next, boolean hasEnteredCentralArea) {
+            return RouteCalculator.this.isValidMove(geometry, raster, current, direction, next, hasEnteredCentralArea);
         }
-        return false;
     }
 
-    private boolean isInNoFlyRegion(LngLat position) {
-        for (NamedRegion region : noFlyRegions) {
-            if (handler.isInRegion(position, region)) {
-                return true;
+    private boolean intersectsNoFlyZone(RouteGeometry geometry, LngLat p1, LngLat p2) {
+        return geometry.noFlyIndex().intersectsAnyEdge(p1, p2);
+    }
+
+    private boolean isInNoFlyRegion(RouteGeometry geometry, LngLat position) {
+        return geometry.noFlyIndex().isInAnyRegion(position);
+    }
+
+    private boolean isInCentralArea(RouteGeometry geometry, LngLat position) {
+        return geometry.centralChecker().contains(position);
+    }
+
+    // Whether a path, if it is a return path, stays in the central area once it has entered it; strategies
+    // that fix the lock at the start can produce return paths that do not
+    private boolean keepsCentralLock(RouteGeometry geometry, boolean isReturnPath, List<LngLat> path) {
+        if (!isReturnPath) {
+            return true;
+        }
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean inside = isInCentralArea(geometry, position);
+            if (entered && !inside) {
+                return false;
             }
+            entered |= inside;
         }
-        return false;
+        return true;
     }
 
     /**
      * Reconstructs the path from the final node back to the start.
      */
     private List<LngLat> reconstructPath(Node finalNode) {
-        LinkedList<LngLat> path = new LinkedList<>();
-        Node current = finalNode;
-        while (current != null) {
-            path.addFirst(current.coordinate);
-            current = current.parent;
+        List<LngLat> path = new ArrayList<>();
+        for (Node current = finalNode; current != null; current = current.parent) {
+            path.add(current.coordinate);
         }
-        return path;
+        Collections.reverse(path);
+        return PackedPath.of(path);
     }
 
     // ------------------------------------------------------------------
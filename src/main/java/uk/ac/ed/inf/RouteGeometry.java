@@ -0,0 +1,232 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the map a route is planned over: the no-fly zones and the central area,
+ * identified by a content hash of their vertices. Two snapshots with the same polygons have the
+ * same hash regardless of region names or the order the no-fly zones were listed in, so paths
+ * computed over one are valid for the other.
+ * <p>
+ * Structures derived from the polygons, such as the {@link NoFlyZoneIndex}, the
+ * {@link CentralAreaChecker}, the {@link ObstacleRaster}, the {@link VisibilityGraph}, the
+ * {@link ReturnTree} and the {@link LandmarkTable}, are built on
+ * first use and then shared by every search over this snapshot, including searches for other dates
+ * over the same map.
+ */
+public final class RouteGeometry {
+    private final NamedRegion[] noFlyZones;
+    private final NamedRegion centralArea;
+    private final long hash;
+
+    private volatile NoFlyZoneIndex noFlyIndex;
+    private volatile CentralAreaChecker centralChecker;
+    private volatile ObstacleRaster obstacleRaster;
+    private volatile VisibilityGraph visibilityGraph;
+    private volatile ReturnTree returnTree;
+    private volatile HierarchicalPlanner hierarchicalPlanner;
+    private volatile LandmarkTable landmarkTable;
+
+    /**
+     * @param noFlyZones  - the regions the drone may not enter or cross
+     * @param centralArea - the central area
+     */
+    public RouteGeometry(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        if (noFlyZones == null) {
+            throw new IllegalArgumentException("the no-fly zones are null");
+        }
+        if (centralArea == null) {
+            throw new IllegalArgumentException("the central area is null");
+        }
+        this.noFlyZones = noFlyZones.clone();
+        this.centralArea = centralArea;
+        this.hash = contentHash(this.noFlyZones, centralArea);
+    }
+
+    public NamedRegion[] noFlyZones() {
+        return noFlyZones;
+    }
+
+    public NamedRegion centralArea() {
+        return centralArea;
+    }
+
+    /**
+     * @return the spatial index over the no-fly zones, built on first call
+     */
+    public NoFlyZoneIndex noFlyIndex() {
+        NoFlyZoneIndex index = noFlyIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = noFlyIndex;
+                if (index == null) {
+                    index = new NoFlyZoneIndex(noFlyZones);
+                    noFlyIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the point test for the central area, built on first call
+     * @throws IllegalArgumentException if the central area is not named {@code central}
+     */
+    public CentralAreaChecker centralChecker() {
+        CentralAreaChecker checker = centralChecker;
+        if (checker == null) {
+            checker = new CentralAreaChecker(centralArea);
+            centralChecker = checker;
+        }
+        return checker;
+    }
+
+    /**
+     * @return the occupancy raster of this map, built on first call
+     */
+    public ObstacleRaster obstacleRaster() {
+        ObstacleRaster raster = obstacleRaster;
+        if (raster == null) {
+            synchronized (this) {
+                raster = obstacleRaster;
+                if (raster == null) {
+                    raster = new ObstacleRaster(this);
+                    obstacleRaster = raster;
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * @return the visibility graph over the corners of this map, built on first call
+     */
+    public VisibilityGraph visibilityGraph() {
+        VisibilityGraph graph = visibilityGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = visibilityGraph;
+                if (graph == null) {
+                    graph = new VisibilityGraph(this);
+                    visibilityGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return the cluster planner over this map; its clusters are built as searches reach them
+     */
+    public HierarchicalPlanner hierarchicalPlanner() {
+        HierarchicalPlanner planner = hierarchicalPlanner;
+        if (planner == null) {
+            synchronized (this) {
+                planner = hierarchicalPlanner;
+                if (planner == null) {
+                    planner = new HierarchicalPlanner(this);
+                    hierarchicalPlanner = planner;
+                }
+            }
+        }
+        return planner;
+    }
+
+    /**
+     * Returns the backward search tree rooted at Appleton Tower, growing it on the first call.
+     *
+     * @param rules - move validity rules for this map, only used if the tree is not built yet
+     * @return the return path tree of this map
+     */
+    public ReturnTree returnTree(LatticeSearch.MoveRules rules) {
+        ReturnTree tree = returnTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = returnTree;
+                if (tree == null) {
+                    tree = new ReturnTree(this, LatticePoint.APPLETON_TOWER, ReturnTree.DEFAULT_RADIUS, rules);
+                    returnTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the landmark table of this map, reading or building it on the first call.
+     *
+     * @param rules     - move validity rules for this map, only used if the table is not built yet
+     * @param directory - directory to read the table from and write it to, or {@code null} to only keep it in memory
+     * @return the landmark table of this map
+     */
+    public LandmarkTable landmarkTable(LatticeSearch.MoveRules rules, Path directory) {
+        LandmarkTable table = landmarkTable;
+        if (table == null) {
+            synchronized (this) {
+                table = landmarkTable;
+                if (table == null) {
+                    table = directory == null ? new LandmarkTable(this, rules) : LandmarkTable.loadOrBuild(directory, this, rules);
+                    landmarkTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return a 64-bit content hash of the no-fly polygons and the central area
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return the content hash as 16 hexadecimal digits, e.g. for use in file names
+     */
+    public String hashHex() {
+        return String.format("%016x", hash);
+    }
+
+    private static long contentHash(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        // No-fly zones are hashed individually and sorted so their listing order does not matter
+        long[] zoneHashes = new long[noFlyZones.length];
+        for (int i = 0; i < noFlyZones.length; i++) {
+            zoneHashes[i] = regionHash((byte) 'N', noFlyZones[i]);
+        }
+        Arrays.sort(zoneHashes);
+
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * (zoneHashes.length + 1));
+        buffer.putLong(regionHash((byte) 'C', centralArea));
+        for (long zoneHash : zoneHashes) {
+            buffer.putLong(zoneHash);
+        }
+        return ByteBuffer.wrap(digest.digest(buffer.array())).getLong();
+    }
+
+    private static long regionHash(byte tag, NamedRegion region) {
+        LngLat[] vertices = region.vertices() == null ? new LngLat[0] : region.vertices();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 * Double.BYTES * vertices.length);
+        buffer.put(tag);
+        for (LngLat vertex : vertices) {
+            buffer.putDouble(vertex.lng());
+            buffer.putDouble(vertex.lat());
+        }
+        return ByteBuffer.wrap(sha256().digest(buffer.array())).getLong();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
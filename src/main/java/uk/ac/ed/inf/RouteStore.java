@@ -0,0 +1,330 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent store of computed routes for one geometry, kept in
+ * {@code <directory>/routes-<geometry hash>.bin} so that later runs can skip the search.
+ * <p>
+ * The file starts with a header (magic, version, geometry hash) followed by one record per route:
+ * start and end coordinates, a return-path flag, the {@link RouteCalculator.SearchMode} the route
+ * was searched with, a fingerprint of the other search settings, the move budget it was searched
+ * under, its suboptimality bound, the move count ({@code -1} for "no path") and one byte per move
+ * holding its compass direction index. Routes searched with a different mode or settings are kept
+ * apart, so e.g. a weighted route is never served where a shortest one was asked for. A "no path"
+ * record only answers lookups whose budget is no larger than the one it was proven under, and a
+ * route supersedes it. Positions are rebuilt from the start point with
+ * {@link LatticePoint}, exactly as the lattice search produces them, into a {@link PackedPath}.
+ * <p>
+ * Records already on disk are read through a read-only memory mapping that is indexed on the
+ * first lookup. Routes saved afterwards are appended to the file and kept in memory. Appends and
+ * repairs hold a lock on the file, so several processes can share a store.
+ */
+public final class RouteStore {
+    private static final int MAGIC = 0x50445253; // "PDRS"
+    private static final int VERSION = 5;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = Double.BYTES * 5 + 2 + Long.BYTES + Integer.BYTES * 2;
+    private static final int NO_PATH = -1;
+    private static final RouteCalculator.SearchMode[] MODES = RouteCalculator.SearchMode.values();
+
+    // One store per file, shared by every calculator in the process
+    private static final Map<Path, RouteStore> OPEN_STORES = new ConcurrentHashMap<>();
+
+    private record RouteKey(LngLat start, LngLat end, boolean isReturnPath, RouteCalculator.SearchMode mode,
+                            long settings) { }
+
+    // Where a record's bound starts in the file, and the move budget and move count it holds
+    private record RecordEntry(int offset, int moveBudget, int moves) {
+        // Whether this record answers more lookups than the other: a route answers every budget,
+        // a miss those up to its own
+        boolean supersedes(RecordEntry other) {
+            return other == null || moves > NO_PATH && other.moves == NO_PATH
+                    || moves == NO_PATH && other.moves == NO_PATH && moveBudget > other.moveBudget;
+        }
+    }
+
+    private final Path file;
+    private final long geometryHash;
+    private final Object lock = new Object();
+
+    private MappedByteBuffer mapped;
+    private Map<RouteKey, RecordEntry> mappedIndex;
+    private final Map<RouteKey, RecordEntry> appendedIndex = new HashMap<>();
+    private final Map<RouteKey, RouteCalculator.BoundedPath> appended = new HashMap<>();
+
+    private RouteStore(Path file, long geometryHash) {
+        this.file = file;
+        this.geometryHash = geometryHash;
+        this.mapped = mapExisting();
+    }
+
+    /**
+     * Opens the store for {@code geometry} under {@code directory}, creating the directory if needed.
+     * The file is mapped immediately but only indexed when first used.
+     *
+     * @param directory - directory holding the route files
+     * @param geometry  - the geometry whose routes are stored
+     * @return the shared store for that file
+     */
+    public static RouteStore open(Path directory, RouteGeometry geometry) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create route store directory " + directory, e);
+        }
+        Path file = directory.toAbsolutePath().normalize().resolve("routes-" + geometry.hashHex() + ".bin");
+        return OPEN_STORES.computeIfAbsent(file, path -> new RouteStore(path, geometry.hash()));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @param start        - route start
+     * @param end          - route target
+     * @param isReturnPath - whether the route was planned under the return-path rule
+     * @param mode         - the search mode the route was planned with
+     * @param settings     - fingerprint of the other settings the route was planned with
+     * @param moveBudget   - the most moves the route may have
+     * @return the stored route with its suboptimality bound, an empty route if none was found within
+     *         a budget of at least {@code moveBudget}, or {@code null} if neither is stored
+     */
+    public RouteCalculator.BoundedPath find(LngLat start, LngLat end, boolean isReturnPath,
+                                            RouteCalculator.SearchMode mode, long settings, int moveBudget) {
+        RouteKey key = new RouteKey(start, end, isReturnPath, mode, settings);
+        synchronized (lock) {
+            RecordEntry entry = entryOf(key);
+            if (entry == null || entry.moves() == NO_PATH && entry.moveBudget() < moveBudget) {
+                return null;
+            }
+            return entry == appendedIndex.get(key) ? appended.get(key)
+                    : readRoute(mapped.duplicate().position(entry.offset()), start);
+        }
+    }
+
+    /**
+     * Appends a route to the store. Routes whose moves are not single compass steps are skipped, as
+     * is anything already answered by a stored route, or a miss no wider than one already stored.
+     *
+     * @param start        - route start
+     * @param end          - route target
+     * @param isReturnPath - whether the route was planned under the return-path rule
+     * @param mode         - the search mode the route was planned with
+     * @param settings     - fingerprint of the other settings the route was planned with
+     * @param moveBudget   - the move budget the route was searched under; for an empty list, the one
+     *                       within which no route exists ({@link Integer#MAX_VALUE} if none exists at all)
+     * @param path         - the route, or an empty list if there is none
+     * @param bound        - the factor by which the route may be longer than the shortest one, or
+     *                       {@link Double#NaN} if unknown
+     */
+    public void save(LngLat start, LngLat end, boolean isReturnPath, RouteCalculator.SearchMode mode,
+                     long settings, int moveBudget, List<LngLat> path, double bound) {
+        byte[] directions = path.isEmpty() ? null : directionsOf(path);
+        if (!path.isEmpty() && (directions == null || !path.get(0).equals(start))) {
+            return;
+        }
+        RouteKey key = new RouteKey(start, end, isReturnPath, mode, settings);
+        int moves = directions == null ? NO_PATH : directions.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + Math.max(0, moves));
+        record.putDouble(start.lng()).putDouble(start.lat())
+                .putDouble(end.lng()).putDouble(end.lat())
+                .put((byte) (isReturnPath ? 1 : 0))
+                .put((byte) mode.ordinal())
+                .putLong(settings)
+                .putInt(moveBudget)
+                .putDouble(bound)
+                .putInt(moves);
+        if (directions != null) {
+            record.put(directions);
+        }
+        record.flip();
+
+        synchronized (lock) {
+            RecordEntry entry = new RecordEntry(RECORD_HEADER_BYTES - Integer.BYTES - Double.BYTES, moveBudget, moves);
+            if (!entry.supersedes(entryOf(key))) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+                 FileLock fileLock = channel.lock()) {
+                // Another process may have written the header since this one last looked
+                if (channel.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(geometryHash);
+                    header.flip();
+                    channel.write(header);
+                }
+                channel.write(record);
+            } catch (IOException e) {
+                System.err.println("Could not append route to " + file + ": " + e.getMessage());
+                return;
+            }
+            appendedIndex.put(key, entry);
+            appended.put(key, readRoute(record.position(entry.offset()), start));
+        }
+    }
+
+    /**
+     * @return the number of start, end and settings combinations this store answers for
+     */
+    public int size() {
+        synchronized (lock) {
+            return (int) (mappedIndex().size() + appendedIndex.keySet().stream()
+                    .filter(key -> !mappedIndex.containsKey(key)).count());
+        }
+    }
+
+    // The record answering most lookups for the key, whether mapped or appended since
+    private RecordEntry entryOf(RouteKey key) {
+        RecordEntry appendedEntry = appendedIndex.get(key);
+        RecordEntry mappedEntry = mappedIndex().get(key);
+        return appendedEntry != null && appendedEntry.supersedes(mappedEntry) ? appendedEntry : mappedEntry;
+    }
+
+    private MappedByteBuffer mapExisting() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock fileLock = channel.lock()) {
+            if (channel.size() < HEADER_BYTES) {
+                // Incomplete header: start the file again on the next save
+                channel.truncate(0);
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            System.err.println("Could not map route store " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Builds the index of the mapped records on first use
+    private Map<RouteKey, RecordEntry> mappedIndex() {
+        if (mappedIndex != null) {
+            return mappedIndex;
+        }
+        mappedIndex = new HashMap<>();
+        if (mapped == null) {
+            return mappedIndex;
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != geometryHash) {
+            System.err.println("Discarding route store with unexpected header: " + file);
+            truncate(0);
+            return mappedIndex;
+        }
+        int validLength = buffer.position();
+        try {
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                LngLat start = new LngLat(buffer.getDouble(), buffer.getDouble());
+                LngLat end = new LngLat(buffer.getDouble(), buffer.getDouble());
+                boolean isReturnPath = buffer.get() != 0;
+                int mode = buffer.get();
+                long settings = buffer.getLong();
+                int moveBudget = buffer.getInt();
+                int offset = buffer.position();
+                buffer.getDouble();
+                int moves = buffer.getInt();
+                if (moves < NO_PATH || mode < 0 || mode >= MODES.length) {
+                    break;
+                }
+                buffer.position(buffer.position() + Math.max(0, moves));
+                RecordEntry entry = new RecordEntry(offset, moveBudget, moves);
+                mappedIndex.merge(new RouteKey(start, end, isReturnPath, MODES[mode], settings), entry,
+                        (kept, read) -> read.supersedes(kept) ? read : kept);
+                validLength = buffer.position();
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            // Partially written final record
+        }
+        if (validLength < buffer.limit()) {
+            // Drop the damaged tail so that new records are appended at a record boundary
+            truncate(validLength);
+        }
+        return mappedIndex;
+    }
+
+    // Cuts the file back to the length, unless another process appended to it since it was mapped,
+    // and maps what is left again. The old mapping is released first, as some systems will not
+    // truncate a mapped file
+    private void truncate(long length) {
+        long mappedLength = mapped.capacity();
+        unmap(mapped);
+        mapped = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock fileLock = channel.lock()) {
+            if (channel.size() == mappedLength) {
+                channel.truncate(length);
+            }
+            if (length > 0) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not repair route store " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Releases a mapping now rather than when it is garbage collected, where the JDK allows it
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    // Reads a bound and a move count followed by direction bytes, and replays them from the start point
+    private static RouteCalculator.BoundedPath readRoute(ByteBuffer buffer, LngLat start) {
+        double bound = buffer.getDouble();
+        int moves = buffer.getInt();
+        if (moves == NO_PATH) {
+            return new RouteCalculator.BoundedPath(PackedPath.EMPTY, bound);
+        }
+        byte[] directions = new byte[moves];
+        buffer.get(directions);
+        return new RouteCalculator.BoundedPath(PackedPath.replay(start, directions), bound);
+    }
+
+    /**
+     * @param path - a sequence of positions
+     * @return the compass direction index of every move, or {@code null} if a move is not a single compass step
+     */
+    static byte[] directionsOf(List<LngLat> path) {
+        byte[] directions = new byte[path.size() - 1];
+        long key = LatticePoint.ORIGIN_KEY;
+        for (int i = 0; i < directions.length; i++) {
+            LngLat from = path.get(i);
+            LngLat to = path.get(i + 1);
+            int direction = LngLatHandler.compassDirection(LngLatHandler.calculateAngle(from, to) % 360.0);
+            double stepError = Math.abs(to.lng() - from.lng() - LngLatHandler.stepLng(direction))
+                    + Math.abs(to.lat() - from.lat() - LngLatHandler.stepLat(direction));
+            key = LatticePoint.step(key, direction);
+            if (stepError > 1e-12 || key == LatticePoint.OUT_OF_RANGE) {
+                return null;
+            }
+            directions[i] = (byte) direction;
+        }
+        return directions;
+    }
+}
@@ -0,0 +1,134 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+/**
+ * The box a bounded search may not leave: the start and the target with a margin around them,
+ * grown to cover every no-fly zone it touches (with the same margin), so that the detours around
+ * those zones stay inside. Growing can bring further zones into reach, which are added in turn.
+ * <p>
+ * The move lattice has far more positions than cells of a move's width, so a box alone does not
+ * stop a search for an unreachable target from flooding it; {@link #expansionBudget()} gives the
+ * number of expansions a search in the box is allowed. A move budget does not stop it either, as
+ * even a short budget reaches a great many lattice positions, so {@link #withinMoves} gives the box
+ * a budget can reach, whose expansion budget then bounds the search.
+ *
+ * @param minLng - western edge
+ * @param minLat - southern edge
+ * @param maxLng - eastern edge
+ * @param maxLat - northern edge
+ */
+public record SearchCorridor(double minLng, double minLat, double maxLng, double maxLat) {
+    /**
+     * expansions allowed per square move of the corridor; short detours around a zone take up to about 25
+     */
+    public static final int EXPANSIONS_PER_CELL = 32;
+    /**
+     * expansions no corridor allows, however large: about what a lattice search holds in a few hundred megabytes
+     */
+    public static final int MAX_EXPANSIONS = 1 << 22;
+
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+
+    /**
+     * @param start      - starting coordinate
+     * @param end        - target coordinate
+     * @param noFlyZones - the no-fly zones of the map
+     * @param margin     - free space kept around the points and the zones, in degrees
+     * @return the corridor between the points
+     */
+    public static SearchCorridor around(LngLat start, LngLat end, NamedRegion[] noFlyZones, double margin) {
+        return around(start, new LngLat[]{end}, noFlyZones, margin);
+    }
+
+    /**
+     * @param start      - starting coordinate
+     * @param ends       - target coordinates of a multi-target search
+     * @param noFlyZones - the no-fly zones of the map
+     * @param margin     - free space kept around the points and the zones, in degrees
+     * @return the corridor between the start and all targets
+     */
+    public static SearchCorridor around(LngLat start, LngLat[] ends, NamedRegion[] noFlyZones, double margin) {
+        double[] box = {start.lng() - margin, start.lat() - margin, start.lng() + margin, start.lat() + margin};
+        for (LngLat end : ends) {
+            box[0] = Math.min(box[0], end.lng() - margin);
+            box[1] = Math.min(box[1], end.lat() - margin);
+            box[2] = Math.max(box[2], end.lng() + margin);
+            box[3] = Math.max(box[3], end.lat() + margin);
+        }
+        boolean[] included = new boolean[noFlyZones.length];
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (int i = 0; i < noFlyZones.length; i++) {
+                double[] zone = boundsOf(noFlyZones[i]);
+                if (included[i] || zone == null
+                        || zone[0] > box[2] || zone[2] < box[0] || zone[1] > box[3] || zone[3] < box[1]) {
+                    continue;
+                }
+                included[i] = true;
+                grown = true;
+                box[0] = Math.min(box[0], zone[0] - margin);
+                box[1] = Math.min(box[1], zone[1] - margin);
+                box[2] = Math.max(box[2], zone[2] + margin);
+                box[3] = Math.max(box[3], zone[3] + margin);
+            }
+        }
+        return new SearchCorridor(box[0], box[1], box[2], box[3]);
+    }
+
+    /**
+     * @param start      - starting coordinate
+     * @param ends       - target coordinates
+     * @param moveBudget - the most moves a route may have
+     * @return the box holding every position on a route of at most {@code moveBudget} moves from
+     *         the start to close to one of the targets
+     */
+    public static SearchCorridor withinMoves(LngLat start, LngLat[] ends, int moveBudget) {
+        double reach = (double) moveBudget * MOVE;
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (LngLat end : ends) {
+            box[0] = Math.min(box[0], end.lng());
+            box[1] = Math.min(box[1], end.lat());
+            box[2] = Math.max(box[2], end.lng());
+            box[3] = Math.max(box[3], end.lat());
+        }
+        double endReach = reach + SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+        return new SearchCorridor(Math.max(start.lng() - reach, box[0] - endReach),
+                Math.max(start.lat() - reach, box[1] - endReach),
+                Math.min(start.lng() + reach, box[2] + endReach),
+                Math.min(start.lat() + reach, box[3] + endReach));
+    }
+
+    public boolean contains(double lng, double lat) {
+        return lng >= minLng && lng <= maxLng && lat >= minLat && lat <= maxLat;
+    }
+
+    /**
+     * @return the expansions a search may spend in this corridor before it is considered exhausted,
+     *         at least one and at most {@link #MAX_EXPANSIONS}
+     */
+    public int expansionBudget() {
+        double cells = Math.max(0.0, maxLng - minLng) / MOVE * (Math.max(0.0, maxLat - minLat) / MOVE);
+        return (int) Math.max(1, Math.min(MAX_EXPANSIONS, Math.ceil(cells * EXPANSIONS_PER_CELL)));
+    }
+
+    // Bounding box {minLng, minLat, maxLng, maxLat} of the zone, or null if it has no vertices
+    private static double[] boundsOf(NamedRegion zone) {
+        if (zone.vertices() == null || zone.vertices().length == 0) {
+            return null;
+        }
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (LngLat vertex : zone.vertices()) {
+            bounds[0] = Math.min(bounds[0], vertex.lng());
+            bounds[1] = Math.min(bounds[1], vertex.lat());
+            bounds[2] = Math.max(bounds[2], vertex.lng());
+            bounds[3] = Math.max(bounds[3], vertex.lat());
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Greedy walk straight towards the target, tried before any search.
+ * <p>
+ * Each step moves in the compass direction closest to the bearing of the target
+ * ({@link LngLatHandler#calculateAngle}) and is checked with the move rules. On open ground this
+ * gives a near-shortest route in a handful of microseconds, without the maps and open list of a
+ * search. The walk gives up as soon as a step is invalid or it stops closing in on the target, and
+ * the caller then searches as usual. Positions are built from {@link LatticePoint} keys relative to
+ * the start, so they are the same coordinates {@link LatticeSearch} would produce.
+ * Instances hold no state and can be shared between threads.
+ */
+public final class StraightLineWalk {
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    // Every step towards the target gets at least cos(11.25 degrees) of a move closer, a few more cover the last move
+    private static final double MIN_PROGRESS = Math.cos(Math.toRadians(LngLatHandler.COMPASS_ANGLES[1] / 2));
+    private static final int SPARE_STEPS = 2;
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    /**
+     * Walks from {@code start} towards {@code end}.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area from the start
+     * @param lockOnEntry            - whether the drone is locked into the central area once the walk enters it
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if the walk was
+     *         blocked or a step did not bring it closer to the target
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, boolean lockOnEntry,
+                                 LatticeSearch.MoveRules rules) {
+        double distance = handler.distanceTo(start, end);
+        int maxSteps = (int) Math.ceil(distance / MOVE / MIN_PROGRESS) + SPARE_STEPS;
+        double[] coordinates = new double[(maxSteps + 1) * 2];
+        byte[] directions = new byte[maxSteps];
+        coordinates[0] = start.lng();
+        coordinates[1] = start.lat();
+
+        int steps = 0;
+        long key = LatticePoint.ORIGIN_KEY;
+        LngLat current = start;
+        double remaining = distance;
+        boolean locked = hasEnteredCentralArea;
+        while (!handler.isCloseTo(current, end)) {
+            if (steps == maxSteps) {
+                return Collections.emptyList();
+            }
+            int direction = LngLatHandler.compassDirection(LngLatHandler.calculateAngle(current, end) % 360.0);
+            key = LatticePoint.step(key, direction);
+            if (key == LatticePoint.OUT_OF_RANGE) {
+                return Collections.emptyList();
+            }
+            LngLat next = new LngLat(start.lng() + LatticePoint.offsetLng(key), start.lat() + LatticePoint.offsetLat(key));
+            double nextRemaining = handler.distanceTo(next, end);
+            // Checked before the move rules, which cost far more
+            if (nextRemaining >= remaining || !rules.isValidMove(current, direction, next, locked)) {
+                return Collections.emptyList();
+            }
+            // A valid move is still valid when locked exactly if it ends in the central area
+            if (!locked && lockOnEntry) {
+                locked = rules.isValidMove(current, direction, next, true);
+            }
+            directions[steps++] = (byte) direction;
+            coordinates[2 * steps] = next.lng();
+            coordinates[2 * steps + 1] = next.lat();
+            current = next;
+            remaining = nextRemaining;
+        }
+        return new PackedPath(Arrays.copyOf(coordinates, (steps + 1) * 2), Arrays.copyOf(directions, steps));
+    }
+
+    /**
+     * @param path - a path from {@link #findPath}
+     * @param end  - the target it was walked towards
+     * @return the factor by which the path may be longer than the shortest one, from the fewest moves
+     *         needed to come close to the target in a straight line
+     */
+    public double suboptimalityBound(List<LngLat> path, LngLat end) {
+        double fewestMoves = Math.ceil(handler.distanceTo(path.get(0), end) / MOVE - 1);
+        return Math.max(1.0, (path.size() - 1) / Math.max(1.0, fewestMoves));
+    }
+}
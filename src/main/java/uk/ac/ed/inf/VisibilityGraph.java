@@ -0,0 +1,345 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A route planner over a visibility graph of the no-fly zone corners, whose cost does not grow with
+ * the length of the route.
+ * <p>
+ * Every convex corner of a no-fly zone gives one waypoint, pushed out along the corner's bisector so
+ * that both edges are at least {@link #CLEARANCE} away; the corners of the central area give one
+ * waypoint each, pushed inwards, so routes that must stay inside it can still turn there. Two
+ * waypoints see each other when the straight line between them stays clear of every no-fly edge by a
+ * fraction of a move, and of every no-fly vertex by the vertex tolerance of {@code isInRegion} as well.
+ * Visibility between waypoints is computed once per map; a query only adds the start and end, runs
+ * Dijkstra over the few dozen waypoints and then flies the shortest polyline.
+ * <p>
+ * Each leg of the polyline is flown with the two compass directions on either side of its bearing,
+ * picking whichever keeps the drone closer to the line, so the moves stay within a fraction of a move
+ * of the geometric path; the drone turns towards the next waypoint as soon as it comes into sight.
+ * Every move is checked against the move rules; if one fails, no route is returned and callers should
+ * fall back to a lattice search. The graph is immutable and thread-safe.
+ */
+public final class VisibilityGraph {
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final double SECTOR = 2 * Math.PI / LatticePoint.DIRECTIONS;
+    // How far the moves flying a line can stray from it
+    private static final double STAIRCASE = 0.3 * MOVE;
+    // Lines of sight keep clear of the zone edges, and of their vertices by the isInRegion tolerance as well
+    private static final double EDGE_MARGIN = STAIRCASE;
+    private static final double VERTEX_MARGIN = SystemConstants.DRONE_IS_CLOSE_DISTANCE + STAIRCASE;
+
+    /**
+     * distance waypoints are pushed away from the no-fly zone edges
+     */
+    public static final double CLEARANCE = VERTEX_MARGIN + 0.2 * MOVE;
+
+    private final CentralAreaChecker central;
+    // No-fly edges as {lng1, lat1, lng2, lat2}
+    private final double[][] edges;
+    private final double[] waypointLng;
+    private final double[] waypointLat;
+    private final boolean[] waypointInCentral;
+    private final boolean[][] visible;
+
+    /**
+     * Builds the waypoints of {@code geometry} and the lines of sight between them.
+     *
+     * @param geometry - the map to plan over
+     */
+    public VisibilityGraph(RouteGeometry geometry) {
+        this.central = geometry.centralChecker();
+        List<double[]> edgeList = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        NoFlyZoneIndex noFly = geometry.noFlyIndex();
+        for (NamedRegion zone : geometry.noFlyZones()) {
+            double[][] ring = ringOf(zone);
+            for (int i = 0; i < ring.length; i++) {
+                double[] a = ring[i];
+                double[] b = ring[(i + 1) % ring.length];
+                edgeList.add(new double[]{a[0], a[1], b[0], b[1]});
+            }
+            addCorners(ring, CLEARANCE, points);
+        }
+        addCorners(ringOf(geometry.centralArea()), -CLEARANCE, points);
+        this.edges = edgeList.toArray(new double[0][]);
+
+        // Waypoints pushed into another zone, or too close to an edge, can never be flown through
+        List<double[]> usable = new ArrayList<>();
+        for (double[] point : points) {
+            if (!noFly.isInAnyRegion(point[0], point[1]) && sees(point[0], point[1], point[0], point[1])) {
+                usable.add(point);
+            }
+        }
+        int n = usable.size();
+        this.waypointLng = new double[n];
+        this.waypointLat = new double[n];
+        this.waypointInCentral = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            waypointLng[i] = usable.get(i)[0];
+            waypointLat[i] = usable.get(i)[1];
+            waypointInCentral[i] = central.contains(waypointLng[i], waypointLat[i]);
+        }
+        this.visible = new boolean[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                visible[i][j] = visible[j][i] = sees(waypointLng[i], waypointLat[i], waypointLng[j], waypointLat[j]);
+            }
+        }
+    }
+
+    /**
+     * Plans the geometrically shortest route through the waypoints and flies it in compass moves.
+     *
+     * @param start                  - starting coordinate
+     * @param end                    - target coordinate
+     * @param hasEnteredCentralArea  - whether the drone is locked into the central area for the whole route
+     * @param rules                  - move validity rules
+     * @return the coordinates from start to end (including both), or an empty list if the planned
+     *         route could not be flown with valid moves
+     */
+    public List<LngLat> findPath(LngLat start, LngLat end, boolean hasEnteredCentralArea, LatticeSearch.MoveRules rules) {
+        double[] polyline = shortestPolyline(start, end, hasEnteredCentralArea);
+        if (polyline == null) {
+            return Collections.emptyList();
+        }
+        return fly(start, end, polyline, hasEnteredCentralArea, rules);
+    }
+
+    /**
+     * @return the number of waypoints in the graph
+     */
+    public int getWaypointCount() {
+        return waypointLng.length;
+    }
+
+    // Dijkstra from the start (node n) to the end (node n + 1) over the waypoints; the polyline
+    // after the start as {lng, lat} pairs, or null if the end cannot be seen through the waypoints
+    private double[] shortestPolyline(LngLat start, LngLat end, boolean locked) {
+        int n = waypointLng.length;
+        int startNode = n;
+        int endNode = n + 1;
+        double[] lng = Arrays.copyOf(waypointLng, n + 2);
+        double[] lat = Arrays.copyOf(waypointLat, n + 2);
+        lng[startNode] = start.lng();
+        lat[startNode] = start.lat();
+        lng[endNode] = end.lng();
+        lat[endNode] = end.lat();
+
+        double[] distance = new double[n + 2];
+        int[] previous = new int[n + 2];
+        boolean[] done = new boolean[n + 2];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+        distance[startNode] = 0.0;
+
+        for (int round = 0; round < n + 2; round++) {
+            int current = -1;
+            for (int i = 0; i < n + 2; i++) {
+                if (!done[i] && (current < 0 || distance[i] < distance[current])) {
+                    current = i;
+                }
+            }
+            if (current < 0 || distance[current] == Double.POSITIVE_INFINITY || current == endNode) {
+                break;
+            }
+            done[current] = true;
+            for (int next = 0; next < n + 2; next++) {
+                if (done[next] || (next < n && locked && !waypointInCentral[next])) {
+                    continue;
+                }
+                boolean canSee = current < n && next < n
+                        ? visible[current][next]
+                        : sees(lng[current], lat[current], lng[next], lat[next]);
+                double length = Math.hypot(lng[next] - lng[current], lat[next] - lat[current]);
+                if (canSee && distance[current] + length < distance[next]) {
+                    distance[next] = distance[current] + length;
+                    previous[next] = current;
+                }
+            }
+        }
+        if (previous[endNode] < 0) {
+            return null;
+        }
+        int count = 0;
+        for (int node = endNode; node != startNode; node = previous[node]) {
+            count++;
+        }
+        double[] polyline = new double[2 * count];
+        for (int node = endNode; node != startNode; node = previous[node]) {
+            count--;
+            polyline[2 * count] = lng[node];
+            polyline[2 * count + 1] = lat[node];
+        }
+        return polyline;
+    }
+
+    // Flies each leg with the two compass directions around its bearing, checking every move
+    private List<LngLat> fly(LngLat start, LngLat end, double[] polyline, boolean locked, LatticeSearch.MoveRules rules) {
+        LngLatHandler handler = new LngLatHandler();
+        List<LngLat> path = new ArrayList<>();
+        path.add(start);
+        LngLat position = start;
+        long key = LatticePoint.ORIGIN_KEY;
+
+        int legs = polyline.length / 2;
+        for (int leg = 0; leg < legs; leg++) {
+            double toLng = polyline[2 * leg];
+            double toLat = polyline[2 * leg + 1];
+            boolean last = leg == legs - 1;
+            double fromLng = position.lng();
+            double fromLat = position.lat();
+            double lineLng = toLng - fromLng;
+            double lineLat = toLat - fromLat;
+            double lineLength = Math.hypot(lineLng, lineLat);
+            // Progress along the leg is at least cos(11.25 degrees) of a move each step
+            int maxMoves = (int) Math.ceil(lineLength / (MOVE * Math.cos(SECTOR / 2))) + 2;
+
+            for (int moves = 0; Math.hypot(toLng - position.lng(), toLat - position.lat()) >= MOVE; moves++) {
+                if (last && handler.isCloseTo(position, end)) {
+                    break;
+                }
+                if (!last && moves > 0 && sees(position.lng(), position.lat(), polyline[2 * leg + 2], polyline[2 * leg + 3])) {
+                    break;
+                }
+                if (moves == maxMoves) {
+                    return Collections.emptyList();
+                }
+                double bearing = Math.atan2(toLat - position.lat(), toLng - position.lng());
+                int lower = Math.floorMod((int) Math.floor(bearing / SECTOR), LatticePoint.DIRECTIONS);
+                int upper = (lower + 1) % LatticePoint.DIRECTIONS;
+                // Prefer the direction that ends closer to the leg's line
+                double lowerError = offLine(position, lower, fromLng, fromLat, lineLng, lineLat, lineLength);
+                double upperError = offLine(position, upper, fromLng, fromLat, lineLng, lineLat, lineLength);
+                int first = lowerError <= upperError ? lower : upper;
+                int second = first == lower ? upper : lower;
+
+                long nextKey = LatticePoint.step(key, first);
+                LngLat next = at(start, nextKey);
+                if (nextKey == LatticePoint.OUT_OF_RANGE || !rules.isValidMove(position, first, next, locked)) {
+                    nextKey = LatticePoint.step(key, second);
+                    next = at(start, nextKey);
+                    if (nextKey == LatticePoint.OUT_OF_RANGE || !rules.isValidMove(position, second, next, locked)) {
+                        return Collections.emptyList();
+                    }
+                }
+                key = nextKey;
+                position = next;
+                path.add(position);
+            }
+        }
+        return handler.isCloseTo(position, end) ? path : Collections.emptyList();
+    }
+
+    private static double offLine(LngLat position, int direction, double fromLng, double fromLat,
+                                  double lineLng, double lineLat, double lineLength) {
+        double lng = position.lng() + LngLatHandler.stepLng(direction) - fromLng;
+        double lat = position.lat() + LngLatHandler.stepLat(direction) - fromLat;
+        return Math.abs(lineLng * lat - lineLat * lng) / lineLength;
+    }
+
+    private static LngLat at(LngLat origin, long key) {
+        if (key == LatticePoint.OUT_OF_RANGE) {
+            return origin;
+        }
+        return new LngLat(origin.lng() + LatticePoint.offsetLng(key), origin.lat() + LatticePoint.offsetLat(key));
+    }
+
+    private boolean sees(double lng1, double lat1, double lng2, double lat2) {
+        for (double[] edge : edges) {
+            if (LngLatHandler.segmentsIntersect(lng1, lat1, lng2, lat2, edge[0], edge[1], edge[2], edge[3])
+                    || pointToSegment(edge[0], edge[1], lng1, lat1, lng2, lat2) < VERTEX_MARGIN
+                    || pointToSegment(lng1, lat1, edge) < EDGE_MARGIN
+                    || pointToSegment(lng2, lat2, edge) < EDGE_MARGIN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double pointToSegment(double lng, double lat, double[] edge) {
+        return pointToSegment(lng, lat, edge[0], edge[1], edge[2], edge[3]);
+    }
+
+    private static double pointToSegment(double lng, double lat, double lng1, double lat1, double lng2, double lat2) {
+        double dLng = lng2 - lng1;
+        double dLat = lat2 - lat1;
+        double lengthSquared = dLng * dLng + dLat * dLat;
+        double t = lengthSquared == 0 ? 0 : ((lng - lng1) * dLng + (lat - lat1) * dLat) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(lng - (lng1 + t * dLng), lat - (lat1 + t * dLat));
+    }
+
+    // Convex corners pushed outwards by the offset (inwards if negative), counter-clockwise ring assumed
+    private static void addCorners(double[][] ring, double offset, List<double[]> points) {
+        int n = ring.length;
+        if (n < 3) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            double[] before = ring[(i + n - 1) % n];
+            double[] corner = ring[i];
+            double[] after = ring[(i + 1) % n];
+            double inLng = corner[0] - before[0], inLat = corner[1] - before[1];
+            double outLng = after[0] - corner[0], outLat = after[1] - corner[1];
+            double turn = inLng * outLat - inLat * outLng;
+            // A right turn on a counter-clockwise ring is a reflex corner, which no shortest route touches;
+            // inside the central area every corner is kept
+            if (offset > 0 && turn <= 0) {
+                continue;
+            }
+            double inLength = Math.hypot(inLng, inLat);
+            double outLength = Math.hypot(outLng, outLat);
+            // Outward normals of the two edges (to the right of the direction of travel)
+            double n1Lng = inLat / inLength, n1Lat = -inLng / inLength;
+            double n2Lng = outLat / outLength, n2Lat = -outLng / outLength;
+            double bisectorLng = n1Lng + n2Lng, bisectorLat = n1Lat + n2Lat;
+            double bisectorLength = Math.hypot(bisectorLng, bisectorLat);
+            if (bisectorLength < 1e-9) {
+                continue;
+            }
+            // Both edges end up |offset| away when the corner moves offset / cos(half the turn)
+            double cosHalf = bisectorLength / 2;
+            double shift = offset / Math.max(cosHalf, 0.25);
+            points.add(new double[]{
+                    corner[0] + bisectorLng / bisectorLength * shift,
+                    corner[1] + bisectorLat / bisectorLength * shift
+            });
+        }
+    }
+
+    // The region's vertices without the repeated closing vertex, counter-clockwise
+    private static double[][] ringOf(NamedRegion region) {
+        LngLat[] vertices = region.vertices();
+        if (vertices == null) {
+            return new double[0][];
+        }
+        List<double[]> ring = new ArrayList<>();
+        for (LngLat vertex : vertices) {
+            double[] point = {vertex.lng(), vertex.lat()};
+            if (ring.isEmpty() || !Arrays.equals(ring.get(ring.size() - 1), point)) {
+                ring.add(point);
+            }
+        }
+        if (ring.size() > 1 && Arrays.equals(ring.get(0), ring.get(ring.size() - 1))) {
+            ring.remove(ring.size() - 1);
+        }
+        double area = 0.0;
+        for (int i = 0; i < ring.size(); i++) {
+            double[] a = ring.get(i);
+            double[] b = ring.get((i + 1) % ring.size());
+            area += a[0] * b[1] - b[0] * a[1];
+        }
+        if (area < 0) {
+            Collections.reverse(ring);
+        }
+        return ring.toArray(new double[0][]);
+    }
+}
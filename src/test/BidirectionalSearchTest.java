@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.BidirectionalSearch;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.SearchCorridor;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidirectionalSearchTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat BEHIND_WALL = TestGeometry.BEHIND_WALL;
+    // Inside the wall, so no route reaches it
+    private static final LngLat IN_WALL = new LngLat(-3.18825, 55.9445);
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall);
+
+    @Test
+    @DisplayName("Joins the two searches into a valid path around a no-fly zone")
+    void testPathAroundNoFlyZone() {
+        List<LngLat> path = new BidirectionalSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules);
+
+        assertFalse(path.isEmpty());
+        assertEquals(AT_POSITION, path.get(0));
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), BEHIND_WALL));
+        assertValidMoves(path);
+    }
+
+    @Test
+    @DisplayName("Expands fewer nodes than A* for a near-shortest path")
+    void testFewerExpansions() {
+        LngLat far = new LngLat(-3.1940, 55.9465);
+        LatticeSearch aStar = new LatticeSearch();
+        BidirectionalSearch bidirectional = new BidirectionalSearch();
+
+        List<LngLat> expected = aStar.findPath(AT_POSITION, far, false, rules);
+        List<LngLat> actual = bidirectional.findPath(AT_POSITION, far, false, rules);
+
+        assertValidMoves(actual);
+        assertTrue(handler.isCloseTo(actual.get(actual.size() - 1), far));
+        assertTrue(actual.size() <= expected.size() + 2, actual.size() + " vs " + expected.size());
+        assertTrue(bidirectional.getExpandedNodes() < aStar.getExpandedNodes());
+    }
+
+    @Test
+    @DisplayName("Returns the start alone when it is already close to the target")
+    void testAlreadyClose() {
+        LngLat near = new LngLat(AT_POSITION.lng() + 0.0001, AT_POSITION.lat());
+        assertEquals(List.of(AT_POSITION), new BidirectionalSearch().findPath(AT_POSITION, near, false, rules));
+    }
+
+    @Test
+    @DisplayName("Returns an empty path when every move is rejected")
+    void testUnreachable() {
+        BidirectionalSearch search = new BidirectionalSearch();
+        List<LngLat> path = search.findPath(AT_POSITION, BEHIND_WALL, false, (from, to, locked) -> false);
+        assertTrue(path.isEmpty());
+        assertEquals(LatticeSearch.FailureReason.UNREACHABLE, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("Searches end at their corridor or move budget")
+    void testBoundedSearch() {
+        BidirectionalSearch search = new BidirectionalSearch();
+        // Too narrow to pass the wall
+        SearchCorridor narrow = new SearchCorridor(BEHIND_WALL.lng(), 55.9443, AT_POSITION.lng(), 55.9447);
+        search.setSearchCorridor(narrow);
+        search.setExpansionLimit(narrow.expansionBudget());
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+
+        // Wide enough for every route within the budget
+        SearchCorridor wide = SearchCorridor.around(AT_POSITION, BEHIND_WALL, new NamedRegion[]{wall}, 10 * 0.00015);
+        search.setSearchCorridor(wide);
+        search.setExpansionLimit(wide.expansionBudget());
+        int moves = new LatticeSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules).size() - 1;
+        search.setMoveBudget(moves - 1);
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET, search.getFailureReason());
+
+        search.setMoveBudget(moves + 2);
+        List<LngLat> path = search.findPath(AT_POSITION, BEHIND_WALL, false, rules);
+        assertTrue(path.size() - 1 <= moves + 2);
+        assertEquals(LatticeSearch.FailureReason.NONE, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("The calculator reports why a bidirectional search found no path")
+    void testCalculatorFailureReason() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setSearchMode(RouteCalculator.SearchMode.BIDIRECTIONAL);
+
+        // No move leads into the wall, so the backward side runs out at once
+        assertTrue(calculator.findPath(AT_POSITION, IN_WALL, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.UNREACHABLE, calculator.getFailureReason(AT_POSITION, IN_WALL, false));
+
+        // A bound the search runs into is left to bounded A*
+        int moves = new LatticeSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules).size() - 1;
+        assertTrue(calculator.findPath(AT_POSITION, BEHIND_WALL, false, moves - 1).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET,
+                calculator.getFailureReason(AT_POSITION, BEHIND_WALL, false, moves - 1));
+    }
+
+    @Test
+    @DisplayName("Return paths selected per call stay inside the central area once entered")
+    void testReturnPathPerCall() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        LngLat outside = new LngLat(-3.1950, 55.9440);
+
+        List<LngLat> path = calculator.findPath(outside, AT_POSITION, true, RouteCalculator.SearchMode.BIDIRECTIONAL);
+
+        assertEquals(RouteCalculator.SearchMode.A_STAR, calculator.getSearchMode());
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), AT_POSITION));
+        assertValidMoves(path);
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean inside = handler.isInRegion(position, central);
+            assertFalse(entered && !inside, "left the central area at " + position);
+            entered |= inside;
+        }
+    }
+
+    private void assertValidMoves(List<LngLat> path) {
+        for (int i = 0; i < path.size() - 1; i++) {
+            assertEquals(0.00015, handler.distanceTo(path.get(i), path.get(i + 1)), 1e-12);
+            assertTrue(rules.isValidMove(path.get(i), path.get(i + 1), false));
+        }
+    }
+}
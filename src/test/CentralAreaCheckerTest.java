@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.CentralAreaChecker;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CentralAreaCheckerTest {
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion trapezium = new NamedRegion("central", new LngLat[]{
+            new LngLat(-3.191000, 55.946233),
+            new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617),
+            new LngLat(-3.184319, 55.946233)
+    });
+
+    @Test
+    @DisplayName("Detects the rectangle only in the expected vertex order")
+    void testRectangleDetection() {
+        assertTrue(new CentralAreaChecker(central).isRectangle());
+        assertFalse(new CentralAreaChecker(trapezium).isRectangle());
+
+        LngLat[] v = central.vertices();
+        LngLat[] clockwise = {v[0], v[3], v[2], v[1]};
+        assertFalse(CentralAreaChecker.isAxisAlignedRectangle(clockwise));
+        assertFalse(CentralAreaChecker.isAxisAlignedRectangle(new LngLat[]{v[0], v[1], v[2]}));
+        assertFalse(CentralAreaChecker.isAxisAlignedRectangle(null));
+    }
+
+    @Test
+    @DisplayName("Matches isInRegion, including the corner tolerance")
+    void testMatchesHandler() {
+        Random random = new Random(5);
+        for (NamedRegion region : new NamedRegion[]{central, trapezium}) {
+            CentralAreaChecker checker = new CentralAreaChecker(region);
+            for (int i = 0; i < 20_000; i++) {
+                LngLat point = new LngLat(-3.1930 + random.nextDouble() * 0.0092, 55.9421 + random.nextDouble() * 0.0046);
+                assertEquals(handler.isInRegion(point, region), checker.contains(point), point.toString());
+            }
+        }
+
+        CentralAreaChecker checker = new CentralAreaChecker(central);
+        assertTrue(checker.contains(new LngLat(-3.192473, 55.944)));
+        assertTrue(checker.contains(new LngLat(-3.192573, 55.946333)));
+        assertFalse(checker.contains(new LngLat(-3.192573, 55.944)));
+        assertEquals(handler.isInRegion(new LngLat(-3.192573, 55.946333), central),
+                handler.isInCentralArea(new LngLat(-3.192573, 55.946333), central));
+    }
+
+    @Test
+    @DisplayName("The handler answers for the region it is given when callers switch regions")
+    void testHandlerFollowsRegion() {
+        LngLat insideOnlyRectangle = new LngLat(-3.1920, 55.9460);
+        assertTrue(handler.isInCentralArea(insideOnlyRectangle, central));
+        assertFalse(handler.isInCentralArea(insideOnlyRectangle, trapezium));
+        assertTrue(handler.isInCentralArea(insideOnlyRectangle, central));
+        assertTrue(handler.isInCentralArea(insideOnlyRectangle, TestGeometry.central()));
+    }
+
+    @Test
+    @DisplayName("Rejects regions that are not named central")
+    void testNameChecked() {
+        NamedRegion other = new NamedRegion("other", central.vertices());
+        assertThrows(IllegalArgumentException.class, () -> new CentralAreaChecker(other));
+        assertThrows(IllegalArgumentException.class, () -> new CentralAreaChecker(null));
+        assertThrows(IllegalArgumentException.class, () -> new RouteGeometry(new NamedRegion[0], other).centralChecker());
+    }
+}
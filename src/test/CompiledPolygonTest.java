@@ -0,0 +1,68 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.CompiledPolygon;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledPolygonTest {
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion concave = new NamedRegion("concave", new LngLat[]{
+            new LngLat(-3.1900, 55.9430),
+            new LngLat(-3.1870, 55.9430),
+            new LngLat(-3.1870, 55.9460),
+            new LngLat(-3.1885, 55.9440),
+            new LngLat(-3.1900, 55.9460)
+    });
+
+    @Test
+    @DisplayName("Matches isInRegion for random points around the polygon")
+    void testMatchesHandler() {
+        Random random = new Random(3);
+        for (NamedRegion region : new NamedRegion[]{central, concave}) {
+            CompiledPolygon polygon = new CompiledPolygon(region);
+            for (int i = 0; i < 20_000; i++) {
+                LngLat point = new LngLat(-3.1940 + random.nextDouble() * 0.0110, 55.9415 + random.nextDouble() * 0.0060);
+                assertEquals(handler.isInRegion(point, region), polygon.contains(point), region.name() + " " + point);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Matches isInRegion on vertices, edges and the vertex tolerance")
+    void testBoundariesMatchHandler() {
+        CompiledPolygon polygon = new CompiledPolygon(concave);
+        LngLat[] points = {
+                new LngLat(-3.1900, 55.9430),
+                new LngLat(-3.1885, 55.9430),
+                new LngLat(-3.1870, 55.9445),
+                new LngLat(-3.1885, 55.9440),
+                new LngLat(-3.1901, 55.9429),
+                new LngLat(-3.1885, 55.9450),
+                new LngLat(-3.1869, 55.9461),
+                new LngLat(-3.1880, 55.9455)
+        };
+        for (LngLat point : points) {
+            assertEquals(handler.isInRegion(point, concave), polygon.contains(point), point.toString());
+        }
+        assertTrue(polygon.contains(new LngLat(-3.1901, 55.9429)));
+        assertFalse(polygon.contains(new LngLat(-3.1885, 55.9450)));
+    }
+
+    @Test
+    @DisplayName("Degenerate regions contain nothing")
+    void testDegenerate() {
+        CompiledPolygon line = new CompiledPolygon(new NamedRegion("line", new LngLat[]{
+                new LngLat(0, 0), new LngLat(1, 1)
+        }));
+        CompiledPolygon none = new CompiledPolygon(new NamedRegion("none", null));
+        assertEquals(0, line.size());
+        assertFalse(line.contains(new LngLat(0, 0)));
+        assertFalse(none.contains(new LngLat(0, 0)));
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.HierarchicalPlanner;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalPlannerTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final NamedRegion triangle = new NamedRegion("triangle", new LngLat[]{
+            new LngLat(-3.1910, 55.9430),
+            new LngLat(-3.1895, 55.9432),
+            new LngLat(-3.1903, 55.9446)
+    });
+    private final RouteGeometry geometry = new RouteGeometry(new NamedRegion[]{wall, triangle}, central);
+    private final LatticeSearch.MoveRules rules = (from, to, locked) -> {
+        for (NamedRegion zone : new NamedRegion[]{wall, triangle}) {
+            if (handler.isInRegion(to, zone) || handler.doLineSegmentsIntersect(from, to, zone)) {
+                return false;
+            }
+        }
+        return !locked || handler.isInRegion(to, central);
+    };
+
+    @Test
+    @DisplayName("Refines the cluster route into valid moves, about as short as A*")
+    void testMatchesAStar() {
+        HierarchicalPlanner planner = geometry.hierarchicalPlanner();
+        LatticeSearch search = new LatticeSearch();
+        LngLat[] targets = {
+                new LngLat(-3.1895, 55.9445),
+                new LngLat(-3.1920, 55.9438),
+                new LngLat(-3.1838, 55.9410),
+                new LngLat(-3.1950, 55.9440)
+        };
+        for (LngLat target : targets) {
+            List<LngLat> path = planner.findPath(AT_POSITION, target, false, rules);
+            assertFalse(path.isEmpty(), target.toString());
+            assertEquals(AT_POSITION, path.get(0));
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), target));
+            for (int i = 1; i < path.size(); i++) {
+                assertEquals(0.00015, handler.distanceTo(path.get(i - 1), path.get(i)), 1e-12);
+                assertTrue(rules.isValidMove(path.get(i - 1), path.get(i), false));
+            }
+            int searched = search.findPath(AT_POSITION, target, false, rules).size();
+            assertTrue(path.size() <= searched + 4, target + ": " + path.size() + " vs " + searched);
+        }
+    }
+
+    @Test
+    @DisplayName("Routes from outside into the central area do not leave it again")
+    void testReturnRoute() {
+        LngLat start = new LngLat(-3.1950, 55.9440);
+        List<LngLat> path = geometry.hierarchicalPlanner().findPath(start, AT_POSITION, false, rules);
+
+        assertFalse(path.isEmpty());
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean inside = handler.isInRegion(position, central);
+            assertFalse(entered && !inside, "left the central area at " + position);
+            entered |= inside;
+        }
+    }
+
+    @Test
+    @DisplayName("Builds clusters once per map, only where searches reach")
+    void testClustersReused() {
+        HierarchicalPlanner planner = geometry.hierarchicalPlanner();
+        assertSame(planner, geometry.hierarchicalPlanner());
+        LngLat target = new LngLat(-3.1920, 55.9438);
+
+        planner.findPath(AT_POSITION, target, false, rules);
+        int built = planner.getClusterCount();
+        assertTrue(built > 0);
+        planner.findPath(AT_POSITION, target, false, rules);
+        assertEquals(built, planner.getClusterCount());
+    }
+
+    @Test
+    @DisplayName("The calculator plans with the clusters of its current map")
+    void testCalculatorMode() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall, triangle}, central);
+        calculator.resetState();
+        LngLat target = new LngLat(-3.1950, 55.9440);
+
+        List<LngLat> path = calculator.findPath(AT_POSITION, target, false, RouteCalculator.SearchMode.HIERARCHICAL);
+
+        assertEquals(geometry.hierarchicalPlanner().findPath(AT_POSITION, target, false, rules), path);
+        assertTrue(calculator.getGeometry().hierarchicalPlanner().getClusterCount() > 0);
+    }
+}
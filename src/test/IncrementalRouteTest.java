@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.IncrementalRoute;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalRouteTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat TARGET = new LngLat(-3.1920, 55.9440);
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    // Closes across the route from the wall to the target
+    private final NamedRegion closure = new NamedRegion("closure", new LngLat[]{
+            new LngLat(-3.1905, 55.9439),
+            new LngLat(-3.1905, 55.9447),
+            new LngLat(-3.1908, 55.9447),
+            new LngLat(-3.1908, 55.9439)
+    });
+    // Far from every route between the test points
+    private final NamedRegion remote = new NamedRegion("remote", new LngLat[]{
+            new LngLat(-3.1700, 55.9300),
+            new LngLat(-3.1700, 55.9305),
+            new LngLat(-3.1705, 55.9305),
+            new LngLat(-3.1705, 55.9300)
+    });
+
+    @Test
+    @DisplayName("Repairs the route around an added zone to the length of a fresh search, with fewer expansions")
+    void testAddedZone() {
+        IncrementalRoute route = new IncrementalRoute(AT_POSITION, TARGET, false);
+        List<LngLat> before = route.findPath(geometry(wall), rules(wall));
+        assertPath(before, wall);
+        assertEquals(new IncrementalRoute(AT_POSITION, TARGET, false).findPath(geometry(wall), rules(wall)).size(),
+                before.size());
+
+        List<LngLat> after = route.findPath(geometry(wall, closure), rules(wall, closure));
+        int repairExpansions = route.getExpandedNodes();
+
+        assertPath(after, wall, closure);
+        IncrementalRoute fresh = new IncrementalRoute(AT_POSITION, TARGET, false);
+        assertEquals(fresh.findPath(geometry(wall, closure), rules(wall, closure)).size(), after.size());
+        assertTrue(after.size() > before.size());
+        assertTrue(repairExpansions < fresh.getExpandedNodes(), repairExpansions + " vs " + fresh.getExpandedNodes());
+    }
+
+    @Test
+    @DisplayName("Goes back to the shorter route when the zone is removed again")
+    void testRemovedZone() {
+        IncrementalRoute route = new IncrementalRoute(AT_POSITION, TARGET, false);
+        List<LngLat> open = route.findPath(geometry(wall), rules(wall));
+        route.findPath(geometry(wall, closure), rules(wall, closure));
+
+        List<LngLat> reopened = route.findPath(geometry(wall), rules(wall));
+
+        assertPath(reopened, wall);
+        assertEquals(open.size(), reopened.size());
+    }
+
+    @Test
+    @DisplayName("A zone away from the explored area costs no expansions")
+    void testRemoteZone() {
+        IncrementalRoute route = new IncrementalRoute(AT_POSITION, TARGET, false);
+        List<LngLat> before = route.findPath(geometry(wall), rules(wall));
+
+        List<LngLat> after = route.findPath(geometry(wall, remote), rules(wall, remote));
+
+        assertEquals(before, after);
+        assertEquals(0, route.getExpandedNodes());
+    }
+
+    @Test
+    @DisplayName("A route that needs more nodes than its limit gives up, and finds its path once the limit is raised")
+    void testNodeLimit() {
+        IncrementalRoute route = new IncrementalRoute(AT_POSITION, TARGET, false);
+        route.setNodeLimit(50);
+
+        assertTrue(route.findPath(geometry(wall), rules(wall)).isEmpty());
+        assertTrue(route.isNodeLimitReached());
+        assertTrue(route.getNodeCount() <= 50 + 16, String.valueOf(route.getNodeCount()));
+
+        route.setNodeLimit(Integer.MAX_VALUE);
+        assertPath(route.findPath(geometry(wall), rules(wall)), wall);
+        assertFalse(route.isNodeLimitReached());
+    }
+
+    @Test
+    @DisplayName("The calculator leaves a route no bounded search reaches to the lattice search, which says why")
+    void testCalculatorBounded() {
+        LngLat walledIn = new LngLat(-3.18825, 55.9445);
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setIncrementalReplanningEnabled(true);
+        calculator.setSearchCorridor(0, 0);
+        calculator.setMoveBudget(40);
+
+        assertTrue(calculator.findPath(AT_POSITION, walledIn, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                calculator.getFailureReason(AT_POSITION, walledIn, false));
+        // A route within the budget is still planned incrementally
+        calculator.setMoveBudget(RouteCalculator.DEFAULT_MOVE_BUDGET);
+        assertPath(calculator.findPath(AT_POSITION, TARGET, false), wall);
+    }
+
+    @Test
+    @DisplayName("The calculator repairs its routes after a geometry update")
+    void testCalculatorReplans() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setIncrementalReplanningEnabled(true);
+        List<LngLat> before = calculator.findPath(AT_POSITION, TARGET, false);
+        assertPath(before, wall);
+
+        calculator.updateGeometry(new NamedRegion[]{wall, closure}, central);
+        List<LngLat> after = calculator.findPath(AT_POSITION, TARGET, false);
+
+        assertPath(after, wall, closure);
+        assertTrue(after.size() > before.size());
+        assertEquals(1.0, calculator.findBoundedPath(AT_POSITION, TARGET, false).suboptimalityBound());
+        calculator.setIncrementalReplanningEnabled(false);
+        calculator.resetState();
+        assertEquals(after.size(), calculator.findPath(AT_POSITION, TARGET, false).size(), 1);
+    }
+
+    private void assertPath(List<LngLat> path, NamedRegion... zones) {
+        assertFalse(path.isEmpty());
+        assertEquals(AT_POSITION, path.get(0));
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), TARGET));
+        LatticeSearch.MoveRules rules = rules(zones);
+        for (int i = 1; i < path.size(); i++) {
+            assertEquals(0.00015, handler.distanceTo(path.get(i - 1), path.get(i)), 1e-12);
+            assertTrue(rules.isValidMove(path.get(i - 1), path.get(i), false), "invalid move at " + i);
+        }
+    }
+
+    private RouteGeometry geometry(NamedRegion... zones) {
+        return new RouteGeometry(zones, central);
+    }
+
+    private LatticeSearch.MoveRules rules(NamedRegion... zones) {
+        return (from, to, locked) -> {
+            for (NamedRegion zone : zones) {
+                if (handler.isInRegion(to, zone) || handler.doLineSegmentsIntersect(from, to, zone)) {
+                    return false;
+                }
+            }
+            return !locked || handler.isInRegion(to, central);
+        };
+    }
+}
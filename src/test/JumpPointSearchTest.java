@@ -0,0 +1,129 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.JumpPointSearch;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.SearchCorridor;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JumpPointSearchTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat BEHIND_WALL = TestGeometry.BEHIND_WALL;
+    // Inside the wall, so no route reaches it
+    private static final LngLat IN_WALL = new LngLat(-3.18825, 55.9445);
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall);
+
+    @Test
+    @DisplayName("Replays jumps into a full move-by-move path around a no-fly zone")
+    void testPathAroundNoFlyZone() {
+        List<LngLat> path = new JumpPointSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules);
+
+        assertFalse(path.isEmpty());
+        assertEquals(AT_POSITION, path.get(0));
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), BEHIND_WALL));
+        assertValidMoves(path);
+    }
+
+    @Test
+    @DisplayName("Matches A* path lengths while expanding far fewer nodes")
+    void testMatchesAStar() {
+        LngLat[] targets = {
+                BEHIND_WALL,
+                new LngLat(-3.1940, 55.9465),
+                new LngLat(-3.1838, 55.9410),
+                new LngLat(-3.1920, 55.9420)
+        };
+        LatticeSearch aStar = new LatticeSearch();
+        JumpPointSearch jumpPoint = new JumpPointSearch();
+        for (LngLat target : targets) {
+            List<LngLat> expected = aStar.findPath(AT_POSITION, target, false, rules);
+            List<LngLat> actual = jumpPoint.findPath(AT_POSITION, target, false, rules);
+
+            assertValidMoves(actual);
+            assertTrue(handler.isCloseTo(actual.get(actual.size() - 1), target));
+            assertTrue(actual.size() <= expected.size() + 1, target + ": " + actual.size() + " vs " + expected.size());
+            assertTrue(jumpPoint.getExpandedNodes() <= aStar.getExpandedNodes(), target.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Returns an empty path when every move is rejected")
+    void testUnreachable() {
+        List<LngLat> path = new JumpPointSearch().findPath(AT_POSITION, BEHIND_WALL, false,
+                (from, to, locked) -> false);
+        assertTrue(path.isEmpty());
+    }
+
+    @Test
+    @DisplayName("A target no route reaches ends the search at its corridor or move budget")
+    void testBoundedSearch() {
+        JumpPointSearch search = new JumpPointSearch();
+        SearchCorridor corridor = SearchCorridor.around(AT_POSITION, IN_WALL, new NamedRegion[]{wall}, 10 * 0.00015);
+        search.setSearchCorridor(corridor);
+        search.setExpansionLimit(corridor.expansionBudget());
+        assertTrue(search.findPath(AT_POSITION, IN_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+
+        search.setMoveBudget(40);
+        List<LngLat> path = search.findPath(AT_POSITION, BEHIND_WALL, false, rules);
+        assertTrue(path.size() - 1 <= 40);
+        assertEquals(LatticeSearch.FailureReason.NONE, search.getFailureReason());
+
+        search.setSearchCorridor(null);
+        search.setExpansionLimit(Integer.MAX_VALUE);
+        search.setMoveBudget(12);
+        assertTrue(search.findPath(AT_POSITION, IN_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("The calculator bounds the jumps and leaves a miss to bounded A*")
+    void testCalculatorBounded() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setSearchMode(RouteCalculator.SearchMode.JUMP_POINT);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(20),
+                () -> assertTrue(calculator.findPath(AT_POSITION, IN_WALL, false).isEmpty()));
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                calculator.getFailureReason(AT_POSITION, IN_WALL, false));
+    }
+
+    @Test
+    @DisplayName("Return paths stay inside the central area once entered")
+    void testReturnPath() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setSearchMode(RouteCalculator.SearchMode.JUMP_POINT);
+        LngLat outside = new LngLat(-3.1950, 55.9440);
+
+        List<LngLat> path = calculator.findPath(outside, AT_POSITION, true);
+
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), AT_POSITION));
+        assertValidMoves(path);
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean inside = handler.isInRegion(position, central);
+            assertFalse(entered && !inside, "left the central area at " + position);
+            entered |= inside;
+        }
+    }
+
+    private void assertValidMoves(List<LngLat> path) {
+        for (int i = 0; i < path.size() - 1; i++) {
+            assertEquals(0.00015, handler.distanceTo(path.get(i), path.get(i + 1)), 1e-12);
+            assertTrue(rules.isValidMove(path.get(i), path.get(i + 1), false));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.LandmarkTable;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LandmarkTableTest {
+    private static final double MOVE = 0.00015;
+    private static final LngLat WEST = new LngLat(-3.1890, 55.9445);
+    private static final LngLat NORTH_EAST = new LngLat(-3.1870, 55.9470);
+    private static final LngLat SOUTH_EAST = new LngLat(-3.1865, 55.9430);
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    // A long north-south wall between WEST and the eastern targets
+    private final NamedRegion wall = new NamedRegion("wall", new LngLat[]{
+            new LngLat(-3.1880, 55.9425),
+            new LngLat(-3.1877, 55.9425),
+            new LngLat(-3.1877, 55.9465),
+            new LngLat(-3.1880, 55.9465)
+    });
+    private final RouteGeometry geometry = new RouteGeometry(new NamedRegion[]{wall}, central);
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall, central);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Bounds stay below the route length and beat the straight line around the wall")
+    void testBounds() {
+        LandmarkTable table = geometry.landmarkTable(rules, null);
+        LatticeSearch search = new LatticeSearch();
+        search.setLandmarks(table);
+        for (LngLat target : new LngLat[]{NORTH_EAST, SOUTH_EAST}) {
+            List<LngLat> path = search.findPath(WEST, target, false, rules);
+            assertFalse(path.isEmpty());
+            double bound = table.lowerBound(cellOf(table, WEST), cellOf(table, target));
+            assertTrue(bound <= (path.size() - 1) * MOVE + MOVE, target + ": " + bound / MOVE + " vs " + path.size());
+        }
+        double bound = table.lowerBound(cellOf(table, WEST), cellOf(table, SOUTH_EAST));
+        assertTrue(bound > handler.distanceTo(WEST, SOUTH_EAST));
+        assertEquals(0.0, table.lowerBound(cellOf(table, WEST), table.cellOf(0.0, 0.0)));
+    }
+
+    @Test
+    @DisplayName("A* with landmarks finds an equally short route with fewer expansions")
+    void testFewerExpansions() {
+        LatticeSearch search = new LatticeSearch();
+        List<LngLat> plain = search.findPath(WEST, NORTH_EAST, false, rules);
+        int plainExpansions = search.getExpandedNodes();
+
+        search.setLandmarks(geometry.landmarkTable(rules, null));
+        List<LngLat> guided = search.findPath(WEST, NORTH_EAST, false, rules);
+
+        assertEquals(plain.size(), guided.size());
+        assertTrue(search.getExpandedNodes() < plainExpansions, search.getExpandedNodes() + " vs " + plainExpansions);
+        assertTrue(handler.isCloseTo(guided.get(guided.size() - 1), NORTH_EAST));
+    }
+
+    @Test
+    @DisplayName("Behind a long wall, plain A* needs more than twenty times the expansions of A* with landmarks")
+    void testWallPocket() {
+        LatticeSearch search = new LatticeSearch();
+        search.setLandmarks(geometry.landmarkTable(rules, null));
+        List<LngLat> guided = search.findPath(WEST, SOUTH_EAST, false, rules);
+        int guidedExpansions = search.getExpandedNodes();
+        assertFalse(guided.isEmpty());
+
+        // Plain A* is cut off rather than run to the end, which takes tens of seconds
+        search.setLandmarks(null);
+        search.setExpansionLimit(20 * guidedExpansions);
+        assertTrue(search.findPath(WEST, SOUTH_EAST, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("Landmark searches claim no bound and never prune a route that fits the budget")
+    void testNoClaimedBound() {
+        LatticeSearch search = new LatticeSearch();
+        List<LngLat> plain = search.findPath(WEST, NORTH_EAST, false, rules);
+        assertEquals(1.0, search.getSuboptimalityBound());
+
+        search.setLandmarks(geometry.landmarkTable(rules, null));
+        search.setMoveBudget(plain.size() - 1);
+        List<LngLat> guided = search.findPath(WEST, NORTH_EAST, false, rules);
+
+        assertFalse(guided.isEmpty(), String.valueOf(search.getFailureReason()));
+        assertTrue(Double.isNaN(search.getSuboptimalityBound()));
+    }
+
+    @Test
+    @DisplayName("Tables written to disk are read back unchanged, and damaged files are rebuilt")
+    void testPersistence() throws IOException {
+        LandmarkTable built = LandmarkTable.loadOrBuild(tempDir, geometry, rules);
+        Path file = tempDir.resolve("landmarks-" + geometry.hashHex() + ".bin");
+        assertTrue(Files.size(file) > 0);
+
+        LandmarkTable read = LandmarkTable.loadOrBuild(tempDir, geometry, (from, to, locked) -> {
+            throw new AssertionError("the table should be read, not built");
+        });
+        assertEquals(built.getGeometryHash(), read.getGeometryHash());
+        assertArrayEquals(built.getLandmarks(), read.getLandmarks());
+        assertEquals(built.lowerBound(cellOf(built, WEST), cellOf(built, SOUTH_EAST)),
+                read.lowerBound(cellOf(read, WEST), cellOf(read, SOUTH_EAST)));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> LandmarkTable.read(file));
+        LandmarkTable rebuilt = LandmarkTable.loadOrBuild(tempDir, geometry, rules);
+        assertEquals(built.lowerBound(cellOf(built, WEST), cellOf(built, SOUTH_EAST)),
+                rebuilt.lowerBound(cellOf(rebuilt, WEST), cellOf(rebuilt, SOUTH_EAST)));
+        assertEquals(built.getLandmarks().length, LandmarkTable.read(file).getLandmarks().length);
+    }
+
+    @Test
+    @DisplayName("The calculator keeps the table next to its route store")
+    void testCalculatorStoresTable() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.useRouteStore(tempDir);
+        calculator.setLandmarksEnabled(true);
+
+        List<LngLat> path = calculator.findPath(WEST, NORTH_EAST, false);
+
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), NORTH_EAST));
+        assertTrue(Files.isRegularFile(tempDir.resolve("landmarks-" + calculator.getGeometry().hashHex() + ".bin")));
+    }
+
+    private static int cellOf(LandmarkTable table, LngLat position) {
+        return table.cellOf(position.lng(), position.lat());
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticePoint;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatticePointTest {
+    private static final double[] COMPASS_ANGLES = {0, 22.5, 45, 67.5, 90, 112.5, 135, 157.5,
+            180, 202.5, 225, 247.5, 270, 292.5, 315, 337.5};
+
+    @Test
+    @DisplayName("Different move orders reach the same key")
+    void testMoveOrderIndependence() {
+        long a = LatticePoint.step(LatticePoint.step(LatticePoint.ORIGIN_KEY, 1), 5);
+        long b = LatticePoint.step(LatticePoint.step(LatticePoint.ORIGIN_KEY, 5), 1);
+        assertEquals(a, b);
+        assertEquals(new LatticePoint(a), new LatticePoint(b));
+        assertEquals(new LatticePoint(a).hashCode(), new LatticePoint(b).hashCode());
+    }
+
+    @Test
+    @DisplayName("Opposite moves cancel out")
+    void testOppositeMovesCancel() {
+        for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+            long there = LatticePoint.step(LatticePoint.ORIGIN_KEY, direction);
+            long back = LatticePoint.step(there, (direction + 8) % LatticePoint.DIRECTIONS);
+            assertEquals(LatticePoint.ORIGIN_KEY, back, "direction " + direction);
+        }
+    }
+
+    @Test
+    @DisplayName("Single steps match LngLatHandler.nextPosition")
+    void testStepsMatchNextPosition() {
+        LngLatHandler handler = new LngLatHandler();
+        LngLat origin = LatticePoint.APPLETON_TOWER;
+        for (int direction = 0; direction < LatticePoint.DIRECTIONS; direction++) {
+            LngLat expected = handler.nextPosition(origin, COMPASS_ANGLES[direction]);
+            LngLat actual = LatticePoint.ORIGIN.step(direction).toLngLat();
+            assertEquals(expected.lng(), actual.lng(), 1e-15);
+            assertEquals(expected.lat(), actual.lat(), 1e-15);
+        }
+    }
+
+    @Test
+    @DisplayName("Coefficients outside the packed range are rejected")
+    void testRange() {
+        LatticePoint edge = LatticePoint.of(127, 0, 0, 0, 0, 0, 0, -127);
+        assertEquals(127, edge.coefficient(0));
+        assertEquals(-127, edge.coefficient(7));
+        assertNull(edge.step(0));
+        assertNull(edge.step(15));
+        assertNotNull(edge.step(8));
+        assertThrows(IllegalArgumentException.class, () -> LatticePoint.of(128, 0, 0, 0, 0, 0, 0, 0));
+    }
+}
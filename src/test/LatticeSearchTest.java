@@ -0,0 +1,370 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.BucketQueue;
+import uk.ac.ed.inf.IndexedMinHeap;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.SearchCorridor;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Pizza;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatticeSearchTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private LngLatHandler handler;
+    private NamedRegion central;
+    private NamedRegion[] noFlyZones;
+
+    @BeforeEach
+    void setUp() {
+        handler = new LngLatHandler();
+        central = TestGeometry.central();
+        noFlyZones = new NamedRegion[]{TestGeometry.wall()};
+    }
+
+    @Nested
+    @DisplayName("Lattice engine")
+    class EngineTests {
+        @Test
+        @DisplayName("Finds a path around a no-fly zone")
+        void testPathAroundNoFlyZone() {
+            LngLat end = new LngLat(-3.1895, 55.9445);
+            List<LngLat> path = new LatticeSearch().findPath(AT_POSITION, end, false, (from, to, locked) ->
+                    !handler.isInRegion(to, noFlyZones[0]) && !handler.doLineSegmentsIntersect(from, to, noFlyZones[0]));
+
+            assertFalse(path.isEmpty());
+            assertEquals(AT_POSITION, path.get(0));
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), end));
+            for (int i = 0; i < path.size() - 1; i++) {
+                assertEquals(0.00015, handler.distanceTo(path.get(i), path.get(i + 1)), 1e-12);
+                assertFalse(handler.doLineSegmentsIntersect(path.get(i), path.get(i + 1), noFlyZones[0]));
+            }
+        }
+
+        @Test
+        @DisplayName("Matches the node graph engine's path length")
+        void testMatchesNodeGraphEngine() {
+            LngLat end = new LngLat(-3.1895, 55.9445);
+            RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+
+            calculator.resetState();
+            calculator.setSearchEngine(RouteCalculator.SearchEngine.NODE_GRAPH);
+            List<LngLat> expected = calculator.findPath(AT_POSITION, end, false);
+
+            calculator.resetState();
+            calculator.setSearchEngine(RouteCalculator.SearchEngine.LATTICE);
+            List<LngLat> actual = calculator.findPath(AT_POSITION, end, false);
+
+            assertEquals(expected.size(), actual.size());
+        }
+
+        @Test
+        @DisplayName("Returns an empty path when every move is rejected")
+        void testUnreachable() {
+            LatticeSearch search = new LatticeSearch();
+            List<LngLat> path = search.findPath(AT_POSITION, new LngLat(-3.1895, 55.9445), false,
+                    (from, to, locked) -> false);
+
+            assertTrue(path.isEmpty());
+            assertEquals(1, search.getExpandedNodes());
+        }
+
+        @Test
+        @DisplayName("The bucket queue finds paths as short as the heap")
+        void testBucketQueueMatchesHeap() {
+            LatticeSearch search = new LatticeSearch();
+            LatticeSearch.MoveRules rules = (from, to, locked) ->
+                    !handler.isInRegion(to, noFlyZones[0]) && !handler.doLineSegmentsIntersect(from, to, noFlyZones[0]);
+            Random random = new Random(9);
+            for (int i = 0; i < 50; i++) {
+                LngLat end = new LngLat(AT_POSITION.lng() + (random.nextDouble() - 0.5) * 0.004,
+                        AT_POSITION.lat() + (random.nextDouble() - 0.5) * 0.004);
+                if (end.lng() > -3.1888 && end.lng() < -3.1877 && end.lat() > 55.9437 && end.lat() < 55.9453) {
+                    // Targets in or right next to the zone may be unreachable
+                    continue;
+                }
+                search.setOpenList(LatticeSearch.OpenListType.BINARY_HEAP);
+                List<LngLat> expected = search.findPath(AT_POSITION, end, false, rules);
+                search.setOpenList(LatticeSearch.OpenListType.BUCKET_QUEUE);
+                List<LngLat> actual = search.findPath(AT_POSITION, end, false, rules);
+
+                assertEquals(expected.size(), actual.size(), end.toString());
+                assertTrue(handler.isCloseTo(actual.get(actual.size() - 1), end));
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Multi-target search")
+    class MultiTargetTests {
+        @Test
+        @DisplayName("Finds every target with path lengths matching separate searches")
+        void testMatchesSeparateSearches() {
+            LatticeSearch search = new LatticeSearch();
+            LatticeSearch.MoveRules rules = (from, to, locked) ->
+                    !handler.isInRegion(to, noFlyZones[0]) && !handler.doLineSegmentsIntersect(from, to, noFlyZones[0]);
+            LngLat[] ends = {
+                    new LngLat(-3.1895, 55.9445),
+                    new LngLat(-3.1838, 55.9410),
+                    new LngLat(-3.1869, 55.9447),
+                    new LngLat(-3.1920, 55.9460)
+            };
+
+            List<List<LngLat>> paths = search.findPaths(AT_POSITION, ends, false, rules);
+
+            assertEquals(ends.length, paths.size());
+            for (int i = 0; i < ends.length; i++) {
+                List<LngLat> path = paths.get(i);
+                assertEquals(AT_POSITION, path.get(0));
+                assertTrue(handler.isCloseTo(path.get(path.size() - 1), ends[i]));
+                assertEquals(search.findPath(AT_POSITION, ends[i], false, rules).size(), path.size(), ends[i].toString());
+            }
+        }
+
+        @Test
+        @DisplayName("Route table has one cached path per restaurant, in order")
+        void testRouteTable() {
+            Restaurant[] restaurants = {
+                    new Restaurant("West", new LngLat(-3.1895, 55.9445), new DayOfWeek[0], new Pizza[0]),
+                    new Restaurant("South", new LngLat(-3.1838, 55.9410), new DayOfWeek[0], new Pizza[0])
+            };
+            RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+            calculator.resetState();
+
+            Map<Restaurant, List<LngLat>> table = calculator.findOutwardPaths(AT_POSITION, restaurants);
+
+            assertEquals(List.of(restaurants), List.copyOf(table.keySet()));
+            for (Restaurant restaurant : restaurants) {
+                List<LngLat> path = table.get(restaurant);
+                assertTrue(handler.isCloseTo(path.get(path.size() - 1), restaurant.location()));
+                assertSame(path, calculator.findPath(AT_POSITION, restaurant.location(), false));
+            }
+        }
+
+        @Test
+        @DisplayName("A walled-in restaurant stops the shared search at its corridor, not the whole table")
+        void testWalledInRestaurant() {
+            LngLat walledIn = new LngLat(-3.18825, 55.9445);
+            LngLat west = new LngLat(-3.1895, 55.9445);
+            LatticeSearch search = new LatticeSearch();
+            SearchCorridor corridor = SearchCorridor.around(AT_POSITION, new LngLat[]{west, walledIn}, noFlyZones, 8 * 0.00015);
+            search.setSearchCorridor(corridor);
+            search.setExpansionLimit(corridor.expansionBudget());
+
+            List<List<LngLat>> paths = search.findPaths(AT_POSITION, new LngLat[]{west, walledIn}, false,
+                    TestGeometry.avoiding(noFlyZones[0]));
+            // The search may spend its budget around the walled-in target before it reaches the other one
+            assertTrue(paths.get(1).isEmpty());
+            assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+            assertTrue(search.getExpandedNodes() <= corridor.expansionBudget());
+
+            Restaurant[] restaurants = {
+                    new Restaurant("West", west, new DayOfWeek[0], new Pizza[0]),
+                    new Restaurant("Walled in", walledIn, new DayOfWeek[0], new Pizza[0])
+            };
+            RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+            calculator.resetState();
+            calculator.setSearchCorridor(8, 1);
+            Map<Restaurant, List<LngLat>> table = calculator.findOutwardPaths(AT_POSITION, restaurants);
+
+            // Targets the shared search missed are searched one by one
+            assertFalse(table.get(restaurants[0]).isEmpty());
+            assertTrue(table.get(restaurants[1]).isEmpty());
+            assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                    calculator.getFailureReason(AT_POSITION, walledIn, false));
+        }
+
+        @Test
+        @DisplayName("No targets gives no paths")
+        void testNoTargets() {
+            assertTrue(new LatticeSearch().findPaths(AT_POSITION, new LngLat[0], false, (from, to, locked) -> true).isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("Weighted and anytime search")
+    class BoundedSearchTests {
+        private final LngLat[] ends = {
+                new LngLat(-3.1895, 55.9445),
+                new LngLat(-3.1838, 55.9410),
+                new LngLat(-3.1920, 55.9460)
+        };
+
+        private LatticeSearch.MoveRules rules() {
+            return (from, to, locked) ->
+                    !handler.isInRegion(to, noFlyZones[0]) && !handler.doLineSegmentsIntersect(from, to, noFlyZones[0]);
+        }
+
+        @Test
+        @DisplayName("Weighted paths stay within the weight of the shortest, with fewer expansions")
+        void testWeighted() {
+            LatticeSearch search = new LatticeSearch();
+            for (LngLat end : ends) {
+                search.setHeuristicWeight(1.0);
+                int shortest = search.findPath(AT_POSITION, end, false, rules()).size() - 1;
+                int expansions = search.getExpandedNodes();
+                assertEquals(1.0, search.getSuboptimalityBound());
+
+                search.setHeuristicWeight(2.0);
+                List<LngLat> path = search.findPath(AT_POSITION, end, false, rules());
+
+                assertTrue(handler.isCloseTo(path.get(path.size() - 1), end));
+                assertTrue(path.size() - 1 <= 2.0 * shortest, end.toString());
+                assertTrue(search.getExpandedNodes() <= expansions, end.toString());
+                assertEquals(2.0, search.getSuboptimalityBound());
+            }
+            assertThrows(IllegalArgumentException.class, () -> search.setHeuristicWeight(0.5));
+        }
+
+        @Test
+        @DisplayName("Anytime search reaches the shortest path given time, and reports its bound")
+        void testAnytime() {
+            LatticeSearch search = new LatticeSearch();
+            for (LngLat end : ends) {
+                int shortest = search.findPath(AT_POSITION, end, false, rules()).size();
+
+                List<LngLat> path = search.findPathAnytime(AT_POSITION, end, false, rules(), 3.0, Long.MAX_VALUE);
+
+                assertEquals(AT_POSITION, path.get(0));
+                assertTrue(handler.isCloseTo(path.get(path.size() - 1), end));
+                assertTrue(search.getSuboptimalityBound() >= 1.0 && search.getSuboptimalityBound() <= 1.05,
+                        end + ": " + search.getSuboptimalityBound());
+                assertTrue(path.size() <= shortest + 1, end + ": " + path.size() + " vs " + shortest);
+            }
+        }
+
+        @Test
+        @DisplayName("An expired deadline still gives the first path, bounded by the first weight")
+        void testDeadline() {
+            LatticeSearch search = new LatticeSearch();
+            LngLat end = ends[1];
+
+            List<LngLat> path = search.findPathAnytime(AT_POSITION, end, false, rules(), 3.0, System.nanoTime());
+
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), end));
+            assertTrue(search.getSuboptimalityBound() >= 1.0 && search.getSuboptimalityBound() <= 3.0);
+        }
+
+        @Test
+        @DisplayName("The calculator reports the bound of each mode")
+        void testCalculatorBounds() {
+            RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+            calculator.resetState();
+            LngLat end = ends[0];
+
+            assertEquals(1.0, calculator.findBoundedPath(AT_POSITION, end, false).suboptimalityBound());
+            calculator.setSearchMode(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+            calculator.setHeuristicWeight(1.5);
+            RouteCalculator.BoundedPath weighted = calculator.findBoundedPath(AT_POSITION, end, false);
+            assertEquals(1.5, weighted.suboptimalityBound());
+            assertSame(weighted.path(), calculator.findPath(AT_POSITION, end, false));
+            calculator.setSearchMode(RouteCalculator.SearchMode.ANYTIME);
+            double bound = calculator.findBoundedPath(AT_POSITION, end, false).suboptimalityBound();
+            assertTrue(bound >= 1.0 && bound <= calculator.getHeuristicWeight());
+
+            calculator.resetState();
+            calculator.setSearchMode(RouteCalculator.SearchMode.JUMP_POINT);
+            assertTrue(Double.isNaN(calculator.findBoundedPath(AT_POSITION, end, false).suboptimalityBound()));
+        }
+    }
+
+    @Nested
+    @DisplayName("Indexed heap")
+    class HeapTests {
+        @Test
+        @DisplayName("Decrease-key reorders without duplicates")
+        void testDecreaseKey() {
+            IndexedMinHeap heap = new IndexedMinHeap(4);
+            heap.insertOrUpdate(0, 5.0, 0.0);
+            heap.insertOrUpdate(1, 3.0, 0.0);
+            heap.insertOrUpdate(2, 4.0, 0.0);
+            heap.insertOrUpdate(0, 1.0, 0.0);
+
+            assertEquals(3, heap.size());
+            assertEquals(0, heap.poll());
+            assertEquals(1, heap.poll());
+            assertEquals(2, heap.poll());
+            assertTrue(heap.isEmpty());
+        }
+
+        @Test
+        @DisplayName("Ties are broken by the secondary key")
+        void testTieBreak() {
+            IndexedMinHeap heap = new IndexedMinHeap(4);
+            heap.insertOrUpdate(7, 2.0, 0.5);
+            heap.insertOrUpdate(3, 2.0, 0.1);
+
+            assertEquals(3, heap.poll());
+            assertEquals(7, heap.poll());
+        }
+
+        @Test
+        @DisplayName("Removed slots are skipped and the rest keep their order")
+        void testRemove() {
+            IndexedMinHeap heap = new IndexedMinHeap(4);
+            for (int slot = 0; slot < 6; slot++) {
+                heap.insertOrUpdate(slot, 6.0 - slot, 0.0);
+            }
+            heap.remove(2);
+            heap.remove(5);
+            heap.remove(9);
+
+            assertEquals(4, heap.size());
+            assertFalse(heap.contains(2));
+            assertEquals(4, heap.peek());
+            assertEquals(4, heap.poll());
+            assertEquals(3, heap.poll());
+            assertEquals(1, heap.poll());
+            assertEquals(0, heap.poll());
+        }
+    }
+
+    @Nested
+    @DisplayName("Bucket queue")
+    class BucketQueueTests {
+        @Test
+        @DisplayName("Polls buckets in key order and skips moved entries")
+        void testOrderAndDecreaseKey() {
+            BucketQueue queue = new BucketQueue(1.0);
+            queue.insertOrUpdate(0, 5.5, 0.0);
+            queue.insertOrUpdate(1, 3.2, 0.0);
+            queue.insertOrUpdate(2, 4.0, 0.0);
+            queue.insertOrUpdate(0, 1.0, 0.0);
+
+            assertEquals(3, queue.size());
+            assertEquals(0, queue.poll());
+            assertEquals(1, queue.poll());
+            assertEquals(2, queue.poll());
+            assertTrue(queue.isEmpty());
+            assertThrows(IllegalStateException.class, queue::poll);
+        }
+
+        @Test
+        @DisplayName("Keys never fall below the last bucket polled, and the ring grows for far keys")
+        void testMonotoneAndGrowth() {
+            BucketQueue queue = new BucketQueue(1.0);
+            queue.insertOrUpdate(0, 10.0, 0.0);
+            assertEquals(0, queue.poll());
+            queue.insertOrUpdate(1, 500.0, 0.0);
+            queue.insertOrUpdate(2, 11.0, 0.0);
+            queue.insertOrUpdate(3, 2.0, 0.0);
+
+            assertEquals(3, queue.poll());
+            assertEquals(2, queue.poll());
+            assertEquals(1, queue.poll());
+
+            queue.clear();
+            queue.insertOrUpdate(4, 2.0, 0.0);
+            assertTrue(queue.contains(4));
+            assertEquals(4, queue.poll());
+        }
+    }
+}
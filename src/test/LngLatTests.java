@@ -68,6 +68,21 @@ class LngLatTests {
                     "Distance should match Pythagorean theorem");
         }
 
+        @Test
+        @DisplayName("Compass step table matches the trigonometric next position")
+        void testCompassStepTable() {
+            LngLat start = new LngLat(-3.186874, 55.944494);
+            for (double angle : LngLatHandler.COMPASS_ANGLES) {
+                double radians = Math.toRadians(angle);
+                LngLat next = handler.nextPosition(start, angle);
+                assertEquals(start.lng() + 0.00015 * Math.cos(radians), next.lng(), 0.0);
+                assertEquals(start.lat() + 0.00015 * Math.sin(radians), next.lat(), 0.0);
+            }
+            assertEquals(-1, LngLatHandler.compassDirection(10.0));
+            assertEquals(-1, LngLatHandler.compassDirection(360.0));
+            assertEquals(0.00015, handler.distanceTo(start, handler.nextPosition(start, 10.0)), DELTA);
+        }
+
     }
 
     @Nested
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.SearchCorridor;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveBudgetTest {
+    private static final double MOVE = 0.00015;
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    // Behind the wall, so the route has to go around it
+    private static final LngLat BEHIND_WALL = TestGeometry.BEHIND_WALL;
+    // Inside the wall, so no route reaches it
+    private static final LngLat IN_WALL = new LngLat(-3.18825, 55.9445);
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall);
+
+    @Test
+    @DisplayName("A budget the shortest path fits in finds it with fewer expansions; a move less finds none")
+    void testPruning() {
+        LatticeSearch search = new LatticeSearch();
+        List<LngLat> shortest = search.findPath(AT_POSITION, BEHIND_WALL, false, rules);
+        int moves = shortest.size() - 1;
+        int unbudgetedExpansions = search.getExpandedNodes();
+
+        search.setMoveBudget(moves);
+        assertEquals(shortest.size(), search.findPath(AT_POSITION, BEHIND_WALL, false, rules).size());
+        assertTrue(search.getExpandedNodes() <= unbudgetedExpansions);
+
+        search.setMoveBudget(moves - 1);
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET, search.getFailureReason());
+
+        assertThrows(IllegalArgumentException.class, () -> search.setMoveBudget(-1));
+    }
+
+    @Test
+    @DisplayName("A corridor holding the budget's reach reports the budget, one cutting into it the corridor")
+    void testBudgetInCorridor() {
+        LatticeSearch search = new LatticeSearch();
+        int moves = search.findPath(AT_POSITION, BEHIND_WALL, false, rules).size() - 1;
+        search.setMoveBudget(moves - 1);
+
+        SearchCorridor wide = SearchCorridor.around(AT_POSITION, BEHIND_WALL, new NamedRegion[]{wall}, moves * MOVE);
+        search.setSearchCorridor(wide);
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET, search.getFailureReason());
+
+        search.setSearchCorridor(new SearchCorridor(wide.minLng(), wide.minLat(), wide.maxLng(), 55.9450));
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("A target no move leads towards is unreachable, not out of budget")
+    void testUnreachableWithinBudget() {
+        LatticeSearch search = new LatticeSearch();
+        search.setMoveBudget(100);
+
+        assertTrue(search.findPath(AT_POSITION, BEHIND_WALL, false, (from, to, locked) -> false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.UNREACHABLE, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("Without a corridor, a search for a target no route reaches ends within the budget's reach")
+    void testBudgetBoundsExpansions() {
+        LatticeSearch search = new LatticeSearch();
+        search.setMoveBudget(40);
+        int reachBudget = SearchCorridor.withinMoves(AT_POSITION, new LngLat[]{IN_WALL}, 40).expansionBudget();
+
+        assertTrue(search.findPath(AT_POSITION, IN_WALL, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+        assertTrue(search.getExpandedNodes() <= reachBudget, search.getExpandedNodes() + " vs " + reachBudget);
+
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setSearchCorridor(0, 0);
+        calculator.setMoveBudget(40);
+        for (RouteCalculator.SearchEngine engine : RouteCalculator.SearchEngine.values()) {
+            calculator.setSearchEngine(engine);
+            assertTrue(calculator.findPath(AT_POSITION, IN_WALL, false).isEmpty(), engine.name());
+            assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                    calculator.getFailureReason(AT_POSITION, IN_WALL, false), engine.name());
+        }
+    }
+
+    @Test
+    @DisplayName("The calculator returns no path over its budget or the budget of the call, and says why")
+    void testCalculator() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        int moves = calculator.findPath(AT_POSITION, BEHIND_WALL, false).size() - 1;
+        assertNull(calculator.getFailureReason(AT_POSITION, BEHIND_WALL, false));
+
+        assertTrue(calculator.findPath(AT_POSITION, BEHIND_WALL, false, moves - 1).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET,
+                calculator.getFailureReason(AT_POSITION, BEHIND_WALL, false, moves - 1));
+        assertEquals(moves, calculator.findPath(AT_POSITION, BEHIND_WALL, false, moves).size() - 1);
+
+        calculator.setMoveBudget(moves - 1);
+        assertTrue(calculator.findPath(AT_POSITION, BEHIND_WALL, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET,
+                calculator.getFailureReason(AT_POSITION, BEHIND_WALL, false));
+        // The node graph engine prunes by the budget too
+        calculator.setSearchEngine(RouteCalculator.SearchEngine.NODE_GRAPH);
+        calculator.setMoveBudget(1);
+        assertTrue(calculator.findPath(AT_POSITION, BEHIND_WALL, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.OUT_OF_MOVE_BUDGET,
+                calculator.getFailureReason(AT_POSITION, BEHIND_WALL, false));
+
+        assertThrows(IllegalArgumentException.class, () -> calculator.setMoveBudget(-1));
+    }
+}
@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.NoFlyZoneIndex;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoFlyZoneIndexTest {
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion square = TestGeometry.wall();
+    private final NamedRegion triangle = new NamedRegion("triangle", new LngLat[]{
+            new LngLat(-3.1910, 55.9430),
+            new LngLat(-3.1895, 55.9432),
+            new LngLat(-3.1903, 55.9446)
+    });
+    private final NamedRegion far = new NamedRegion("far", new LngLat[]{
+            new LngLat(-3.1700, 55.9600),
+            new LngLat(-3.1690, 55.9600),
+            new LngLat(-3.1690, 55.9610)
+    });
+    private final NamedRegion[] zones = {square, triangle, far};
+    private final NoFlyZoneIndex index = new NoFlyZoneIndex(zones);
+
+    @Test
+    @DisplayName("Point queries agree with testing every region")
+    void testPointsMatchBruteForce() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            LngLat point = new LngLat(-3.1920 + random.nextDouble() * 0.0050, 55.9425 + random.nextDouble() * 0.0030);
+            assertEquals(bruteForceInRegion(point), index.isInAnyRegion(point), point.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Segment queries agree with testing every edge")
+    void testSegmentsMatchBruteForce() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            LngLat from = new LngLat(-3.1920 + random.nextDouble() * 0.0050, 55.9425 + random.nextDouble() * 0.0030);
+            double angle = random.nextInt(16) * 22.5;
+            LngLat to = handler.nextPosition(from, angle);
+            assertEquals(bruteForceIntersects(from, to), index.intersectsAnyEdge(from, to), from + " -> " + to);
+        }
+    }
+
+    @Test
+    @DisplayName("Vertices, edges and points just outside the grid are handled")
+    void testBoundaries() {
+        assertTrue(index.isInAnyRegion(new LngLat(-3.1880, 55.9440)));
+        assertTrue(index.isInAnyRegion(new LngLat(-3.1880, 55.9445)));
+        assertTrue(index.isInAnyRegion(new LngLat(-3.1879, 55.9440)));
+        assertFalse(index.isInAnyRegion(new LngLat(-3.2000, 55.9300)));
+        assertFalse(index.isInAnyRegion(new LngLat(-3.1000, 56.0000)));
+        assertTrue(index.intersectsAnyEdge(new LngLat(-3.1878, 55.9445), new LngLat(-3.1882, 55.9445)));
+        assertFalse(index.intersectsAnyEdge(new LngLat(-3.2000, 55.9300), new LngLat(-3.1999, 55.9300)));
+    }
+
+    @Test
+    @DisplayName("An empty zone list never blocks")
+    void testEmpty() {
+        NoFlyZoneIndex empty = new NoFlyZoneIndex(new NamedRegion[0]);
+        assertFalse(empty.isInAnyRegion(new LngLat(0, 0)));
+        assertFalse(empty.intersectsAnyEdge(new LngLat(0, 0), new LngLat(0.00015, 0)));
+    }
+
+    @Test
+    @DisplayName("The geometry builds its index once")
+    void testGeometryMemoisesIndex() {
+        RouteGeometry geometry = new RouteGeometry(zones, new NamedRegion("central", square.vertices()));
+        assertSame(geometry.noFlyIndex(), geometry.noFlyIndex());
+    }
+
+    private boolean bruteForceInRegion(LngLat point) {
+        for (NamedRegion zone : zones) {
+            if (handler.isInRegion(point, zone)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean bruteForceIntersects(LngLat from, LngLat to) {
+        for (NamedRegion zone : zones) {
+            if (handler.doLineSegmentsIntersect(from, to, zone)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ObstacleRaster;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObstacleRasterTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final NamedRegion triangle = new NamedRegion("triangle", new LngLat[]{
+            new LngLat(-3.1910, 55.9430),
+            new LngLat(-3.1895, 55.9432),
+            new LngLat(-3.1903, 55.9446)
+    });
+    private final RouteGeometry geometry = new RouteGeometry(new NamedRegion[]{wall, triangle}, central);
+
+    @Test
+    @DisplayName("Every recorded bit agrees with the exact polygon tests")
+    void testBitsAreExact() {
+        ObstacleRaster raster = geometry.obstacleRaster();
+        Random random = new Random(17);
+        int decided = 0;
+        int samples = 0;
+        for (int i = 0; i < 10_000; i++) {
+            LngLat from = new LngLat(-3.1935 + random.nextDouble() * 0.0100, 55.9420 + random.nextDouble() * 0.0050);
+            long bits = raster.cellBits(from.lng(), from.lat());
+            for (int d = 0; d < 16; d++) {
+                LngLat to = handler.nextCompassPosition(from, d);
+                boolean endInNoFly = isInNoFly(to);
+                boolean crosses = handler.doLineSegmentsIntersect(from, to, wall)
+                        || handler.doLineSegmentsIntersect(from, to, triangle);
+                boolean endInCentral = handler.isInRegion(to, central);
+                samples++;
+
+                if (ObstacleRaster.isNoFlyClear(bits, d)) {
+                    assertFalse(endInNoFly || crosses, from + " direction " + d);
+                    decided++;
+                }
+                if (ObstacleRaster.isNoFlyBlocked(bits, d)) {
+                    assertTrue(endInNoFly, from + " direction " + d);
+                    decided++;
+                }
+                if (ObstacleRaster.endsInCentral(bits, d)) {
+                    assertTrue(endInCentral, from + " direction " + d);
+                }
+                if (ObstacleRaster.endsOutsideCentral(bits, d)) {
+                    assertFalse(endInCentral, from + " direction " + d);
+                }
+            }
+        }
+        // Most moves are far enough from a boundary to be answered by the raster
+        assertTrue(decided > samples * 0.7, decided + " of " + samples);
+    }
+
+    @Test
+    @DisplayName("Points outside the raster have no bits")
+    void testOutside() {
+        assertEquals(0L, geometry.obstacleRaster().cellBits(-3.0, 56.0));
+        assertSame(geometry.obstacleRaster(), geometry.obstacleRaster());
+    }
+
+    @Test
+    @DisplayName("Paths are the same with and without the raster")
+    void testPathsUnchanged() {
+        RouteCalculator exact = new RouteCalculator(new NamedRegion[]{wall, triangle}, central);
+        exact.setObstacleRasterEnabled(false);
+        exact.resetState();
+        List<LngLat> expected = exact.findPath(AT_POSITION, new LngLat(-3.1915, 55.9440), false);
+        List<LngLat> expectedReturn = exact.findPath(new LngLat(-3.1915, 55.9440), AT_POSITION, true);
+
+        RouteCalculator rastered = new RouteCalculator(new NamedRegion[]{wall, triangle}, central);
+        rastered.resetState();
+        assertEquals(expected, rastered.findPath(AT_POSITION, new LngLat(-3.1915, 55.9440), false));
+        assertEquals(expectedReturn, rastered.findPath(new LngLat(-3.1915, 55.9440), AT_POSITION, true));
+    }
+
+    private boolean isInNoFly(LngLat position) {
+        return handler.isInRegion(position, wall) || handler.isInRegion(position, triangle);
+    }
+}
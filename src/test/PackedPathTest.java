@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.MovesJson;
+import uk.ac.ed.inf.PackedPath;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedPathTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat BEHIND_WALL = TestGeometry.BEHIND_WALL;
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall);
+
+    @Test
+    @DisplayName("Packs a list into an equal, immutable path with the angle of every move")
+    void testOf() {
+        List<LngLat> positions = new LinkedList<>(new LatticeSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules));
+
+        PackedPath packed = PackedPath.of(positions);
+
+        assertEquals(positions, packed);
+        assertEquals(positions.size() - 1, packed.moveCount());
+        for (int i = 0; i < packed.moveCount(); i++) {
+            assertEquals(LngLatHandler.calculateAngle(positions.get(i), positions.get(i + 1)) % 360.0, packed.angle(i));
+            assertEquals(positions.get(i + 1).lng(), packed.lng(i + 1));
+        }
+        assertSame(packed, PackedPath.of(packed));
+        assertSame(PackedPath.EMPTY, PackedPath.of(List.of()));
+        assertTrue(PackedPath.EMPTY.isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> packed.add(AT_POSITION));
+        assertThrows(UnsupportedOperationException.class, () -> packed.set(0, AT_POSITION));
+        assertThrows(IndexOutOfBoundsException.class, () -> packed.get(packed.size()));
+    }
+
+    @Test
+    @DisplayName("Searches return packed paths whose moves replay to the same positions")
+    void testReplay() {
+        List<LngLat> path = new LatticeSearch().findPath(AT_POSITION, BEHIND_WALL, false, rules);
+        PackedPath packed = assertInstanceOf(PackedPath.class, path);
+
+        byte[] directions = new byte[packed.moveCount()];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = (byte) packed.direction(i);
+        }
+
+        assertEquals(packed, PackedPath.replay(AT_POSITION, directions));
+    }
+
+    @Test
+    @DisplayName("The calculator hands out one packed path, and moves are written from its directions")
+    void testCalculatorAndMoves() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        List<LngLat> path = calculator.findPath(AT_POSITION, BEHIND_WALL, false);
+        assertInstanceOf(PackedPath.class, path);
+        assertSame(path, calculator.findPath(AT_POSITION, BEHIND_WALL, false));
+
+        List<MovesJson> packedMoves = new ArrayList<>();
+        MovesJson.addMoves(packedMoves, path, "ORDER1");
+        List<MovesJson> listMoves = new ArrayList<>();
+        MovesJson.addMoves(listMoves, new ArrayList<>(path), "ORDER1");
+
+        assertEquals(listMoves.size(), packedMoves.size());
+        for (int i = 0; i < listMoves.size(); i++) {
+            MovesJson expected = listMoves.get(i);
+            MovesJson actual = packedMoves.get(i);
+            assertEquals(expected.angle() % 360.0, actual.angle());
+            assertEquals(expected.fromLongitude(), actual.fromLongitude());
+            assertEquals(expected.toLatitude(), actual.toLatitude());
+        }
+    }
+}
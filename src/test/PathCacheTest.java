@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.PathCache;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathCacheTest {
+    private static List<LngLat> pathOf(int length) {
+        List<LngLat> path = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            path.add(new LngLat(-3.186874 + i * 0.00015, 55.944494));
+        }
+        return path;
+    }
+
+    @Test
+    @DisplayName("Hits return the same unmodifiable list")
+    void testHitsShareImmutableView() {
+        PathCache<String> cache = new PathCache<>(10, 1000);
+        List<LngLat> first = cache.get("a", key -> pathOf(3));
+        List<LngLat> second = cache.get("a", key -> fail("loader should not run on a hit"));
+
+        assertSame(first, second);
+        assertThrows(UnsupportedOperationException.class, () -> second.add(new LngLat(0, 0)));
+        PathCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Least recently used entries are evicted by entry count")
+    void testEntryBound() {
+        PathCache<String> cache = new PathCache<>(2, 1000);
+        cache.get("a", key -> pathOf(1));
+        cache.get("b", key -> pathOf(1));
+        cache.get("a", key -> pathOf(1));
+        cache.get("c", key -> pathOf(1));
+
+        assertNotNull(cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertNotNull(cache.getIfPresent("c"));
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    @DisplayName("Entries are evicted once the position bound is exceeded")
+    void testPositionBound() {
+        PathCache<String> cache = new PathCache<>(100, 10);
+        cache.get("a", key -> pathOf(6));
+        cache.get("b", key -> pathOf(6));
+
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(6, cache.stats().positions());
+    }
+
+    @Test
+    @DisplayName("Concurrent misses for one key load it once")
+    void testConcurrentLoadsAreShared() throws Exception {
+        PathCache<String> cache = new PathCache<>(10, 1000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<LngLat>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get("a", key -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return pathOf(2);
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<LngLat>> result : results) {
+                assertEquals(2, result.get(5, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Selective invalidation keeps other entries")
+    void testInvalidateIf() {
+        PathCache<String> cache = new PathCache<>(10, 1000);
+        cache.get("keep", key -> pathOf(1));
+        cache.get("drop", key -> pathOf(1));
+
+        assertEquals(1, cache.invalidateIf(key -> key.startsWith("d")));
+        assertNotNull(cache.getIfPresent("keep"));
+        assertNull(cache.getIfPresent("drop"));
+    }
+}
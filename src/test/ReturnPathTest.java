@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReturnPathTest {
+    // Three moves; the arms of the central area below are this wide
+    private static final double UNIT = 0.00045;
+    private static final double LNG = -3.1900;
+    private static final double LAT = 55.9430;
+
+    // West of the left arm, so the straight line crosses it, leaves it and enters the right arm
+    private static final LngLat START = at(-0.5, 2.5);
+    private static final LngLat TARGET = at(2.5, 2.5);
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    // A U open to the north
+    private final NamedRegion central = new NamedRegion("central", new LngLat[]{
+            at(0, 0), at(3, 0), at(3, 3), at(2, 3), at(2, 1), at(1, 1), at(1, 3), at(0, 3)
+    });
+    private final LatticeSearch.MoveRules rules = (from, to, locked) -> !locked || handler.isInRegion(to, central);
+
+    @Test
+    @DisplayName("The lock starts where the path enters the central area, not at the start")
+    void testLockOnEntry() {
+        LatticeSearch search = new LatticeSearch();
+        List<LngLat> unlocked = search.findPath(START, TARGET, false, rules);
+        assertFalse(keepsLock(unlocked), "the straight route should leave the central area");
+
+        List<LngLat> path = search.findPath(START, TARGET, false, true, rules);
+
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), TARGET));
+        assertTrue(keepsLock(path));
+        assertTrue(path.size() > unlocked.size());
+
+        assertTrue(keepsLock(search.findPathAnytime(START, TARGET, false, true, rules, 2.0, System.nanoTime())));
+    }
+
+    @Test
+    @DisplayName("Every engine and mode of the calculator returns return paths that keep the lock")
+    void testCalculator() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[0], central);
+        calculator.resetState();
+        int shortest = calculator.findPath(START, TARGET, true).size();
+        assertTrue(keepsLock(calculator.findPath(START, TARGET, true)));
+        assertTrue(calculator.findPath(START, TARGET, false).size() < shortest);
+
+        for (RouteCalculator.SearchMode mode : RouteCalculator.SearchMode.values()) {
+            List<LngLat> path = calculator.findPath(START, TARGET, true, mode);
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), TARGET), mode.toString());
+            assertTrue(keepsLock(path), mode.toString());
+        }
+
+        calculator.resetState();
+        calculator.setSearchEngine(RouteCalculator.SearchEngine.NODE_GRAPH);
+        List<LngLat> path = calculator.findPath(START, TARGET, true);
+        assertTrue(keepsLock(path));
+        assertEquals(shortest, path.size());
+    }
+
+    private boolean keepsLock(List<LngLat> path) {
+        assertFalse(path.isEmpty());
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean inside = handler.isInRegion(position, central);
+            if (entered && !inside) {
+                return false;
+            }
+            entered |= inside;
+        }
+        return true;
+    }
+
+    private static LngLat at(double x, double y) {
+        return new LngLat(LNG + x * UNIT, LAT + y * UNIT);
+    }
+}
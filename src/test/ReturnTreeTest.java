@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.LatticePoint;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ReturnTree;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.RouteStore;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReturnTreeTest {
+    private static final LngLat AT_POSITION = LatticePoint.APPLETON_TOWER;
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final RouteGeometry geometry = new RouteGeometry(new NamedRegion[]{wall}, central);
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall, central);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Replays valid return paths that stay inside the central area once entered")
+    void testReturnPaths() {
+        ReturnTree tree = new ReturnTree(geometry, AT_POSITION, 60, rules);
+        LngLat[] starts = {
+                new LngLat(-3.1895, 55.9445),
+                new LngLat(-3.1950, 55.9440),
+                new LngLat(-3.1838, 55.9410),
+                new LngLat(-3.1912, 55.9455)
+        };
+        LatticeSearch search = new LatticeSearch();
+        for (LngLat start : starts) {
+            List<LngLat> path = tree.findPath(start, rules);
+            assertNotNull(path, start.toString());
+            assertEquals(start, path.get(0));
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), AT_POSITION));
+
+            boolean entered = false;
+            for (int i = 0; i < path.size(); i++) {
+                boolean inside = handler.isInRegion(path.get(i), central);
+                assertFalse(entered && !inside, "left the central area at " + path.get(i));
+                entered |= inside;
+                if (i > 0) {
+                    assertEquals(0.00015, handler.distanceTo(path.get(i - 1), path.get(i)), 1e-12);
+                    assertTrue(rules.isValidMove(path.get(i - 1), path.get(i), false));
+                }
+            }
+
+            List<LngLat> searched = search.findPath(start, AT_POSITION, handler.isInRegion(start, central), rules);
+            assertTrue(path.size() <= searched.size() + 4, start + ": " + path.size() + " vs " + searched.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Positions beyond the radius are not served")
+    void testOutsideRadius() {
+        ReturnTree tree = new ReturnTree(geometry, AT_POSITION, 10, rules);
+        assertNull(tree.findPath(new LngLat(-3.1950, 55.9440), rules));
+        assertEquals(-1, tree.movesFrom(new LngLat(-3.1950, 55.9440)));
+        assertEquals(List.of(AT_POSITION), tree.findPath(AT_POSITION, rules));
+        assertThrows(IllegalArgumentException.class, () -> new ReturnTree(geometry, AT_POSITION, 128, rules));
+    }
+
+    @Test
+    @DisplayName("Growing the tree in parallel gives the same tree every time")
+    void testDeterministic() {
+        ReturnTree first = new ReturnTree(geometry, AT_POSITION, 40, rules);
+        ReturnTree second = new ReturnTree(geometry, AT_POSITION, 40, rules);
+        assertEquals(first.getNodeCount(), second.getNodeCount());
+        LngLat start = new LngLat(-3.1895, 55.9445);
+        assertEquals(first.findPath(start, rules), second.findPath(start, rules));
+    }
+
+    @Test
+    @DisplayName("The calculator builds the tree once per map and reuses it after updateGeometry")
+    void testCalculatorReusesTree() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setReturnTreeEnabled(true);
+        LngLat start = new LngLat(-3.1895, 55.9445);
+
+        List<LngLat> path = calculator.findPath(start, AT_POSITION, true);
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), AT_POSITION));
+        RouteGeometry before = calculator.getGeometry();
+        ReturnTree tree = before.returnTree(rules);
+
+        calculator.updateGeometry(new NamedRegion[]{wall}, central);
+        assertSame(tree, calculator.getGeometry().returnTree(rules));
+    }
+
+    @Test
+    @DisplayName("Tree routes are cached apart from searched ones and are not persisted")
+    void testTreeRoutesKeptApart() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setStraightLineWalkEnabled(false);
+        calculator.useRouteStore(tempDir);
+        LngLat start = new LngLat(-3.1895, 55.9445);
+
+        List<LngLat> searched = calculator.findPath(start, AT_POSITION, true);
+        calculator.setReturnTreeEnabled(true);
+        List<LngLat> fromTree = calculator.findPath(start, AT_POSITION, true);
+
+        assertEquals(calculator.getGeometry().returnTree(rules).findPath(start, rules), fromTree);
+        assertTrue(Double.isNaN(calculator.findBoundedPath(start, AT_POSITION, true).suboptimalityBound()));
+        assertEquals(1, RouteStore.open(tempDir, calculator.getGeometry()).size());
+        calculator.setReturnTreeEnabled(false);
+        assertSame(searched, calculator.findPath(start, AT_POSITION, true));
+    }
+}
@@ -235,6 +235,23 @@ class RouteCalculatorTest {
         }
     }
 
+    @Nested
+    @DisplayName("Neighbour Iteration Tests")
+    class NeighbourIterationTests {
+        @Test
+        @DisplayName("Visits all 16 compass neighbours one move away")
+        void testForEachNeighbor() {
+            LngLatHandler handler = new LngLatHandler();
+            int[] visited = new int[1];
+            calculator.forEachNeighbor(AT_POSITION.lng(), AT_POSITION.lat(), (direction, lng, lat) -> {
+                LngLat expected = handler.nextPosition(AT_POSITION, VALID_ANGLES[direction]);
+                assertEquals(expected, new LngLat(lng, lat));
+                visited[0]++;
+            });
+            assertEquals(VALID_ANGLES.length, visited[0]);
+        }
+    }
+
     // Helper methods
     private double calculateAngle(LngLat a, LngLat b) {
         double angle = Math.toDegrees(Math.atan2(
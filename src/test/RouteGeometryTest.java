@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteGeometryTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat TARGET = TestGeometry.BEHIND_WALL;
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final NamedRegion block = new NamedRegion("block", new LngLat[]{
+            new LngLat(-3.1900, 55.9430),
+            new LngLat(-3.1900, 55.9435),
+            new LngLat(-3.1905, 55.9435),
+            new LngLat(-3.1905, 55.9430)
+    });
+
+    @Test
+    @DisplayName("Hash ignores region names and no-fly zone order")
+    void testHashIsContentBased() {
+        NamedRegion renamed = new NamedRegion("other name", wall.vertices());
+        RouteGeometry a = new RouteGeometry(new NamedRegion[]{wall, block}, central);
+        RouteGeometry b = new RouteGeometry(new NamedRegion[]{block, renamed}, central);
+        RouteGeometry c = new RouteGeometry(new NamedRegion[]{wall}, central);
+
+        assertEquals(a.hash(), b.hash());
+        assertNotEquals(a.hash(), c.hash());
+        assertEquals(16, a.hashHex().length());
+    }
+
+    @Test
+    @DisplayName("Calculators over different maps do not share cached paths")
+    void testCalculatorsDoNotShareAcrossGeometry() {
+        RouteCalculator open = new RouteCalculator(new NamedRegion[0], central);
+        RouteCalculator walled = new RouteCalculator(new NamedRegion[]{wall}, central);
+        open.resetState();
+        walled.resetState();
+
+        List<LngLat> direct = open.findPath(AT_POSITION, TARGET, false);
+        List<LngLat> detour = walled.findPath(AT_POSITION, TARGET, false);
+
+        LngLatHandler handler = new LngLatHandler();
+        for (int i = 0; i < detour.size() - 1; i++) {
+            assertFalse(handler.doLineSegmentsIntersect(detour.get(i), detour.get(i + 1), wall));
+        }
+        assertTrue(detour.size() > direct.size());
+    }
+
+    @Test
+    @DisplayName("Updating geometry only invalidates the previous generation")
+    void testUpdateGeometryInvalidatesOnlyOldGeneration() {
+        RouteCalculator first = new RouteCalculator(new NamedRegion[]{wall}, central);
+        RouteCalculator second = new RouteCalculator(new NamedRegion[0], central);
+        List<LngLat> kept = second.findPath(AT_POSITION, TARGET, false);
+        List<LngLat> dropped = first.findPath(AT_POSITION, TARGET, false);
+
+        first.updateGeometry(new NamedRegion[]{block}, central);
+
+        assertSame(kept, second.findPath(AT_POSITION, TARGET, false));
+        assertNotSame(dropped, first.findPath(AT_POSITION, TARGET, false));
+        assertEquals(new RouteGeometry(new NamedRegion[]{block}, central).hash(), first.getGeometry().hash());
+    }
+
+    @Test
+    @DisplayName("Calculators with different search settings over one map do not share cached paths")
+    void testCalculatorsDoNotShareAcrossSettings() {
+        RouteCalculator loose = new RouteCalculator(new NamedRegion[]{wall}, central);
+        RouteCalculator tight = new RouteCalculator(new NamedRegion[]{wall}, central);
+        loose.resetState();
+        loose.setSearchMode(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+        tight.setSearchMode(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+        loose.setHeuristicWeight(3.0);
+        tight.setHeuristicWeight(1.0);
+
+        assertEquals(3.0, loose.findBoundedPath(AT_POSITION, TARGET, false).suboptimalityBound());
+        assertEquals(1.0, tight.findBoundedPath(AT_POSITION, TARGET, false).suboptimalityBound());
+
+        tight.setSearchEngine(RouteCalculator.SearchEngine.NODE_GRAPH);
+        assertTrue(Double.isNaN(tight.findBoundedPath(AT_POSITION, TARGET, false).suboptimalityBound()));
+    }
+}
@@ -0,0 +1,148 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.RouteStore;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteStoreTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    private static final LngLat TARGET = TestGeometry.BEHIND_WALL;
+    private static final RouteCalculator.SearchMode A_STAR = RouteCalculator.SearchMode.A_STAR;
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion[] noFlyZones = {TestGeometry.wall()};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Routes written by one run are read back by the next")
+    void testRoutesSurviveRestart() throws IOException {
+        Path firstRun = tempDir.resolve("first");
+        RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+        calculator.resetState();
+        calculator.useRouteStore(firstRun);
+        List<LngLat> computed = calculator.findPath(AT_POSITION, TARGET, false);
+
+        RouteGeometry geometry = calculator.getGeometry();
+        Path file = RouteStore.open(firstRun, geometry).getFile();
+        assertTrue(Files.size(file) > 0);
+
+        // A different directory holding the same file stands in for a fresh process
+        Path secondRun = Files.createDirectories(tempDir.resolve("second"));
+        Files.copy(file, secondRun.resolve(file.getFileName()));
+        RouteStore reopened = RouteStore.open(secondRun, geometry);
+
+        long settings = calculator.getSettingsFingerprint(A_STAR);
+        assertEquals(1, reopened.size());
+        assertEquals(computed, reopened.find(AT_POSITION, TARGET, false, A_STAR, settings, Integer.MAX_VALUE).path());
+        assertNull(reopened.find(AT_POSITION, TARGET, true, A_STAR, settings, Integer.MAX_VALUE));
+        assertNull(reopened.find(AT_POSITION, TARGET, false, A_STAR, settings + 1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("A truncated final record is dropped and appending continues")
+    void testTruncatedTail() throws IOException {
+        RouteGeometry geometry = new RouteGeometry(noFlyZones, central);
+        Path original = tempDir.resolve("original");
+        List<LngLat> path = new RouteCalculator(noFlyZones, central).findPath(AT_POSITION, TARGET, false);
+        RouteStore store = RouteStore.open(original, geometry);
+        store.save(AT_POSITION, TARGET, false, A_STAR, 0L, Integer.MAX_VALUE, path, 1.0);
+
+        Path damaged = Files.createDirectories(tempDir.resolve("damaged"));
+        Path copy = damaged.resolve(store.getFile().getFileName());
+        Files.copy(store.getFile(), copy);
+        Files.write(copy, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        RouteStore repaired = RouteStore.open(damaged, geometry);
+        assertEquals(path, repaired.find(AT_POSITION, TARGET, false, A_STAR, 0L, Integer.MAX_VALUE).path());
+        repaired.save(TARGET, AT_POSITION, true, A_STAR, 0L, Integer.MAX_VALUE, List.of(), Double.NaN);
+        assertEquals(Files.size(store.getFile()) + 5 * Double.BYTES + 2 + Long.BYTES + 2 * Integer.BYTES, Files.size(copy));
+        assertEquals(List.of(), repaired.find(TARGET, AT_POSITION, true, A_STAR, 0L, Integer.MAX_VALUE).path());
+    }
+
+    @Test
+    @DisplayName("Routes of one search mode or weight are not served to another, and keep their bound")
+    void testModesKeptApart() {
+        RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+        calculator.resetState();
+        calculator.useRouteStore(tempDir);
+        calculator.setHeuristicWeight(3.0);
+        calculator.setSearchMode(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+        RouteCalculator.BoundedPath weighted = calculator.findBoundedPath(AT_POSITION, TARGET, false);
+        long weightedSettings = calculator.getSettingsFingerprint(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+        calculator.setHeuristicWeight(1.5);
+        RouteCalculator.BoundedPath lighter = calculator.findBoundedPath(AT_POSITION, TARGET, false);
+        calculator.setSearchMode(A_STAR);
+        RouteCalculator.BoundedPath exact = calculator.findBoundedPath(AT_POSITION, TARGET, false);
+
+        RouteStore store = RouteStore.open(tempDir, calculator.getGeometry());
+        assertEquals(3, store.size());
+        assertEquals(1.0, exact.suboptimalityBound());
+        assertEquals(1.5, lighter.suboptimalityBound());
+        assertEquals(weighted.path(), store.find(AT_POSITION, TARGET, false,
+                RouteCalculator.SearchMode.WEIGHTED_A_STAR, weightedSettings, Integer.MAX_VALUE).path());
+
+        // A cleared cache leaves only the store to answer, with the bound it recorded
+        calculator.resetState();
+        calculator.setSearchMode(RouteCalculator.SearchMode.WEIGHTED_A_STAR);
+        calculator.setHeuristicWeight(3.0);
+        assertEquals(weighted, calculator.findBoundedPath(AT_POSITION, TARGET, false));
+    }
+
+    @Test
+    @DisplayName("A miss only answers budgets no larger than the one it was proven under")
+    void testMissesKeepTheirBudget() throws IOException {
+        RouteGeometry geometry = new RouteGeometry(noFlyZones, central);
+        RouteStore store = RouteStore.open(tempDir, geometry);
+        store.save(AT_POSITION, TARGET, false, A_STAR, 0L, 10, List.of(), Double.NaN);
+
+        assertEquals(List.of(), store.find(AT_POSITION, TARGET, false, A_STAR, 0L, 10).path());
+        assertEquals(List.of(), store.find(AT_POSITION, TARGET, false, A_STAR, 0L, 5).path());
+        assertNull(store.find(AT_POSITION, TARGET, false, A_STAR, 0L, 11));
+
+        // A smaller budget's miss adds nothing; a route found with more room supersedes the miss
+        long size = Files.size(store.getFile());
+        store.save(AT_POSITION, TARGET, false, A_STAR, 0L, 5, List.of(), Double.NaN);
+        assertEquals(size, Files.size(store.getFile()));
+        List<LngLat> path = new RouteCalculator(noFlyZones, central).findPath(AT_POSITION, TARGET, false);
+        store.save(AT_POSITION, TARGET, false, A_STAR, 0L, Integer.MAX_VALUE, path, 1.0);
+        assertEquals(path, store.find(AT_POSITION, TARGET, false, A_STAR, 0L, 5).path());
+        assertEquals(1, store.size());
+
+        // A fresh process reads the route, not the miss written before it
+        Path copy = Files.createDirectories(tempDir.resolve("copy"));
+        Files.copy(store.getFile(), copy.resolve(store.getFile().getFileName()));
+        RouteStore reopened = RouteStore.open(copy, geometry);
+        assertEquals(1, reopened.size());
+        assertEquals(path, reopened.find(AT_POSITION, TARGET, false, A_STAR, 0L, Integer.MAX_VALUE).path());
+    }
+
+    @Test
+    @DisplayName("The calculator searches again for a budget larger than a stored miss was proven under")
+    void testLargerBudgetSearchesAgain() {
+        RouteCalculator calculator = new RouteCalculator(noFlyZones, central);
+        calculator.resetState();
+        List<LngLat> path = calculator.findPath(AT_POSITION, TARGET, false);
+        int moves = path.size() - 1;
+        calculator.resetState();
+        calculator.useRouteStore(tempDir);
+        assertEquals(List.of(), calculator.findPath(AT_POSITION, TARGET, false, moves - 1));
+
+        calculator.resetState();
+        RouteStore store = RouteStore.open(tempDir, calculator.getGeometry());
+        assertEquals(List.of(), store.find(AT_POSITION, TARGET, false, A_STAR,
+                calculator.getSettingsFingerprint(A_STAR), moves - 1).path());
+        assertEquals(path, calculator.findPath(AT_POSITION, TARGET, false, moves));
+    }
+}
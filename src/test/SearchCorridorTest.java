@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteStore;
+import uk.ac.ed.inf.SearchCorridor;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCorridorTest {
+    private static final double MOVE = 0.00015;
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+    // Inside the wall, more than a move from its edges
+    private static final LngLat WALLED_IN = new LngLat(-3.18825, 55.9445);
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    // Only within reach once the corridor has grown around the wall
+    private final NamedRegion annex = new NamedRegion("annex", new LngLat[]{
+            new LngLat(-3.1880, 55.9456),
+            new LngLat(-3.1880, 55.9458),
+            new LngLat(-3.1885, 55.9458),
+            new LngLat(-3.1885, 55.9456)
+    });
+    private final NamedRegion remote = new NamedRegion("remote", new LngLat[]{
+            new LngLat(-3.1700, 55.9300),
+            new LngLat(-3.1700, 55.9305),
+            new LngLat(-3.1705, 55.9305),
+            new LngLat(-3.1705, 55.9300)
+    });
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Grows around the zones it touches, and the zones those bring into reach")
+    void testAround() {
+        LngLat end = new LngLat(-3.1895, 55.9445);
+        SearchCorridor corridor = SearchCorridor.around(AT_POSITION, end, new NamedRegion[]{annex, wall, remote}, 4 * MOVE);
+
+        assertEquals(-3.1895 - 4 * MOVE, corridor.minLng(), 1e-12);
+        assertEquals(-3.186874 + 4 * MOVE, corridor.maxLng(), 1e-12);
+        assertEquals(55.9440 - 4 * MOVE, corridor.minLat(), 1e-12);
+        assertEquals(55.9458 + 4 * MOVE, corridor.maxLat(), 1e-12);
+        assertFalse(corridor.contains(-3.1702, 55.9302));
+        assertTrue(corridor.expansionBudget() > 0);
+    }
+
+    @Test
+    @DisplayName("The reach of a move budget is the overlap of the boxes it reaches from both ends")
+    void testWithinMoves() {
+        LngLat end = new LngLat(-3.1895, 55.9445);
+        SearchCorridor reach = SearchCorridor.withinMoves(AT_POSITION, new LngLat[]{end}, 20);
+
+        assertEquals(-3.186874 - 20 * MOVE, reach.minLng(), 1e-12);
+        assertEquals(-3.1895 + 20 * MOVE + MOVE, reach.maxLng(), 1e-12);
+        assertEquals(55.944494 - 20 * MOVE, reach.minLat(), 1e-12);
+        assertEquals(55.944494 + 20 * MOVE, reach.maxLat(), 1e-12);
+        // Out of reach, and large enough to exceed any expansion budget
+        assertEquals(1, SearchCorridor.withinMoves(AT_POSITION, new LngLat[]{end}, 5).expansionBudget());
+        assertEquals(SearchCorridor.MAX_EXPANSIONS,
+                SearchCorridor.withinMoves(AT_POSITION, new LngLat[]{end}, 2000).expansionBudget());
+    }
+
+    @Test
+    @DisplayName("Searches in a corridor find the same route, and report why they fail")
+    void testBoundedSearch() {
+        LngLat end = new LngLat(-3.1895, 55.9445);
+        LatticeSearch search = new LatticeSearch();
+        int unbounded = search.findPath(AT_POSITION, end, false, rules).size();
+
+        SearchCorridor corridor = SearchCorridor.around(AT_POSITION, end, new NamedRegion[]{wall}, 8 * MOVE);
+        search.setSearchCorridor(corridor);
+        search.setExpansionLimit(corridor.expansionBudget());
+        List<LngLat> path = search.findPath(AT_POSITION, end, false, rules);
+        assertEquals(unbounded, path.size());
+        assertEquals(LatticeSearch.FailureReason.NONE, search.getFailureReason());
+        path.forEach(position -> assertTrue(corridor.contains(position.lng(), position.lat())));
+
+        assertTrue(search.findPath(AT_POSITION, WALLED_IN, false, rules).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED, search.getFailureReason());
+
+        search.setSearchCorridor(null);
+        assertTrue(search.findPath(AT_POSITION, end, false, (from, to, locked) -> false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.UNREACHABLE, search.getFailureReason());
+    }
+
+    @Test
+    @DisplayName("The calculator gives up on a walled-in target after widening once")
+    void testCalculatorFailsFast() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.setSearchCorridor(8, 1);
+        LngLat end = new LngLat(-3.1895, 55.9445);
+
+        assertTrue(calculator.findPath(AT_POSITION, WALLED_IN, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                calculator.getFailureReason(AT_POSITION, WALLED_IN, false));
+        assertFalse(calculator.findPath(AT_POSITION, end, false).isEmpty());
+        assertNull(calculator.getFailureReason(AT_POSITION, end, false));
+        assertThrows(IllegalArgumentException.class, () -> calculator.setSearchCorridor(-1, 0));
+    }
+
+    @Test
+    @DisplayName("Every planner's route stays in the widest corridor, and a walled-in target fails within it")
+    void testEveryModeInCorridor() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.setSearchCorridor(4, 1);
+        LngLat end = new LngLat(-3.1895, 55.9445);
+        SearchCorridor widest = SearchCorridor.around(AT_POSITION, end, new NamedRegion[]{wall}, 8 * MOVE);
+        for (RouteCalculator.SearchMode mode : RouteCalculator.SearchMode.values()) {
+            calculator.resetState();
+            List<LngLat> path = calculator.findPath(AT_POSITION, end, false, mode);
+            assertFalse(path.isEmpty(), mode.name());
+            for (LngLat position : path) {
+                assertTrue(widest.contains(position.lng(), position.lat()), mode + ": " + position);
+            }
+            assertTrue(calculator.findPath(AT_POSITION, WALLED_IN, false, mode).isEmpty(), mode.name());
+        }
+    }
+
+    @Test
+    @DisplayName("A target the corridor gave up on is not stored as unreachable")
+    void testExhaustedNotStored() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        calculator.useRouteStore(tempDir);
+        calculator.setSearchCorridor(8, 1);
+
+        assertTrue(calculator.findPath(AT_POSITION, WALLED_IN, false).isEmpty());
+        assertEquals(0, RouteStore.open(tempDir, calculator.getGeometry()).size());
+
+        // A later run searches again, and can still tell why it found nothing
+        calculator.resetState();
+        assertTrue(calculator.findPath(AT_POSITION, WALLED_IN, false).isEmpty());
+        assertEquals(LatticeSearch.FailureReason.SEARCH_BOUND_EXHAUSTED,
+                calculator.getFailureReason(AT_POSITION, WALLED_IN, false));
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.StraightLineWalk;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StraightLineWalkTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+
+    private final LngLatHandler handler = new LngLatHandler();
+    private final StraightLineWalk walk = new StraightLineWalk();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = TestGeometry.wall();
+    private final LatticeSearch.MoveRules rules = TestGeometry.avoiding(wall, central);
+
+    @Test
+    @DisplayName("Walks open ground in valid moves, as short as A*")
+    void testOpenGround() {
+        LatticeSearch search = new LatticeSearch();
+        Random random = new Random(21);
+        for (int i = 0; i < 50; i++) {
+            LngLat end = new LngLat(AT_POSITION.lng() + 0.0005 + random.nextDouble() * 0.004,
+                    AT_POSITION.lat() + (random.nextDouble() - 0.5) * 0.004);
+            List<LngLat> path = walk.findPath(AT_POSITION, end, false, false, rules);
+
+            assertFalse(path.isEmpty(), end.toString());
+            assertEquals(AT_POSITION, path.get(0));
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), end));
+            for (int j = 1; j < path.size(); j++) {
+                assertEquals(0.00015, handler.distanceTo(path.get(j - 1), path.get(j)), 1e-12);
+            }
+            int searched = search.findPath(AT_POSITION, end, false, rules).size();
+            assertTrue(path.size() <= searched + 1, end + ": " + path.size() + " vs " + searched);
+            assertTrue(walk.suboptimalityBound(path, end) >= 1.0);
+        }
+    }
+
+    @Test
+    @DisplayName("Gives up when a zone is in the way")
+    void testBlocked() {
+        assertTrue(walk.findPath(AT_POSITION, new LngLat(-3.1895, 55.9445), false, false, rules).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Once a return walk enters the central area it does not leave it")
+    void testLocksOnEntry() {
+        LngLat outside = new LngLat(-3.1950, 55.9470);
+        LngLat inside = new LngLat(-3.1900, 55.9455);
+        LatticeSearch.MoveRules open = (from, to, locked) -> !locked || handler.isInRegion(to, central);
+
+        List<LngLat> path = walk.findPath(outside, inside, false, true, open);
+
+        assertFalse(path.isEmpty());
+        boolean entered = false;
+        for (LngLat position : path) {
+            boolean isInside = handler.isInRegion(position, central);
+            assertFalse(entered && !isInside, "left the central area at " + position);
+            entered |= isInside;
+        }
+        assertTrue(entered);
+    }
+
+    @Test
+    @DisplayName("The calculator walks before it searches, and searches when the walk is blocked")
+    void testCalculator() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall}, central);
+        calculator.resetState();
+        assertFalse(calculator.isStraightLineWalkEnabled());
+        calculator.setStraightLineWalkEnabled(true);
+        LngLat open = new LngLat(-3.1838, 55.9410);
+        LngLat behindWall = new LngLat(-3.1895, 55.9445);
+
+        assertEquals(walk.findPath(AT_POSITION, open, false, false, rules), calculator.findPath(AT_POSITION, open, false));
+        List<LngLat> searched = calculator.findPath(AT_POSITION, behindWall, false);
+        assertTrue(handler.isCloseTo(searched.get(searched.size() - 1), behindWall));
+        assertEquals(1.0, calculator.findBoundedPath(AT_POSITION, behindWall, false).suboptimalityBound());
+
+        calculator.resetState();
+        calculator.setStraightLineWalkEnabled(false);
+        assertEquals(new LatticeSearch().findPath(AT_POSITION, open, false, rules).size(),
+                calculator.findPath(AT_POSITION, open, false).size());
+    }
+}
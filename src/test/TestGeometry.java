@@ -0,0 +1,54 @@
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+/**
+ * The map most route planning tests share: the usual central area with Appleton Tower inside it,
+ * and a small no-fly wall just west of Appleton Tower that routes to {@link #BEHIND_WALL} have to
+ * go around. Regions are created per call, so a test may not change another test's copy.
+ */
+final class TestGeometry {
+    static final LngLat AT_POSITION = new LngLat(-3.186874, 55.944494);
+    // Behind the wall as seen from Appleton Tower
+    static final LngLat BEHIND_WALL = new LngLat(-3.1895, 55.9445);
+
+    private static final LngLatHandler HANDLER = new LngLatHandler();
+
+    private TestGeometry() {
+    }
+
+    static NamedRegion central() {
+        return new NamedRegion("central", new LngLat[]{
+                new LngLat(-3.192473, 55.946233),
+                new LngLat(-3.192473, 55.942617),
+                new LngLat(-3.184319, 55.942617),
+                new LngLat(-3.184319, 55.946233)
+        });
+    }
+
+    static NamedRegion wall() {
+        return new NamedRegion("wall", new LngLat[]{
+                new LngLat(-3.1880, 55.9440),
+                new LngLat(-3.1880, 55.9450),
+                new LngLat(-3.1885, 55.9450),
+                new LngLat(-3.1885, 55.9440)
+        });
+    }
+
+    /**
+     * @return move rules that only keep out of {@code wall}, whatever the central-area lock
+     */
+    static LatticeSearch.MoveRules avoiding(NamedRegion wall) {
+        return (from, to, locked) -> !HANDLER.isInRegion(to, wall) && !HANDLER.doLineSegmentsIntersect(from, to, wall);
+    }
+
+    /**
+     * @return move rules that keep out of {@code wall} and, once locked, inside {@code central}
+     */
+    static LatticeSearch.MoveRules avoiding(NamedRegion wall, NamedRegion central) {
+        LatticeSearch.MoveRules outsideWall = avoiding(wall);
+        return (from, to, locked) -> outsideWall.isValidMove(from, to, locked)
+                && (!locked || HANDLER.isInRegion(to, central));
+    }
+}
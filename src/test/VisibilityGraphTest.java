@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.*;
+import uk.ac.ed.inf.LatticeSearch;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.RouteCalculator;
+import uk.ac.ed.inf.RouteGeometry;
+import uk.ac.ed.inf.VisibilityGraph;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VisibilityGraphTest {
+    private static final LngLat AT_POSITION = TestGeometry.AT_POSITION;
+
+    private final LngLatHandler handler = new LngLatHandler();
+
+    private final NamedRegion central = TestGeometry.central();
+    private final NamedRegion wall = new NamedRegion("wall", new LngLat[]{
+            new LngLat(-3.1880, 55.9440),
+            new LngLat(-3.1880, 55.9450),
+            new LngLat(-3.1885, 55.9450),
+            new LngLat(-3.1885, 55.9440),
+            new LngLat(-3.1880, 55.9440)
+    });
+    private final NamedRegion triangle = new NamedRegion("triangle", new LngLat[]{
+            new LngLat(-3.1910, 55.9430),
+            new LngLat(-3.1895, 55.9432),
+            new LngLat(-3.1903, 55.9446)
+    });
+    private final RouteGeometry geometry = new RouteGeometry(new NamedRegion[]{wall, triangle}, central);
+    private final LatticeSearch.MoveRules rules = (from, to, locked) -> {
+        for (NamedRegion zone : new NamedRegion[]{wall, triangle}) {
+            if (handler.isInRegion(to, zone) || handler.doLineSegmentsIntersect(from, to, zone)) {
+                return false;
+            }
+        }
+        return !locked || handler.isInRegion(to, central);
+    };
+
+    @Test
+    @DisplayName("Flies the planned polyline with valid compass moves, about as short as A*")
+    void testMatchesAStar() {
+        VisibilityGraph graph = geometry.visibilityGraph();
+        LatticeSearch search = new LatticeSearch();
+        LngLat[] targets = {
+                new LngLat(-3.1895, 55.9445),
+                new LngLat(-3.1920, 55.9438),
+                new LngLat(-3.1838, 55.9410),
+                new LngLat(-3.1950, 55.9440)
+        };
+        for (LngLat target : targets) {
+            List<LngLat> path = graph.findPath(AT_POSITION, target, false, rules);
+            assertFalse(path.isEmpty(), target.toString());
+            assertEquals(AT_POSITION, path.get(0));
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1), target));
+            for (int i = 1; i < path.size(); i++) {
+                assertEquals(0.00015, handler.distanceTo(path.get(i - 1), path.get(i)), 1e-12);
+                assertTrue(rules.isValidMove(path.get(i - 1), path.get(i), false));
+            }
+            int searched = search.findPath(AT_POSITION, target, false, rules).size();
+            assertTrue(path.size() <= searched + 2, target + ": " + path.size() + " vs " + searched);
+        }
+    }
+
+    @Test
+    @DisplayName("Routes locked into the central area only turn at waypoints inside it")
+    void testLockedRoute() {
+        LngLat start = new LngLat(-3.1915, 55.9455);
+        List<LngLat> path = geometry.visibilityGraph().findPath(start, AT_POSITION, true, rules);
+
+        assertFalse(path.isEmpty());
+        for (LngLat position : path) {
+            assertTrue(handler.isInRegion(position, central), position.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Builds the graph once per map from convex corners only")
+    void testWaypoints() {
+        VisibilityGraph graph = geometry.visibilityGraph();
+        assertSame(graph, geometry.visibilityGraph());
+        // Four wall corners, three triangle corners and four central area corners
+        assertEquals(11, graph.getWaypointCount());
+    }
+
+    @Test
+    @DisplayName("The calculator falls back to A* when the polyline cannot be flown")
+    void testFallback() {
+        RouteCalculator calculator = new RouteCalculator(new NamedRegion[]{wall, triangle}, central);
+        calculator.resetState();
+        // Next to the wall, so the end cannot be seen from any waypoint with the required margin
+        LngLat nearWall = new LngLat(-3.18797, 55.9445);
+
+        List<LngLat> path = calculator.findPath(AT_POSITION, nearWall, false, RouteCalculator.SearchMode.VISIBILITY_GRAPH);
+
+        assertTrue(geometry.visibilityGraph().findPath(AT_POSITION, nearWall, false, rules).isEmpty());
+        assertFalse(path.isEmpty());
+        assertTrue(handler.isCloseTo(path.get(path.size() - 1), nearWall));
+    }
+}